@@ -1,4 +1,6 @@
+import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * Breadth-First Search implementation for solving Sudoku puzzles.
@@ -8,10 +10,19 @@ import java.util.*;
  * https://www.researchgate.net/publication/358642884_Comparison_Analysis_of_Breadth_First_Search_and_Depth_Limited_Search_Algorithms_in_Sudoku_Game
  */
 public class BFSSolver {
-    // We will store solutions in a Hash Set.
+    // We will store solutions in a Hash Set, keyed by the board's Zobrist hash and confirmed against the packed cells.
     // This is very useful in order to ensure that we are not inserting any duplicate solutions
-    private Set<String> previousSolutions = new HashSet<>();
+    private LongHashSet previousSolutions = new LongHashSet();
     private List<int[][]> solutions = new ArrayList<>();
+    private int peakFrontierSize; // Most states that were waiting in the queue at once
+    private long peakFrontierBytes; // Packed bytes held by the queue at that point
+    private int maxInHeapStates; // Spill queued states past this many, 0 to never spill
+    private Path spillDirectory; // Where spill files go, null for the system temp directory
+    private long spillCount; // Segment files written by the last solve
+    private long spillBytesWritten;
+    private long spillBytesRead;
+    private SearchMetrics metrics;
+    private Consumer<SearchMetrics> metricsListener; // Told about every solve, null for none
     
     /**
      * Solves the Sudoku puzzle using BFS.
@@ -20,58 +31,107 @@ public class BFSSolver {
      * @return true if at least one solution was found
      */
     public boolean solve(SudokuGraph initialGraph) {
-        previousSolutions.clear();
-        
-        // Create a queue that will store our graphs that need to be explored
-        Queue<SudokuGraph> queue = new LinkedList<>();
-        queue.add(initialGraph);
+        // All states are expanded on one working graph. The queue stores each graph that still
+        // needs to be explored as a packed copy of the cells that were empty at the start
+        int [][] initialGrid = initialGraph.copyGrid();
+        SudokuGraph currGraph = new SudokuGraph(initialGrid);
+        PackedBoard codec = PackedBoard.forFreeCells(initialGrid);
+        BoardFrontier queue = maxInHeapStates > 0
+                ? BoardFrontier.spilling(codec, maxInHeapStates, spillDirectory) : new BoardFrontier(codec);
+        queue.offer(currGraph);
 
+        previousSolutions = new LongHashSet(codec);
+        long[] packedSolution = new long[codec.getWordsPerBoard()];
 
-        // Loop while there are graphs left in the queue
-        while (!queue.isEmpty()) {
-            SudokuGraph currGraph = queue.poll();
+        metrics = new SearchMetrics("BFSSolver");
+        SearchMetrics.Tally tally = metrics.newTally();
+        // The queue holds one level after another, so a level ends once as many graphs as it
+        // had queued have been polled
+        int depth = 0;
+        int leftInLevel = 1;
+
+
+        try {
+            // Loop while there are graphs left in the queue
+            while (queue.poll(currGraph)) {
+                if (leftInLevel == 0) {
+                    depth++;
+                    leftInLevel = queue.size() + 1;
+                }
+                leftInLevel--;
+                tally.nodesExpanded++;
+                tally.reachedDepth(depth);
             
-            // If the puzzle has been solved
-            if (currGraph.isPuzzleSolved()) {
-                // Convert it to a string to check if it has already been found
-                String solvedAsStr = convertToString(currGraph);
-                // If this is a new solution, add it to the Set
-                if (!previousSolutions.contains(solvedAsStr)) {
-                    previousSolutions.add(solvedAsStr);
-                    solutions.add(currGraph.copyGrid());
+                // Fill in every forced value first. A contradiction means this graph has no solutions.
+                int mark = currGraph.getTrailSize();
+                boolean consistent = currGraph.propagate();
+                tally.propagationFills += currGraph.getTrailSize() - mark;
+                if (!consistent) {
+                    tally.backtracks++;
+                    currGraph.undoTo(mark);
+                    continue;
                 }
+
+                // If the puzzle has been solved
+                if (currGraph.isPuzzleSolved()) {
+                    // Pack it to check if it has already been found
+                    codec.pack(currGraph, packedSolution, 0);
+                    // If this is a new solution, add it to the Set
+                    if (previousSolutions.add(currGraph.getHash(), packedSolution, 0)) {
+                        solutions.add(currGraph.copyGrid());
+                    } else {
+                        tally.dedupHits++;
+                    }
             
-            }
+                }
 
-            boolean visited = false; 
-            // Loop trough the graph
-            for (int currRow = 0; currRow < currGraph.getSize(); currRow ++) {
-                for (int currCol = 0; currCol < currGraph.getSize(); currCol ++) {
-                    // If we have found an empty slot, it needs to be filled
-                    if (currGraph.getValue(currRow, currCol) == 0) {
-                        // Find the possible valid values that can be put in the slot
-                        List <Integer> validValuesList = currGraph.validValueList(currRow, currCol);
+                boolean visited = false; 
+                // Loop trough the graph
+                for (int currRow = 0; currRow < currGraph.getSize(); currRow ++) {
+                    for (int currCol = 0; currCol < currGraph.getSize(); currCol ++) {
+                        // If we have found an empty slot, it needs to be filled
+                        if (currGraph.getValue(currRow, currCol) == 0) {
+                            // Find the possible valid values that can be put in the slot, as a candidate mask
+                            long validValues = currGraph.getCandidates(currRow, currCol);
                         
-                        // For every value in the list of possible values
-                        for (int validValue : validValuesList) {
-                            // Create a new grid and graph that will store the new data
-                            int [][] newGrid = currGraph.copyGrid();
-                            newGrid[currRow][currCol] = validValue;
-                            SudokuGraph newGraph = new SudokuGraph(newGrid);
-                            // Add this new graph to the queue, so that it can be checked for valid solutions
-                            queue.add(newGraph);
-
-                        }
-                        visited = true;
+                            // For every value in the mask of possible values
+                            for (; validValues != 0; validValues &= validValues - 1) {
+                                int validValue = Long.numberOfTrailingZeros(validValues) + 1;
+                                // Fill the slot and add the new state to the queue, so that it can be checked for valid solutions
+                                currGraph.setValue(currRow, currCol, validValue);
+                                queue.offer(currGraph);
+                                currGraph.setValue(currRow, currCol, 0);
+                            }
+                            visited = true;
+                            break;
+                        } 
+                    }
+                    if (visited) {
                         break;
-                    } 
-                }
-                if (visited) {
-                    break;
+                    }
+
                 }
 
+                // Clear the propagated cells before the next graph is loaded
+                currGraph.undoTo(mark);
             }
         }
+        finally {
+            // Spilled files are deleted even if the search fails
+            queue.close();
+            spillCount = queue.getSpillCount();
+            spillBytesWritten = queue.getSpillBytesWritten();
+            spillBytesRead = queue.getSpillBytesRead();
+        }
+
+        peakFrontierSize = queue.getPeakSize();
+        peakFrontierBytes = queue.getPeakBytes();
+        tally.peakFrontierSize = peakFrontierSize;
+        metrics.flush(tally);
+        metrics.finish(solutions.size());
+        if (metricsListener != null) {
+            metricsListener.accept(metrics);
+        }
         return !previousSolutions.isEmpty();
     }
     
@@ -81,21 +141,63 @@ public class BFSSolver {
     public List<int[][]> getSolutions() {
         return solutions;
     }
-    
-    // Convert the graph to the string in order to check if it is unique
-    private String convertToString (SudokuGraph graph) {
-        // Initialize a stringbuilder, which we will use to create our string 
-        StringBuilder s = new StringBuilder();
 
-        int [][] grid = graph.copyGrid();
+    /**
+     * Sets a listener that is handed the metrics of every solve when it ends.
+     */
+    public void setMetricsListener(Consumer<SearchMetrics> metricsListener) {
+        this.metricsListener = metricsListener;
+    }
 
-        // Append each value in the grid to the end of the string
-        for (int[] row : grid) {
-            for (int col : row) {
-                s.append(col);
-            }
-        }
-        // Return the string representation of the board
-        return s.toString();
+    /**
+     * Gets the metrics of the last solve.
+     */
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Keeps at most about maxInHeapStates queued states in the heap (0, the default, for no limit)
+     * and spills older ones to memory-mapped files in a new directory inside spillDirectory
+     * (null for the system temp directory), so a search can queue more states than the heap holds.
+     */
+    public void setSpillToDisk(int maxInHeapStates, Path spillDirectory) {
+        this.maxInHeapStates = Math.max(0, maxInHeapStates);
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Gets the number of segment files the last solve wrote.
+     */
+    public long getSpillCount() {
+        return spillCount;
+    }
+
+    /**
+     * Gets the bytes the last solve wrote to segment files.
+     */
+    public long getSpillBytesWritten() {
+        return spillBytesWritten;
+    }
+
+    /**
+     * Gets the bytes the last solve read back from segment files.
+     */
+    public long getSpillBytesRead() {
+        return spillBytesRead;
+    }
+
+    /**
+     * Gets the largest number of states that were queued at once during the last solve.
+     */
+    public int getPeakFrontierSize() {
+        return peakFrontierSize;
+    }
+
+    /**
+     * Gets the packed size of the queue at its peak, in bytes.
+     */
+    public long getPeakFrontierBytes() {
+        return peakFrontierBytes;
     }
 }
@@ -0,0 +1,175 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares conflict-directed backjumping with a nogood cache (see BackjumpingSearch) against
+ * plain chronological backtracking, in DLSSolver and in ImprovementDLS.
+ *
+ * The boards are the bundled puzzles plus generated 9x9 boards with few givens, where the search
+ * has real dead ends to jump over. Every board is solved for all of its solutions up to a cap,
+ * so a search that stops at its first solution does not hide the work that backjumping saves.
+ * Each row is one solver, cell order, and mode, over every board: the nodes expanded, the
+ * backjumps and nogood hits (averaged over the runs, since the parallel counts depend on the
+ * thread timing), and the sum of the median wall time of each board. Both modes must
+ * find the same solutions; a board where they differ is counted in the last column.
+ *
+ * Usage: java BackjumpingBenchmark [-n generatedBoards] [-k clueRatio] [-m maxSolutions]
+ *                                  [-r runs] [-s seed]
+ * Run it from the folder with the puzzle files, like the mains.
+ */
+public class BackjumpingBenchmark {
+    private static final int DEFAULT_BOARDS = 20;
+    // Few enough givens that first-empty search runs into dead ends, enough that it finishes quickly
+    private static final double DEFAULT_CLUE_RATIO = 0.3;
+    private static final int DEFAULT_MAX_SOLUTIONS = 100;
+    private static final int DEFAULT_RUNS = 5;
+    private static final long DEFAULT_SEED = 2025;
+    private static final CellOrder[] CELL_ORDERS = {CellOrder.FIRST_EMPTY, CellOrder.MOST_CONSTRAINED};
+
+    public static void main(String[] args) {
+        int boardCount = DEFAULT_BOARDS;
+        double clueRatio = DEFAULT_CLUE_RATIO;
+        int maxSolutions = DEFAULT_MAX_SOLUTIONS;
+        int runs = DEFAULT_RUNS;
+        long seed = DEFAULT_SEED;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-n": boardCount = Integer.parseInt(args[++i]); break;
+                case "-k": clueRatio = Double.parseDouble(args[++i]); break;
+                case "-m": maxSolutions = Integer.parseInt(args[++i]); break;
+                case "-r": runs = Integer.parseInt(args[++i]); break;
+                case "-s": seed = Long.parseLong(args[++i]); break;
+                default:
+                    System.out.println("Unknown option " + args[i]);
+                    return;
+            }
+        }
+
+        List<int[][]> boards = new ArrayList<>();
+        for (Map.Entry<String, int[][]> entry : SolverBenchmark.readBoards().entrySet()) {
+            boards.add(entry.getValue());
+        }
+        Random random = new Random(seed);
+        for (int i = 0; i < boardCount; i++) {
+            boards.add(ScalingBenchmark.generate(9, clueRatio, random));
+        }
+
+        PrintStream console = System.out;
+        console.printf("%-15s %-16s %-13s %12s %10s %12s %12s %10s%n", "Solver", "Cell order", "Mode",
+                "Nodes", "Backjumps", "Nogood hits", "Time (ms)", "Mismatches");
+        // The solvers print a line per solve; keep that out of the table
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try (SolverPool pool = SolverPool.workStealing()) {
+            for (boolean parallel : new boolean[]{false, true}) {
+                for (CellOrder cellOrder : CELL_ORDERS) {
+                    // Plain backtracking first, so its solutions are what backjumping is checked against
+                    List<List<int[][]>> expected = new ArrayList<>();
+                    for (boolean backjumping : new boolean[]{false, true}) {
+                        Row row = new Row();
+                        for (int i = 0; i < boards.size(); i++) {
+                            List<int[][]> found = measure(boards.get(i), parallel ? pool : null, cellOrder,
+                                    backjumping, maxSolutions, runs, row);
+                            if (!backjumping) {
+                                expected.add(found);
+                            } else if (!sameSolutions(expected.get(i), found, parallel && found.size() >= maxSolutions)) {
+                                row.mismatches++;
+                            }
+                        }
+                        console.printf(Locale.ROOT, "%-15s %-16s %-13s %12d %10d %12d %12.2f %10d%n",
+                                parallel ? "ImprovementDLS" : "DLSSolver", cellOrder,
+                                backjumping ? "backjumping" : "chronological", row.nodes / runs,
+                                row.backjumps / runs, row.nogoodHits / runs, row.nanos / 1e6, row.mismatches);
+                    }
+                }
+            }
+        }
+        finally {
+            System.setOut(console);
+        }
+    }
+
+    /**
+     * Solves a board runs times, plus once to warm up, and adds its counts and median time to row.
+     * @param pool the shared pool for ImprovementDLS, or null for DLSSolver
+     * @return the solutions of the last run
+     */
+    private static List<int[][]> measure(int[][] board, SolverPool pool, CellOrder cellOrder, boolean backjumping,
+                                         int maxSolutions, int runs, Row row) {
+        int depthLimit = board.length * board.length;
+        long[] times = new long[runs];
+        List<int[][]> solutions = null;
+        for (int run = -1; run < runs; run++) {
+            long start = System.nanoTime();
+            long nodes;
+            long backjumps;
+            long nogoodHits;
+            if (pool == null) {
+                DLSSolver solver = new DLSSolver();
+                solver.setCellOrder(cellOrder);
+                solver.setBackjumping(backjumping);
+                solver.setMaxSolutions(maxSolutions);
+                solver.solve(new SudokuGraph(board), depthLimit);
+                solutions = solver.getSolutions();
+                nodes = solver.getMetrics().getNodesExpanded();
+                backjumps = solver.getBackjumps();
+                nogoodHits = solver.getNogoodHits();
+            } else {
+                ImprovementDLS solver = new ImprovementDLS(pool);
+                solver.setCellOrder(cellOrder);
+                solver.setBackjumping(backjumping);
+                solver.solve(new SudokuGraph(board), depthLimit, maxSolutions);
+                solutions = solver.getSolutions();
+                nodes = solver.getMetrics().getNodesExpanded();
+                backjumps = solver.getBackjumps();
+                nogoodHits = solver.getNogoodHits();
+            }
+            if (run < 0) {
+                continue; // warmup
+            }
+            times[run] = System.nanoTime() - start;
+            row.nodes += nodes;
+            row.backjumps += backjumps;
+            row.nogoodHits += nogoodHits;
+        }
+        Arrays.sort(times);
+        row.nanos += times[runs / 2];
+        return solutions;
+    }
+
+    // The same solutions, in any order. When the cap was reached, which solutions the parallel
+    // search found first depends on the thread timing, so only the count can be compared
+    private static boolean sameSolutions(List<int[][]> expected, List<int[][]> found, boolean countOnly) {
+        if (expected.size() != found.size()) {
+            return false;
+        }
+        if (countOnly) {
+            return true;
+        }
+        List<String> a = new ArrayList<>();
+        List<String> b = new ArrayList<>();
+        for (int[][] grid : expected) {
+            a.add(Arrays.deepToString(grid));
+        }
+        for (int[][] grid : found) {
+            b.add(Arrays.deepToString(grid));
+        }
+        a.sort(null);
+        b.sort(null);
+        return a.equals(b);
+    }
+
+    // Totals of one table row
+    private static class Row {
+        private long nodes;
+        private long backjumps;
+        private long nogoodHits;
+        private long nanos;
+        private int mismatches;
+    }
+}
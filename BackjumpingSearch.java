@@ -0,0 +1,449 @@
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Depth-first search with conflict-directed backjumping and a nogood cache, used by DLSSolver and
+ * ImprovementDLS when backjumping is turned on.
+ *
+ * Every cell filled during the search remembers which decisions forced it: a decision depends on
+ * itself, and a cell filled by propagate on the decisions behind the peers that ruled out its
+ * other values (a naked single) or the other cells of its unit (a hidden single). When a cell
+ * runs out of candidates, the union of those sets for the peers that took its values is the
+ * conflict set: the decisions that together caused the dead end. Every depth keeps the union of
+ * the conflict sets of its failed values, plus the decisions that ruled out the values it never
+ * had. When its last value fails, the search jumps straight back to the deepest decision in that
+ * set instead of the one just above, because every depth in between had nothing to do with it.
+ *
+ * The set of a depth that ran out of values is also a nogood: those decisions, whatever else is
+ * on the board, leave no solution. Nogoods go into a bounded NogoodCache, and each node checks
+ * the cache for a nogood that mentions the decision that led to it before branching, so the same
+ * dead end is cut off at once when it shows up again under different earlier decisions.
+ *
+ * A branch that found a solution, or stopped at the depth limit, has no conflict set; it counts
+ * as depending on every decision above it, so the search never jumps over it or records it.
+ * Sets of decisions are bitsets indexed by depth. One search object is reused from solve to
+ * solve by one thread at a time.
+ */
+public class BackjumpingSearch {
+    /**
+     * Told about every solution the search finds.
+     */
+    public interface SolutionHandler {
+        /**
+         * @return true to stop the search
+         */
+        boolean onSolution(SudokuGraph graph);
+    }
+
+    private static final int DEFAULT_NOGOOD_SLOTS = 1 << 14;
+    // Longer nogoods are rarely on the board again, so they are not worth a slot
+    private static final int MAX_NOGOOD_DECISIONS = 8;
+
+    private final NogoodCache nogoods;
+    private long backjumps; // Failures that skipped at least one depth
+    private long skippedDepths;
+    private long nogoodHits;
+    private long nogoodsRecorded;
+
+    // Sized for the board of the current search
+    private int words; // Longs per depth bitset
+    private int[] levelOf; // Depth a cell was filled at, -1 if it was filled before the search started
+    private int[] fillOrder; // When a cell was filled, so a reason only uses cells filled before it
+    private int clock;
+    private long[] reasons; // words per cell: the decisions a filled cell depends on
+    private long[] conflicts; // words per depth: the conflict set gathered so far
+    private boolean[] inexact; // A depth saw a solution or the depth limit, so it has no real conflict set
+    private long[] scratch;
+    private int[] bestPeer; // For each value, the peer holding it that depends on the fewest decisions
+    private int[] cellStack;
+    private int[] valueStack;
+    private int[] nextValue;
+    private int[] valueCount;
+    private int[] markStack;
+
+    public BackjumpingSearch() {
+        this(DEFAULT_NOGOOD_SLOTS);
+    }
+
+    public BackjumpingSearch(int nogoodSlots) {
+        this.nogoods = new NogoodCache(nogoodSlots);
+    }
+
+    /**
+     * Searches every way of filling the graph's board, handing each solution to handler.
+     * The nogoods of an earlier search are forgotten, since they only hold for that board.
+     * @param selector picks the branch cell; null branches on the first empty cell
+     * @param depthOffset added to the depths reported to the tally
+     * @param stop checked at every node; the search gives up as soon as it returns true
+     * @return true if the search stopped early (stop, or handler asked it to); false if every
+     *         branch was searched, in which case the board is back the way it was
+     */
+    public boolean search(SudokuGraph graph, int maxDepth, CellSelector selector, ValueOrder valueOrder,
+                          SearchMetrics.Tally tally, long depthOffset, BooleanSupplier stop,
+                          SolutionHandler handler) {
+        prepare(graph);
+        int size = graph.getSize();
+        int depth = 0;
+        boolean entering = true; // false when we come back up to a depth to try its next value
+        while (true) {
+            if (entering) {
+                markStack[depth] = graph.getTrailSize();
+                // The depth limit is not a conflict, so the branch depends on everything above it
+                if (depth == maxDepth) {
+                    tally.backtracks++;
+                    depth = fail(graph, depth, allAbove(depth), true);
+                    if (depth < 0) {
+                        return false;
+                    }
+                    entering = false;
+                    continue;
+                }
+                if (stop.getAsBoolean()) {
+                    return true;
+                }
+
+                tally.nodesExpanded++;
+                tally.reachedDepth(depthOffset + depth);
+                boolean consistent = graph.propagate();
+                tally.propagationFills += graph.getTrailSize() - markStack[depth];
+                explainFills(graph, markStack[depth], depth);
+
+                long[] conflict = null;
+                if (!consistent) {
+                    if (selector != null) {
+                        selector.onContradiction(graph);
+                    }
+                    conflict = explainMissing(graph, graph.getConflictCell(), 0, depth);
+                } else if (depth > 0) {
+                    // Cut the branch off if the decision that led here completes a known nogood
+                    int decided = cellStack[depth - 1];
+                    int[] nogood = nogoods.find(graph, decided, graph.getCell(decided));
+                    if (nogood != null) {
+                        nogoodHits++;
+                        conflict = explainNogood(nogood);
+                    }
+                }
+                if (conflict != null) {
+                    tally.backtracks++;
+                    depth = fail(graph, depth, conflict, false);
+                    if (depth < 0) {
+                        return false;
+                    }
+                    entering = false;
+                    continue;
+                }
+
+                if (graph.isPuzzleSolved()) {
+                    if (handler.onSolution(graph)) {
+                        return true;
+                    }
+                    depth = fail(graph, depth, allAbove(depth), true);
+                    if (depth < 0) {
+                        return false;
+                    }
+                    entering = false;
+                    continue;
+                }
+
+                int cellId = selector != null ? selector.selectCell(graph)
+                        : graph.nextEmptyCell(depth == 0 ? 0 : cellStack[depth - 1]);
+                long candidates = graph.getCandidates(cellId);
+                cellStack[depth] = cellId;
+                nextValue[depth] = 0;
+                valueCount[depth] = valueOrder.order(graph, cellId, candidates, valueStack, depth * size);
+                // The values the cell never had fail because of the decisions that took them
+                System.arraycopy(explainMissing(graph, cellId, candidates, depth), 0, conflicts, depth * words, words);
+                inexact[depth] = false;
+            }
+
+            if (nextValue[depth] == valueCount[depth]) {
+                // Every value failed: the depth's conflict set is a nogood, and the place to jump to
+                tally.backtracks++;
+                graph.setCell(cellStack[depth], 0);
+                System.arraycopy(conflicts, depth * words, scratch, 0, words);
+                if (!inexact[depth]) {
+                    recordNogood(graph);
+                }
+                depth = fail(graph, depth, scratch, inexact[depth]);
+                if (depth < 0) {
+                    return false;
+                }
+                entering = false;
+                continue;
+            }
+
+            // Put the next value in the grid (this replaces the value that just failed)
+            int cellId = cellStack[depth];
+            graph.setCell(cellId, valueStack[depth * size + nextValue[depth]++]);
+            levelOf[cellId] = depth;
+            fillOrder[cellId] = ++clock;
+            Arrays.fill(reasons, cellId * words, (cellId + 1) * words, 0);
+            reasons[cellId * words + (depth >>> 6)] |= 1L << depth;
+            depth++;
+            entering = true;
+        }
+    }
+
+    // Size the arrays for a board and forget the last search
+    private void prepare(SudokuGraph graph) {
+        int cells = graph.getSize() * graph.getSize();
+        int maxStack = graph.getEmptyCellCount() + 1;
+        words = (maxStack + 63) >>> 6;
+        if (levelOf == null || levelOf.length != cells) {
+            levelOf = new int[cells];
+            fillOrder = new int[cells];
+            bestPeer = new int[graph.getSize() + 1];
+        }
+        if (reasons == null || reasons.length < cells * words) {
+            reasons = new long[cells * words];
+            scratch = new long[words];
+        }
+        if (cellStack == null || cellStack.length < maxStack || valueStack.length < maxStack * graph.getSize()) {
+            cellStack = new int[maxStack];
+            valueStack = new int[maxStack * graph.getSize()];
+            nextValue = new int[maxStack];
+            valueCount = new int[maxStack];
+            markStack = new int[maxStack];
+            inexact = new boolean[maxStack];
+        }
+        if (conflicts == null || conflicts.length < maxStack * words) {
+            conflicts = new long[maxStack * words];
+        }
+        if (scratch.length < words) {
+            scratch = new long[words];
+        }
+        Arrays.fill(levelOf, -1);
+        Arrays.fill(fillOrder, 0);
+        clock = 0;
+        nogoods.clear();
+    }
+
+    /**
+     * A node at depth failed with the given conflict set (decisions above depth). Undo down to the
+     * deepest decision in the set and add the rest of the set to that depth's conflict set.
+     * @return the depth to try the next value of, or -1 if the set was empty and nothing is left
+     */
+    private int fail(SudokuGraph graph, int depth, long[] conflict, boolean isInexact) {
+        int target = -1;
+        for (int w = words - 1; w >= 0 && target < 0; w--) {
+            if (conflict[w] != 0) {
+                target = (w << 6) + 63 - Long.numberOfLeadingZeros(conflict[w]);
+            }
+        }
+        // Clear the decisions of every depth that is skipped, then what propagation filled below the target
+        for (int d = depth - 1; d > target; d--) {
+            graph.setCell(cellStack[d], 0);
+        }
+        graph.undoTo(markStack[target + 1]);
+        if (target < 0) {
+            return -1;
+        }
+        if (target < depth - 1) {
+            backjumps++;
+            skippedDepths += depth - 1 - target;
+        }
+        conflict[target >>> 6] &= ~(1L << target);
+        for (int w = 0; w < words; w++) {
+            conflicts[target * words + w] |= conflict[w];
+        }
+        inexact[target] |= isInexact;
+        return target;
+    }
+
+    // Every decision above depth
+    private long[] allAbove(int depth) {
+        Arrays.fill(scratch, 0, words, 0);
+        for (int d = 0; d < depth; d++) {
+            scratch[d >>> 6] |= 1L << d;
+        }
+        return scratch;
+    }
+
+    // Work out what each cell propagate just filled depends on, in the order it filled them
+    private void explainFills(SudokuGraph graph, int from, int depth) {
+        // Stamp them all first, so none of them passes for a cell filled before the others
+        for (int t = from; t < graph.getTrailSize(); t++) {
+            int cellId = graph.getTrailCell(t);
+            fillOrder[cellId] = ++clock;
+            // At depth 0 they are forced by the board the search started from
+            levelOf[cellId] = depth == 0 ? -1 : depth;
+        }
+        if (depth == 0) {
+            return;
+        }
+        for (int t = from; t < graph.getTrailSize(); t++) {
+            int cellId = graph.getTrailCell(t);
+            if (!explainNakedSingle(graph, cellId) && !explainHiddenSingle(graph, cellId)) {
+                // Never expected, but depending on everything above is always safe
+                System.arraycopy(allAbove(depth), 0, reasons, cellId * words, words);
+            }
+        }
+    }
+
+    // A naked single: every other value is held by a peer that was filled first
+    private boolean explainNakedSingle(SudokuGraph graph, int cellId) {
+        int value = graph.getCell(cellId);
+        findHolders(graph, cellId, fillOrder[cellId]);
+        int offset = cellId * words;
+        Arrays.fill(reasons, offset, offset + words, 0);
+        for (int other = 1; other <= graph.getSize(); other++) {
+            if (other == value) {
+                continue;
+            }
+            if (bestPeer[other] < 0) {
+                return false;
+            }
+            orReason(bestPeer[other], reasons, offset);
+        }
+        return true;
+    }
+
+    // A hidden single: in one of the cell's units, every other cell was filled first or could not take the value
+    private boolean explainHiddenSingle(SudokuGraph graph, int cellId) {
+        SudokuTopology topology = graph.getTopology();
+        int size = graph.getSize();
+        int value = graph.getCell(cellId);
+        int before = fillOrder[cellId];
+        int offset = cellId * words;
+        int[] units = {topology.rowOf(cellId), size + topology.colOf(cellId), 2 * size + topology.boxOf(cellId)};
+        for (int unit : units) {
+            Arrays.fill(reasons, offset, offset + words, 0);
+            boolean explained = true;
+            for (int i = 0; i < size && explained; i++) {
+                int other = topology.getUnitCell(unit, i);
+                if (other == cellId) {
+                    continue;
+                }
+                if (graph.getCell(other) != 0 && fillOrder[other] < before) {
+                    orReason(other, reasons, offset);
+                } else {
+                    int holder = holderOf(graph, other, value, before);
+                    if (holder < 0) {
+                        explained = false;
+                    } else {
+                        orReason(holder, reasons, offset);
+                    }
+                }
+            }
+            if (explained) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The decisions that ruled out the values of a cell that are not in candidates (all of them
+     * for a cell left with none). Returns scratch.
+     */
+    private long[] explainMissing(SudokuGraph graph, int cellId, long candidates, int depth) {
+        findHolders(graph, cellId, Integer.MAX_VALUE);
+        Arrays.fill(scratch, 0, words, 0);
+        for (int value = 1; value <= graph.getSize(); value++) {
+            if ((candidates & (1L << (value - 1))) != 0) {
+                continue;
+            }
+            if (bestPeer[value] < 0) {
+                return allAbove(depth);
+            }
+            orReason(bestPeer[value], scratch, 0);
+        }
+        return scratch;
+    }
+
+    // The decisions behind the cells of a nogood that is on the board. Returns scratch
+    private long[] explainNogood(int[] nogood) {
+        Arrays.fill(scratch, 0, words, 0);
+        for (int i = 0; i < nogood.length; i += 2) {
+            orReason(nogood[i], scratch, 0);
+        }
+        return scratch;
+    }
+
+    // Remember the decisions in the current depth's conflict set as a nogood
+    private void recordNogood(SudokuGraph graph) {
+        int count = 0;
+        for (int w = 0; w < words; w++) {
+            count += Long.bitCount(scratch[w]);
+        }
+        if (count == 0 || count > MAX_NOGOOD_DECISIONS) {
+            return;
+        }
+        int[] pairs = new int[2 * count];
+        int next = 0;
+        for (int w = 0; w < words; w++) {
+            for (long bits = scratch[w]; bits != 0; bits &= bits - 1) {
+                int d = (w << 6) + Long.numberOfTrailingZeros(bits);
+                pairs[next++] = cellStack[d];
+                pairs[next++] = graph.getCell(cellStack[d]);
+            }
+        }
+        nogoods.add(pairs);
+        nogoodsRecorded++;
+    }
+
+    // For every value, the peer of cellId filled before `before` that holds it, preferring the one
+    // filled earliest in the search (-1 when no peer holds the value)
+    private void findHolders(SudokuGraph graph, int cellId, int before) {
+        SudokuTopology topology = graph.getTopology();
+        Arrays.fill(bestPeer, -1);
+        for (int i = 0; i < topology.getPeerCount(); i++) {
+            int peer = topology.getPeer(cellId, i);
+            int value = graph.getCell(peer);
+            if (value != 0 && fillOrder[peer] < before
+                    && (bestPeer[value] < 0 || levelOf[peer] < levelOf[bestPeer[value]])) {
+                bestPeer[value] = peer;
+            }
+        }
+    }
+
+    // The peer of cellId filled before `before` that holds value, or -1
+    private int holderOf(SudokuGraph graph, int cellId, int value, int before) {
+        SudokuTopology topology = graph.getTopology();
+        int best = -1;
+        for (int i = 0; i < topology.getPeerCount(); i++) {
+            int peer = topology.getPeer(cellId, i);
+            if (graph.getCell(peer) == value && fillOrder[peer] < before
+                    && (best < 0 || levelOf[peer] < levelOf[best])) {
+                best = peer;
+            }
+        }
+        return best;
+    }
+
+    // Add the decisions a filled cell depends on to dest; a cell from the starting board depends on none
+    private void orReason(int cellId, long[] dest, int offset) {
+        if (levelOf[cellId] < 0) {
+            return;
+        }
+        int from = cellId * words;
+        for (int w = 0; w < words; w++) {
+            dest[offset + w] |= reasons[from + w];
+        }
+    }
+
+    /**
+     * Gets the number of failures that jumped back past at least one depth, over every search so far.
+     */
+    public long getBackjumps() {
+        return backjumps;
+    }
+
+    /**
+     * Gets the number of depths that backjumps skipped, over every search so far.
+     */
+    public long getSkippedDepths() {
+        return skippedDepths;
+    }
+
+    /**
+     * Gets the number of branches cut off by a cached nogood, over every search so far.
+     */
+    public long getNogoodHits() {
+        return nogoodHits;
+    }
+
+    public long getNogoodsRecorded() {
+        return nogoodsRecorded;
+    }
+}
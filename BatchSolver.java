@@ -0,0 +1,255 @@
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Solves a stream of puzzles on a pool of worker threads and writes one line per puzzle:
+ * its position in the input (starting at 1), a space, and then the solution as one row-major
+ * line in the PuzzleReader alphabet, or "unsolved" if the puzzle has no solution.
+ *
+ * At most maxInFlight puzzles are being read ahead, solved, or waiting to be written at any
+ * time. Once that many are out, reading waits for a result to be written, so memory use stays
+ * flat however long the input is. Results are written in input order by default, or as soon
+ * as each one is done.
+ *
+ * Usage: java BatchSolver [-t threads] [-w maxInFlight] [-unordered] [-oneline] [file]
+ * With no file (or "-") the puzzles are read from standard input. With -oneline the file holds
+ * one puzzle per line and is read with MappedPuzzleReader.
+ */
+public class BatchSolver {
+    // Enough queued puzzles per thread that workers never wait on the reader
+    private static final int IN_FLIGHT_PER_THREAD = 4;
+
+    private final SolverPool pool;
+    private final int maxInFlight;
+    private boolean ordered;
+    private long puzzleCount;
+    private long solvedCount;
+
+    /**
+     * Creates a batch solver that runs on a pool owned by the caller.
+     * @param maxInFlight Most puzzles held in memory at once
+     */
+    public BatchSolver(SolverPool pool, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1: " + maxInFlight);
+        }
+        this.pool = pool;
+        this.maxInFlight = maxInFlight;
+        this.ordered = true;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int maxInFlight = -1;
+        boolean ordered = true;
+        boolean oneLine = false;
+        String fileName = "-";
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-t": threads = Integer.parseInt(args[++i]); break;
+                case "-w": maxInFlight = Integer.parseInt(args[++i]); break;
+                case "-unordered": ordered = false; break;
+                case "-oneline": oneLine = true; break;
+                default: fileName = args[i];
+            }
+        }
+        if (maxInFlight < 0) {
+            maxInFlight = threads * IN_FLIGHT_PER_THREAD;
+        }
+        if (oneLine && fileName.equals("-")) {
+            System.err.println("-oneline needs a file, since standard input cannot be memory-mapped");
+            return;
+        }
+
+        if (oneLine) {
+            try (MappedPuzzleReader puzzles = new MappedPuzzleReader(Path.of(fileName))) {
+                runBatch(puzzles, threads, maxInFlight, ordered);
+            }
+        } else {
+            try (PuzzleReader puzzles = new PuzzleReader(fileName.equals("-") ? new InputStreamReader(System.in)
+                                                                                : new FileReader(fileName))) {
+                runBatch(puzzles, threads, maxInFlight, ordered);
+            }
+        }
+    }
+
+    // Solve the puzzles on a pool of its own, writing to standard output and a summary to standard error
+    private static void runBatch(Iterator<int[][]> puzzles, int threads, int maxInFlight, boolean ordered)
+            throws IOException, InterruptedException {
+        long startTime = System.nanoTime();
+        // The queue can hold every puzzle in flight, so workers never push tasks back onto the reader
+        try (SolverPool pool = SolverPool.fixed(threads, maxInFlight)) {
+            BatchSolver batchSolver = new BatchSolver(pool, maxInFlight);
+            batchSolver.setOrdered(ordered);
+            Writer output = new BufferedWriter(new OutputStreamWriter(System.out));
+            batchSolver.solveAll(puzzles, output);
+            long endTime = System.nanoTime();
+            System.err.println("Solved " + batchSolver.getSolvedCount() + " of " + batchSolver.getPuzzleCount() +
+                               " puzzles in " + (endTime - startTime) / 1_000_000 + "ms");
+        }
+    }
+
+    /**
+     * Solves every puzzle from the iterator and writes the result lines to output, which is
+     * flushed but not closed. Returns once every line has been written.
+     * @return the number of puzzles read
+     * @throws IOException if writing a result failed; no more puzzles are read after that
+     */
+    public long solveAll(Iterator<int[][]> puzzles, Writer output) throws IOException, InterruptedException {
+        BatchRun run = new BatchRun(output);
+        puzzleCount = 0;
+        solvedCount = 0;
+        try {
+            while (puzzles.hasNext()) {
+                // Wait here until there is room, which is what keeps memory flat
+                run.permits.acquire();
+                if (run.failure != null) {
+                    run.permits.release();
+                    break;
+                }
+                int[][] grid = puzzles.next();
+                long index = ++puzzleCount;
+                pool.getExecutor().execute(() -> {
+                    String solution = null;
+                    try {
+                        solution = solveToLine(grid);
+                    }
+                    finally {
+                        // Always hand the permit back, or the reader would wait forever
+                        run.complete(index, solution);
+                    }
+                });
+            }
+        }
+        finally {
+            // Every permit is back once every started puzzle has been written
+            run.permits.acquireUninterruptibly(maxInFlight);
+            run.permits.release(maxInFlight);
+        }
+
+        synchronized (run) {
+            if (run.failure == null) {
+                output.flush();
+            }
+            solvedCount = run.solved;
+        }
+        if (run.failure != null) {
+            throw run.failure;
+        }
+        return puzzleCount;
+    }
+
+    /**
+     * Solves one puzzle and formats its solution as one line.
+     * @return the solution, or null if there is none or the board is not a valid size
+     */
+    private static String solveToLine(int[][] grid) {
+        try {
+            DLSSolver solver = new DLSSolver();
+            solver.setQuiet(true);
+            // The depth limit is the number of cells, which never cuts the search short
+            if (!solver.solve(new SudokuGraph(grid), grid.length * grid.length)) {
+                return null;
+            }
+            int[][] solution = solver.getSolutions().get(0);
+            StringBuilder line = new StringBuilder(grid.length * grid.length);
+            for (int[] row : solution) {
+                for (int value : row) {
+                    line.append(PuzzleReader.encodeValue(value));
+                }
+            }
+            return line.toString();
+        }
+        catch (IllegalArgumentException e) {
+            // A board whose size is not a perfect square
+            return null;
+        }
+    }
+
+    /**
+     * Writes finished results in the right order and hands their permits back to the reader.
+     * Only one batch runs at a time per BatchRun, and every method that writes holds its lock.
+     */
+    private class BatchRun {
+        private final Writer output;
+        private final Semaphore permits;
+        private final String[] waiting; // Finished results that are not written yet, by index % maxInFlight
+        private long nextToWrite; // Index of the next result to write in ordered mode
+        private long solved;
+        private volatile IOException failure;
+
+        BatchRun(Writer output) {
+            this.output = output;
+            this.permits = new Semaphore(maxInFlight);
+            this.waiting = new String[maxInFlight];
+            this.nextToWrite = 1;
+        }
+
+        synchronized void complete(long index, String solution) {
+            String line = solution;
+            if (solution != null) {
+                solved++;
+            } else {
+                line = "unsolved";
+            }
+            if (!ordered) {
+                write(index, line);
+                permits.release();
+                return;
+            }
+            // At most maxInFlight indexes past nextToWrite are out, so slots never collide
+            waiting[(int) (index % maxInFlight)] = line;
+            int slot;
+            while (waiting[slot = (int) (nextToWrite % maxInFlight)] != null) {
+                write(nextToWrite, waiting[slot]);
+                waiting[slot] = null;
+                nextToWrite++;
+                permits.release();
+            }
+        }
+
+        // Write one result line. After a failure the results are dropped, but permits still go back
+        private void write(long index, String line) {
+            if (failure != null) {
+                return;
+            }
+            try {
+                output.write(Long.toString(index));
+                output.write(' ');
+                output.write(line);
+                output.write('\n');
+            }
+            catch (IOException e) {
+                failure = e;
+            }
+        }
+    }
+
+    /**
+     * Writes results in input order (the default) or as soon as each puzzle is solved.
+     */
+    public void setOrdered(boolean ordered) {
+        this.ordered = ordered;
+    }
+
+    /**
+     * Gets the number of puzzles read by the last solveAll.
+     */
+    public long getPuzzleCount() {
+        return puzzleCount;
+    }
+
+    /**
+     * Gets the number of puzzles that the last solveAll found a solution for.
+     */
+    public long getSolvedCount() {
+        return solvedCount;
+    }
+}
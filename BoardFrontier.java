@@ -0,0 +1,236 @@
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+
+/**
+ * FIFO queue of packed board states for the BFS solvers.
+ * States are stored back to back in one long[] used as a ring buffer, so queuing a state
+ * costs a few words and no object allocation. The buffer doubles when it is full.
+ *
+ * A spilling frontier (see spilling) keeps a bounded window of the queue in the heap: the oldest
+ * states in the ring buffer and the newest in a write buffer. Whenever the write buffer fills up
+ * while there are older states waiting, it is written out as a segment file, and segments are
+ * read back in order once the ring buffer runs dry. BFS only ever polls the oldest level and
+ * appends to the newest, so every state is written and read at most once. Close a spilling
+ * frontier to delete its files.
+ */
+public class BoardFrontier implements AutoCloseable {
+    private static final int INITIAL_CAPACITY = 64;
+    // Largest segment file, so one mapping of it stays well inside the 2 GB a mapping can hold
+    private static final long MAX_SEGMENT_BYTES = 64L << 20;
+
+    private final PackedBoard codec;
+    private final int wordsPerBoard;
+    private long[] slots;
+    private int capacity; // In states
+    private int head; // Slot of the oldest state
+    private int count;
+    private int peakSize;
+
+    // Only used when spilling; spill is null for a frontier that stays in the heap
+    private final SpillDirectory spill;
+    private final int segmentStates; // States per segment, and most states of the ring buffer
+    private final ArrayDeque<Path> segments = new ArrayDeque<>(); // Oldest first
+    private long[] writeBuffer; // Newest states, queued behind the segments
+    private int writeCount;
+    private long[] staged; // A graph packed by offer, before it is known where it goes
+    private int spilledStates; // States in the segment files
+
+    public BoardFrontier(PackedBoard codec) {
+        this(codec, 0, null);
+    }
+
+    private BoardFrontier(PackedBoard codec, int segmentStates, SpillDirectory spill) {
+        this.codec = codec;
+        this.wordsPerBoard = codec.getWordsPerBoard();
+        this.capacity = INITIAL_CAPACITY;
+        this.slots = new long[capacity * wordsPerBoard];
+        this.spill = spill;
+        this.segmentStates = segmentStates;
+        if (spill != null) {
+            writeBuffer = new long[segmentStates * wordsPerBoard];
+            staged = new long[wordsPerBoard];
+        }
+    }
+
+    /**
+     * Creates a frontier that keeps at most about maxInHeapStates states in the heap and spills
+     * the rest to memory-mapped segment files in a new directory inside spillDirectory (the
+     * system temp directory if it is null).
+     */
+    public static BoardFrontier spilling(PackedBoard codec, int maxInHeapStates, Path spillDirectory) {
+        // Half the window reads, half writes, and no segment is bigger than one mapping should be
+        int segmentStates = (int) Math.min(Math.max(1, maxInHeapStates / 2),
+                MAX_SEGMENT_BYTES / codec.getBytesPerBoard());
+        return new BoardFrontier(codec, segmentStates, new SpillDirectory(spillDirectory));
+    }
+
+    /**
+     * Adds the current state of a graph to the back of the queue.
+     */
+    public void offer(SudokuGraph graph) {
+        if (spill != null) {
+            codec.pack(graph, staged, 0);
+            offerSpilling(staged, 0);
+            return;
+        }
+        // Reserve first: growing replaces the slots array
+        int offset = reserveTail();
+        codec.pack(graph, slots, offset);
+    }
+
+    /**
+     * Adds an already packed state to the back of the queue.
+     */
+    public void offer(long[] packed, int offset) {
+        if (spill != null) {
+            offerSpilling(packed, offset);
+            return;
+        }
+        int tail = reserveTail();
+        System.arraycopy(packed, offset, slots, tail, wordsPerBoard);
+    }
+
+    /**
+     * Claims the slot after the last state and returns its word offset.
+     */
+    private int reserveTail() {
+        if (count == capacity) {
+            grow();
+        }
+        int tail = head + count;
+        if (tail >= capacity) {
+            tail -= capacity;
+        }
+        count++;
+        if (count > peakSize) {
+            peakSize = count;
+        }
+        return tail * wordsPerBoard;
+    }
+
+    // The ring buffer takes new states until it holds a segment's worth; after that they queue
+    // up in the write buffer, which goes to disk whenever it is full
+    private void offerSpilling(long[] packed, int offset) {
+        if (segments.isEmpty() && writeCount == 0 && count < segmentStates) {
+            // Reserve first: growing replaces the slots array
+            int tail = reserveTail();
+            System.arraycopy(packed, offset, slots, tail, wordsPerBoard);
+        } else {
+            System.arraycopy(packed, offset, writeBuffer, writeCount * wordsPerBoard, wordsPerBoard);
+            writeCount++;
+            if (writeCount == segmentStates) {
+                segments.addLast(spill.write(writeBuffer, 0, writeCount * wordsPerBoard));
+                spilledStates += writeCount;
+                writeCount = 0;
+            }
+        }
+        peakSize = Math.max(peakSize, size());
+    }
+
+    /**
+     * Removes the oldest state and writes it into graph.
+     * @return false if the queue was empty
+     */
+    public boolean poll(SudokuGraph graph) {
+        if (count == 0 && spill != null) {
+            refill();
+        }
+        if (count == 0) {
+            return false;
+        }
+        codec.unpack(slots, head * wordsPerBoard, graph);
+        head++;
+        if (head == capacity) {
+            head = 0;
+        }
+        count--;
+        return true;
+    }
+
+    // Move the next oldest states into the empty ring buffer: the oldest segment, or the write
+    // buffer once nothing is left on disk
+    private void refill() {
+        head = 0;
+        while (capacity < segmentStates) {
+            grow();
+        }
+        if (!segments.isEmpty()) {
+            Path segment = segments.pollFirst();
+            count = spill.read(segment, slots, 0) / wordsPerBoard;
+            spill.delete(segment);
+            spilledStates -= count;
+        } else {
+            System.arraycopy(writeBuffer, 0, slots, 0, writeCount * wordsPerBoard);
+            count = writeCount;
+            writeCount = 0;
+        }
+    }
+
+    // Double the buffer, laying the states out from slot 0 again
+    private void grow() {
+        long[] bigger = new long[capacity * 2 * wordsPerBoard];
+        int firstPart = capacity - head;
+        System.arraycopy(slots, head * wordsPerBoard, bigger, 0, firstPart * wordsPerBoard);
+        System.arraycopy(slots, 0, bigger, firstPart * wordsPerBoard, head * wordsPerBoard);
+        slots = bigger;
+        head = 0;
+        capacity *= 2;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Gets the number of queued states, in the heap and on disk.
+     */
+    public int size() {
+        return count + spilledStates + writeCount;
+    }
+
+    /**
+     * Gets the largest number of states that were queued at once.
+     */
+    public int getPeakSize() {
+        return peakSize;
+    }
+
+    /**
+     * Gets the bytes of packed state data held at the peak (buffer slack not included), in the
+     * heap and on disk.
+     */
+    public long getPeakBytes() {
+        return (long) peakSize * codec.getBytesPerBoard();
+    }
+
+    /**
+     * Gets the number of segment files written so far (0 for a frontier that does not spill).
+     */
+    public long getSpillCount() {
+        return spill == null ? 0 : spill.getFilesWritten();
+    }
+
+    /**
+     * Gets the bytes written to segment files so far.
+     */
+    public long getSpillBytesWritten() {
+        return spill == null ? 0 : spill.getBytesWritten();
+    }
+
+    /**
+     * Gets the bytes read back from segment files so far.
+     */
+    public long getSpillBytesRead() {
+        return spill == null ? 0 : spill.getBytesRead();
+    }
+
+    /**
+     * Deletes the segment files of a spilling frontier. The queue cannot be used afterwards.
+     */
+    @Override
+    public void close() {
+        if (spill != null) {
+            spill.close();
+        }
+    }
+}
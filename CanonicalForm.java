@@ -0,0 +1,359 @@
+/**
+ * The canonical form of a Sudoku board: one fixed representative of every board that is the
+ * same up to symmetry, along with the transform that turns this board into it.
+ *
+ * The symmetries are the ones that keep every row, column, and box a unit: transposing, swapping
+ * bands (groups of boxSize rows), swapping rows inside a band, swapping stacks (groups of
+ * boxSize columns), swapping columns inside a stack, and relabelling the values. The canonical
+ * board is the one that reads smallest row-major once values are relabelled in the order they
+ * first appear (empty cells stay 0), found by a branch and bound search over the transforms.
+ *
+ * Boards larger than 9x9 skip the search: on them it almost always runs out of steps, after
+ * costing several times a whole solve. The form then only undoes relabelling, so boards that are
+ * the same up to relabelling still share a key, and every mapping stays exact. On 9x9 and
+ * smaller boards the search also gives up after a fixed number of steps, which in practice only
+ * happens on nearly empty ones, and falls back to the same form.
+ */
+public final class CanonicalForm {
+    // Rows tried by the symmetry search before it settles for relabelling only
+    private static final long MAX_SEARCH_STEPS = 200_000;
+    // Largest board size that gets the symmetry search; bigger boards are only relabelled
+    private static final int MAX_SEARCH_SIZE = 9;
+
+    private final int size;
+    private final int[] cells; // Canonical board, row-major
+    private final boolean transposed;
+    private final int[] rowMap; // Canonical row -> row of the (transposed if needed) original
+    private final int[] colMap; // Canonical column -> column of the (transposed if needed) original
+    private final int[] toCanonical; // Original value -> canonical value, a full permutation of 1..size
+    private final int[] toOriginal; // Canonical value -> original value
+    private final boolean complete; // false when the search gave up
+
+    private CanonicalForm(int size, int[] cells, boolean transposed, int[] rowMap, int[] colMap,
+                          int[] labels, boolean complete) {
+        this.size = size;
+        this.cells = cells;
+        this.transposed = transposed;
+        this.rowMap = rowMap;
+        this.colMap = colMap;
+        this.complete = complete;
+
+        // Values that are not on the board get the labels that are left, in order
+        toCanonical = labels.clone();
+        toOriginal = new int[size + 1];
+        int nextLabel = 0;
+        for (int value = 1; value <= size; value++) {
+            nextLabel = Math.max(nextLabel, toCanonical[value]);
+        }
+        for (int value = 1; value <= size; value++) {
+            if (toCanonical[value] == 0) {
+                toCanonical[value] = ++nextLabel;
+            }
+            toOriginal[toCanonical[value]] = value;
+        }
+    }
+
+    /**
+     * Finds the canonical form of a board.
+     */
+    public static CanonicalForm of(int[][] grid) {
+        Search search = new Search(grid);
+        return grid.length > MAX_SEARCH_SIZE ? search.relabelOnly() : search.run();
+    }
+
+    /**
+     * Gets a key that is equal for two boards exactly when their canonical boards are equal.
+     */
+    public String getKey() {
+        char[] key = new char[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            key[i] = (char) cells[i];
+        }
+        return new String(key);
+    }
+
+    /**
+     * Applies this board's transform to another board of the same size, such as one of its solutions.
+     */
+    public int[][] toCanonical(int[][] grid) {
+        int[][] result = new int[size][size];
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                result[row][col] = toCanonical[originalValue(grid, row, col)];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Undoes this board's transform, turning a board in canonical layout (such as a solution of
+     * the canonical board) into the layout of the original board.
+     */
+    public int[][] toOriginal(int[][] canonicalGrid) {
+        int[][] result = new int[size][size];
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                int r = transposed ? colMap[col] : rowMap[row];
+                int c = transposed ? rowMap[row] : colMap[col];
+                result[r][c] = toOriginal[canonicalGrid[row][col]];
+            }
+        }
+        return result;
+    }
+
+    // The value of an original board that lands on a canonical cell
+    private int originalValue(int[][] grid, int row, int col) {
+        return transposed ? grid[colMap[col]][rowMap[row]] : grid[rowMap[row]][colMap[col]];
+    }
+
+    /**
+     * Checks whether the full symmetry search finished, so the key is the same for every board
+     * that is equal up to symmetry (and not just up to relabelling).
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Branch and bound search for the smallest relabelled board over all transforms.
+     * Each column order is tried in full; the rows are then picked one at a time, and a row
+     * order is dropped as soon as one of its rows reads larger than the best board's row.
+     */
+    private static class Search {
+        private final int[][] grid;
+        private final int size;
+        private final int boxSize;
+        private final int[][] boxPermutations; // Every ordering of 0..boxSize-1
+
+        private int[][] source; // The board or its transpose
+        private boolean sourceTransposed;
+        private final int[] colOrder;
+        private final int[] rowOrder;
+        private final boolean[] usedRow;
+        private final boolean[] usedBand;
+        private final boolean[] usedStack;
+        private final int[] labels; // Value -> label on the current path, 0 if not labelled yet
+        private final int[] labelled; // Values in the order they were labelled, to undo them
+        private int labelCount;
+        private final int[] current; // Relabelled rows picked so far
+
+        private int[] best;
+        private boolean bestTransposed;
+        private int[] bestRowOrder;
+        private int[] bestColOrder;
+        private int[] bestLabels;
+        private long bestVersion; // Bumped every time best is replaced
+        private long steps;
+        private boolean gaveUp;
+
+        Search(int[][] grid) {
+            this.grid = grid;
+            this.size = grid.length;
+            this.boxSize = SudokuTopology.forSize(size).getBoxSize();
+            this.boxPermutations = permutations(boxSize);
+            this.colOrder = new int[size];
+            this.rowOrder = new int[size];
+            this.usedRow = new boolean[size];
+            this.usedBand = new boolean[boxSize];
+            this.usedStack = new boolean[boxSize];
+            this.labels = new int[size + 1];
+            this.labelled = new int[size];
+            this.current = new int[size * size];
+        }
+
+        CanonicalForm run() {
+            for (int t = 0; t < 2 && !gaveUp; t++) {
+                sourceTransposed = t == 1;
+                source = sourceTransposed ? transpose(grid) : grid;
+                pickStacks(0);
+            }
+            if (gaveUp) {
+                return relabelOnly();
+            }
+            return new CanonicalForm(size, best, bestTransposed, bestRowOrder, bestColOrder, bestLabels, true);
+        }
+
+        // Choose which stack, in which column order, goes in each stack slot; then order the rows
+        private void pickStacks(int slot) {
+            if (slot == boxSize) {
+                pickRow(0, false);
+                return;
+            }
+            for (int stack = 0; stack < boxSize && !gaveUp; stack++) {
+                if (usedStack[stack]) {
+                    continue;
+                }
+                usedStack[stack] = true;
+                for (int[] permutation : boxPermutations) {
+                    for (int i = 0; i < boxSize; i++) {
+                        colOrder[slot * boxSize + i] = stack * boxSize + permutation[i];
+                    }
+                    pickStacks(slot + 1);
+                    if (gaveUp) {
+                        break;
+                    }
+                }
+                usedStack[stack] = false;
+            }
+        }
+
+        /**
+         * Picks the row that goes at a depth: any row of an unused band when a new band starts,
+         * otherwise an unused row of the band already started.
+         * @param smaller true once the rows picked so far read smaller than the best board's
+         */
+        private void pickRow(int depth, boolean smaller) {
+            if (depth == size) {
+                if (best == null || smaller) {
+                    best = current.clone();
+                    bestTransposed = sourceTransposed;
+                    bestRowOrder = rowOrder.clone();
+                    bestColOrder = colOrder.clone();
+                    bestLabels = labels.clone();
+                    bestVersion++;
+                }
+                return;
+            }
+
+            int firstBand = 0;
+            int lastBand = boxSize - 1;
+            if (depth % boxSize != 0) {
+                firstBand = rowOrder[depth - 1] / boxSize;
+                lastBand = firstBand;
+            }
+            for (int band = firstBand; band <= lastBand; band++) {
+                if (depth % boxSize == 0 && usedBand[band]) {
+                    continue;
+                }
+                for (int row = band * boxSize; row < (band + 1) * boxSize; row++) {
+                    if (usedRow[row]) {
+                        continue;
+                    }
+                    if (++steps > MAX_SEARCH_STEPS) {
+                        gaveUp = true;
+                        return;
+                    }
+                    long version = bestVersion;
+                    tryRow(depth, row, smaller);
+                    if (gaveUp) {
+                        return;
+                    }
+                    // A new best was found below this prefix, so the prefix now equals the best's
+                    if (bestVersion != version) {
+                        smaller = false;
+                    }
+                }
+            }
+        }
+
+        // Relabel one row into place and go deeper, unless it already reads larger than the best board
+        private void tryRow(int depth, int row, boolean smaller) {
+            int mark = labelCount;
+            boolean rowSmaller = smaller || best == null;
+            boolean larger = false;
+            for (int col = 0; col < size; col++) {
+                int value = source[row][colOrder[col]];
+                if (value != 0 && labels[value] == 0) {
+                    labels[value] = ++labelCount;
+                    labelled[labelCount - 1] = value;
+                }
+                int label = value == 0 ? 0 : labels[value];
+                current[depth * size + col] = label;
+                if (!rowSmaller) {
+                    int bestLabel = best[depth * size + col];
+                    if (label < bestLabel) {
+                        rowSmaller = true;
+                    } else if (label > bestLabel) {
+                        larger = true;
+                        break;
+                    }
+                }
+            }
+
+            if (!larger) {
+                boolean newBand = depth % boxSize == 0;
+                usedRow[row] = true;
+                if (newBand) {
+                    usedBand[row / boxSize] = true;
+                }
+                rowOrder[depth] = row;
+                pickRow(depth + 1, rowSmaller);
+                usedRow[row] = false;
+                if (newBand) {
+                    usedBand[row / boxSize] = false;
+                }
+            }
+
+            // Forget the labels this row handed out
+            while (labelCount > mark) {
+                labels[labelled[--labelCount]] = 0;
+            }
+        }
+
+        // The fallback form: the board as it is, with its values relabelled in reading order
+        private CanonicalForm relabelOnly() {
+            int[] identity = new int[size];
+            for (int i = 0; i < size; i++) {
+                identity[i] = i;
+            }
+            int[] valueLabels = new int[size + 1];
+            int[] cells = new int[size * size];
+            int nextLabel = 0;
+            for (int cellId = 0; cellId < cells.length; cellId++) {
+                int value = grid[cellId / size][cellId % size];
+                if (value != 0 && valueLabels[value] == 0) {
+                    valueLabels[value] = ++nextLabel;
+                }
+                cells[cellId] = value == 0 ? 0 : valueLabels[value];
+            }
+            return new CanonicalForm(size, cells, false, identity, identity.clone(), valueLabels, false);
+        }
+
+        private static int[][] transpose(int[][] grid) {
+            int[][] result = new int[grid.length][grid.length];
+            for (int row = 0; row < grid.length; row++) {
+                for (int col = 0; col < grid.length; col++) {
+                    result[col][row] = grid[row][col];
+                }
+            }
+            return result;
+        }
+
+        // Every ordering of 0..n-1, in lexicographic order
+        private static int[][] permutations(int n) {
+            int count = 1;
+            for (int i = 2; i <= n; i++) {
+                count *= i;
+            }
+            int[][] result = new int[count][];
+            int[] permutation = new int[n];
+            for (int i = 0; i < n; i++) {
+                permutation[i] = i;
+            }
+            for (int p = 0; p < count; p++) {
+                result[p] = permutation.clone();
+                // Step to the next permutation
+                int i = n - 2;
+                while (i >= 0 && permutation[i] > permutation[i + 1]) {
+                    i--;
+                }
+                if (i < 0) {
+                    break;
+                }
+                int j = n - 1;
+                while (permutation[j] < permutation[i]) {
+                    j--;
+                }
+                int swap = permutation[i];
+                permutation[i] = permutation[j];
+                permutation[j] = swap;
+                for (int a = i + 1, b = n - 1; a < b; a++, b--) {
+                    swap = permutation[a];
+                    permutation[a] = permutation[b];
+                    permutation[b] = swap;
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,625 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A small conflict-driven clause learning (CDCL) SAT solver, used by SatSolver.
+ *
+ * Variables are numbered from 0, and the literal of variable v is 2v when it is true and 2v + 1
+ * when it is false, so lit ^ 1 is the negation. The core is the usual one:
+ * - two watched literals per clause, so an assignment only visits the clauses watching its negation
+ * - first-UIP conflict analysis with a simple minimization of the learnt clause
+ * - VSIDS branching: every variable in a conflict is bumped, older bumps decay, and the most
+ *   active unassigned variable is picked from a heap, with the value it had last (phase saving)
+ * - restarts on the Luby sequence
+ * - learnt clause deletion: at a restart, once there are too many learnt clauses, the half with
+ *   the most distinct decision levels (LBD) and the least recent use is dropped
+ *
+ * Clauses can be added between solves, which is how SatSolver blocks a solution to find the next.
+ * One core is used by one thread.
+ */
+public class CdclCore {
+    public static final int UNSAT = 0;
+    public static final int SAT = 1;
+    public static final int UNKNOWN = -1; // Stopped before an answer
+
+    private static final int RESTART_BASE = 100; // Conflicts in one unit of the Luby sequence
+    private static final double VAR_DECAY = 0.95;
+    private static final double CLAUSE_DECAY = 0.999;
+    private static final int FIRST_REDUCE = 2000; // Learnt clauses kept before the first deletion
+    private static final int REDUCE_INCREMENT = 300; // And how many more are kept after each one
+    // Learnt clauses with this few decision levels are kept for good
+    private static final int GLUE_LBD = 2;
+
+    /**
+     * A clause. For a clause that implied a literal, that literal is lits[0];
+     * the two watched literals are always lits[0] and lits[1].
+     */
+    private static final class Clause {
+        private final int[] lits;
+        private final boolean learnt;
+        private double activity;
+        private int lbd;
+        private boolean deleted;
+
+        Clause(int[] lits, boolean learnt) {
+            this.lits = lits;
+            this.learnt = learnt;
+        }
+    }
+
+    private int numVars;
+    private byte[] assigns = new byte[16]; // 1 true, -1 false, 0 unassigned
+    private int[] level = new int[16];
+    private Clause[] reason = new Clause[16]; // Clause that implied the variable, null for decisions
+    private boolean[] phase = new boolean[16]; // Last value of the variable, tried first
+    private double[] activity = new double[16];
+    private boolean[] seen = new boolean[16];
+    private int[] heap = new int[16]; // Unassigned variables (and some assigned ones), most active first
+    private int[] heapIndex = new int[16]; // Position in the heap, -1 when not in it
+    private int heapSize;
+    private int[] trail = new int[16]; // Assigned literals in order
+    private int trailSize;
+    private int[] trailLim = new int[16]; // Trail size when each decision level started
+    private int decisionLevel;
+    private int qhead; // Next trail literal to propagate
+    private Clause[][] watches = new Clause[32][];
+    private int[] watchSize = new int[32];
+
+    private final List<Clause> clauses = new ArrayList<>();
+    private final List<Clause> learnts = new ArrayList<>();
+    private boolean unsat; // The clauses added so far have no solution
+    private double varInc = 1;
+    private double clauseInc = 1;
+    private int[] learntBuffer = new int[16];
+    private int[] toClear = new int[16]; // The learnt clause before minimization
+    private int[] levelStamp = new int[16]; // For counting the distinct levels of a learnt clause
+    private int stamp;
+
+    private long conflicts;
+    private long decisions;
+    private long propagations;
+    private long restarts;
+    private long deletedClauses;
+    private int reductions;
+    private int maxDecisionLevel;
+
+    public static int lit(int var, boolean value) {
+        return value ? 2 * var : 2 * var + 1;
+    }
+
+    /**
+     * Adds a variable and returns its number.
+     */
+    public int newVar() {
+        int var = numVars++;
+        if (var == assigns.length) {
+            int capacity = 2 * var;
+            assigns = Arrays.copyOf(assigns, capacity);
+            level = Arrays.copyOf(level, capacity);
+            reason = Arrays.copyOf(reason, capacity);
+            phase = Arrays.copyOf(phase, capacity);
+            activity = Arrays.copyOf(activity, capacity);
+            seen = Arrays.copyOf(seen, capacity);
+            heap = Arrays.copyOf(heap, capacity);
+            heapIndex = Arrays.copyOf(heapIndex, capacity);
+            trail = Arrays.copyOf(trail, capacity);
+            trailLim = Arrays.copyOf(trailLim, capacity + 1);
+            learntBuffer = Arrays.copyOf(learntBuffer, capacity);
+            toClear = Arrays.copyOf(toClear, capacity);
+            levelStamp = Arrays.copyOf(levelStamp, capacity + 1);
+            watches = Arrays.copyOf(watches, 2 * capacity);
+            watchSize = Arrays.copyOf(watchSize, 2 * capacity);
+        }
+        heapIndex[var] = -1;
+        heapInsert(var);
+        return var;
+    }
+
+    public int getVariableCount() {
+        return numVars;
+    }
+
+    public int getClauseCount() {
+        return clauses.size();
+    }
+
+    /**
+     * Adds a clause, going back to decision level 0 first.
+     * @return false if the clauses now have no solution
+     */
+    public boolean addClause(int... lits) {
+        cancelUntil(0);
+        if (unsat) {
+            return false;
+        }
+        // Drop literals that are false for good and repeated literals; a clause that is true for
+        // good, or holds a literal and its negation, is not needed at all
+        int[] sorted = lits.clone();
+        Arrays.sort(sorted);
+        int size = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            int lit = sorted[i];
+            if (value(lit) == 1 || (i > 0 && sorted[i - 1] == (lit ^ 1))) {
+                return true;
+            }
+            if (value(lit) != -1 && (size == 0 || sorted[size - 1] != lit)) {
+                sorted[size++] = lit;
+            }
+        }
+        if (size == 0) {
+            unsat = true;
+            return false;
+        }
+        if (size == 1) {
+            enqueue(sorted[0], null);
+            if (propagate() != null) {
+                unsat = true;
+            }
+            return !unsat;
+        }
+        Clause clause = new Clause(Arrays.copyOf(sorted, size), false);
+        clauses.add(clause);
+        attach(clause);
+        return true;
+    }
+
+    /**
+     * Searches for an assignment that satisfies every clause.
+     * @param stop checked now and then; the search gives up as soon as it returns true
+     * @return SAT (read the assignment with modelValue), UNSAT, or UNKNOWN if stopped
+     */
+    public int solve(BooleanSupplier stop) {
+        cancelUntil(0);
+        if (unsat) {
+            return UNSAT;
+        }
+        if (propagate() != null) {
+            unsat = true;
+            return UNSAT;
+        }
+        for (int run = 0; ; run++) {
+            if (stop.getAsBoolean()) {
+                return UNKNOWN;
+            }
+            int status = search(luby(run) * RESTART_BASE, stop);
+            if (status != UNKNOWN) {
+                return status;
+            }
+            if (stop.getAsBoolean()) {
+                return UNKNOWN;
+            }
+            restarts++;
+            cancelUntil(0);
+            if (learnts.size() >= FIRST_REDUCE + REDUCE_INCREMENT * reductions) {
+                reduceLearnts();
+            }
+        }
+    }
+
+    /**
+     * Gets the value of a variable in the assignment found by the last solve that returned SAT.
+     */
+    public boolean modelValue(int var) {
+        return assigns[var] == 1;
+    }
+
+    // Search until the conflict budget runs out (UNKNOWN) or there is an answer
+    private int search(long conflictBudget, BooleanSupplier stop) {
+        long conflictsHere = 0;
+        while (true) {
+            Clause conflict = propagate();
+            if (conflict != null) {
+                conflicts++;
+                conflictsHere++;
+                if (decisionLevel == 0) {
+                    unsat = true;
+                    return UNSAT;
+                }
+                int learntSize = analyze(conflict);
+                cancelUntil(backtrackLevel(learntSize));
+                if (learntSize == 1) {
+                    enqueue(learntBuffer[0], null);
+                } else {
+                    Clause learnt = new Clause(Arrays.copyOf(learntBuffer, learntSize), true);
+                    learnt.lbd = countLevels(learnt.lits);
+                    learnts.add(learnt);
+                    attach(learnt);
+                    bumpClause(learnt);
+                    enqueue(learnt.lits[0], learnt);
+                }
+                varInc /= VAR_DECAY;
+                clauseInc /= CLAUSE_DECAY;
+                // Polling every conflict would cost more than the conflict itself on easy boards
+                if ((conflicts & 255) == 0 && stop.getAsBoolean()) {
+                    return UNKNOWN;
+                }
+            } else {
+                if (conflictsHere >= conflictBudget) {
+                    return UNKNOWN; // Restart
+                }
+                int next = pickBranchLiteral();
+                if (next < 0) {
+                    return SAT;
+                }
+                decisions++;
+                trailLim[decisionLevel++] = trailSize;
+                maxDecisionLevel = Math.max(maxDecisionLevel, decisionLevel);
+                enqueue(next, null);
+            }
+        }
+    }
+
+    private int value(int lit) {
+        int value = assigns[lit >> 1];
+        return (lit & 1) == 0 ? value : -value;
+    }
+
+    private void enqueue(int lit, Clause from) {
+        int var = lit >> 1;
+        assigns[var] = (byte) ((lit & 1) == 0 ? 1 : -1);
+        level[var] = decisionLevel;
+        reason[var] = from;
+        trail[trailSize++] = lit;
+    }
+
+    private void attach(Clause clause) {
+        watch(clause.lits[0], clause);
+        watch(clause.lits[1], clause);
+    }
+
+    private void watch(int lit, Clause clause) {
+        if (watches[lit] == null) {
+            watches[lit] = new Clause[4];
+        } else if (watchSize[lit] == watches[lit].length) {
+            watches[lit] = Arrays.copyOf(watches[lit], 2 * watchSize[lit]);
+        }
+        watches[lit][watchSize[lit]++] = clause;
+    }
+
+    /**
+     * Assigns every literal implied by the trail, through the watched literals.
+     * @return a clause with every literal false, or null if there is none
+     */
+    private Clause propagate() {
+        while (qhead < trailSize) {
+            int falseLit = trail[qhead++] ^ 1;
+            propagations++;
+            Clause[] watching = watches[falseLit];
+            int count = watchSize[falseLit];
+            int i = 0;
+            int j = 0;
+            while (i < count) {
+                Clause clause = watching[i++];
+                int[] lits = clause.lits;
+                // Keep the false literal in lits[1]
+                if (lits[0] == falseLit) {
+                    lits[0] = lits[1];
+                    lits[1] = falseLit;
+                }
+                if (value(lits[0]) == 1) {
+                    watching[j++] = clause;
+                    continue;
+                }
+                // Look for another literal to watch
+                boolean moved = false;
+                for (int k = 2; k < lits.length; k++) {
+                    if (value(lits[k]) != -1) {
+                        lits[1] = lits[k];
+                        lits[k] = falseLit;
+                        watch(lits[1], clause);
+                        moved = true;
+                        break;
+                    }
+                }
+                if (moved) {
+                    continue;
+                }
+                watching[j++] = clause;
+                if (value(lits[0]) == -1) {
+                    // Every literal is false: keep the rest of the watchers and report the conflict
+                    while (i < count) {
+                        watching[j++] = watching[i++];
+                    }
+                    watchSize[falseLit] = j;
+                    qhead = trailSize;
+                    return clause;
+                }
+                enqueue(lits[0], clause);
+            }
+            watchSize[falseLit] = j;
+        }
+        return null;
+    }
+
+    /**
+     * Finds the first-UIP clause of a conflict and puts it in learntBuffer, with the asserting
+     * literal first and a literal of the backtrack level second.
+     * @return the length of the learnt clause
+     */
+    private int analyze(Clause conflict) {
+        int size = 1; // learntBuffer[0] is the asserting literal, filled in at the end
+        int pathCount = 0; // Literals of the current level still to be resolved away
+        int lit = -1;
+        int index = trailSize - 1;
+        Clause clause = conflict;
+        do {
+            if (clause.learnt) {
+                bumpClause(clause);
+            }
+            int[] lits = clause.lits;
+            for (int j = lit < 0 ? 0 : 1; j < lits.length; j++) {
+                int q = lits[j];
+                int var = q >> 1;
+                if (!seen[var] && level[var] > 0) {
+                    bumpVar(var);
+                    seen[var] = true;
+                    if (level[var] >= decisionLevel) {
+                        pathCount++;
+                    } else {
+                        learntBuffer[size++] = q;
+                    }
+                }
+            }
+            // The next literal of the current level to resolve on, latest first
+            while (!seen[trail[index] >> 1]) {
+                index--;
+            }
+            lit = trail[index--];
+            clause = reason[lit >> 1];
+            seen[lit >> 1] = false;
+            pathCount--;
+        } while (pathCount > 0);
+        learntBuffer[0] = lit ^ 1;
+
+        // Drop literals whose reason is made of literals already in the clause. The seen flags
+        // must stay set until every literal is checked, so the clause is copied out first
+        System.arraycopy(learntBuffer, 0, toClear, 0, size);
+        int kept = 1;
+        for (int i = 1; i < size; i++) {
+            int var = toClear[i] >> 1;
+            if (reason[var] == null || !isImplied(reason[var])) {
+                learntBuffer[kept++] = toClear[i];
+            }
+        }
+        for (int i = 1; i < size; i++) {
+            seen[toClear[i] >> 1] = false;
+        }
+        return kept;
+    }
+
+    // Every other literal of the reason is in the learnt clause or false for good
+    private boolean isImplied(Clause from) {
+        int[] lits = from.lits;
+        for (int k = 1; k < lits.length; k++) {
+            int var = lits[k] >> 1;
+            if (!seen[var] && level[var] > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The highest level in a learnt clause other than the asserting literal's; its literal moves to lits[1]
+    private int backtrackLevel(int learntSize) {
+        if (learntSize == 1) {
+            return 0;
+        }
+        int best = 1;
+        for (int i = 2; i < learntSize; i++) {
+            if (level[learntBuffer[i] >> 1] > level[learntBuffer[best] >> 1]) {
+                best = i;
+            }
+        }
+        int lit = learntBuffer[best];
+        learntBuffer[best] = learntBuffer[1];
+        learntBuffer[1] = lit;
+        return level[lit >> 1];
+    }
+
+    // Number of distinct decision levels in a clause (its LBD)
+    private int countLevels(int[] lits) {
+        stamp++;
+        int count = 0;
+        for (int lit : lits) {
+            int l = level[lit >> 1];
+            if (levelStamp[l] != stamp) {
+                levelStamp[l] = stamp;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void cancelUntil(int targetLevel) {
+        if (decisionLevel <= targetLevel) {
+            return;
+        }
+        for (int i = trailSize - 1; i >= trailLim[targetLevel]; i--) {
+            int var = trail[i] >> 1;
+            phase[var] = assigns[var] == 1;
+            assigns[var] = 0;
+            reason[var] = null;
+            if (heapIndex[var] < 0) {
+                heapInsert(var);
+            }
+        }
+        trailSize = trailLim[targetLevel];
+        qhead = trailSize;
+        decisionLevel = targetLevel;
+    }
+
+    // The most active unassigned variable, with its saved value; -1 when every variable is assigned
+    private int pickBranchLiteral() {
+        while (heapSize > 0) {
+            int var = heapRemoveMax();
+            if (assigns[var] == 0) {
+                return lit(var, phase[var]);
+            }
+        }
+        return -1;
+    }
+
+    private void bumpVar(int var) {
+        activity[var] += varInc;
+        if (activity[var] > 1e100) {
+            for (int v = 0; v < numVars; v++) {
+                activity[v] *= 1e-100;
+            }
+            varInc *= 1e-100;
+        }
+        if (heapIndex[var] >= 0) {
+            siftUp(heapIndex[var]);
+        }
+    }
+
+    private void bumpClause(Clause clause) {
+        clause.activity += clauseInc;
+        if (clause.activity > 1e20) {
+            for (Clause learnt : learnts) {
+                learnt.activity *= 1e-20;
+            }
+            clauseInc *= 1e-20;
+        }
+    }
+
+    /**
+     * Drops the worse half of the learnt clauses: the ones with the most decision levels, and the
+     * least recently used among equals. Clauses with few levels are kept. Only called at level 0,
+     * where no learnt clause is the reason of an assignment that analyze could still look at.
+     */
+    private void reduceLearnts() {
+        reductions++;
+        learnts.sort((a, b) -> a.lbd != b.lbd ? Integer.compare(a.lbd, b.lbd) : Double.compare(b.activity, a.activity));
+        int keep = learnts.size() / 2;
+        int kept = 0;
+        for (int i = 0; i < learnts.size(); i++) {
+            Clause clause = learnts.get(i);
+            if (i < keep || clause.lbd <= GLUE_LBD) {
+                learnts.set(kept++, clause);
+            } else {
+                clause.deleted = true;
+                deletedClauses++;
+            }
+        }
+        learnts.subList(kept, learnts.size()).clear();
+        // Level 0 assignments are never analyzed, so their reasons can go too
+        for (int i = 0; i < trailSize; i++) {
+            reason[trail[i] >> 1] = null;
+        }
+        for (int lit = 0; lit < 2 * numVars; lit++) {
+            Clause[] watching = watches[lit];
+            int j = 0;
+            for (int i = 0; i < watchSize[lit]; i++) {
+                if (!watching[i].deleted) {
+                    watching[j++] = watching[i];
+                }
+            }
+            if (watching != null) {
+                Arrays.fill(watching, j, watchSize[lit], null);
+            }
+            watchSize[lit] = j;
+        }
+    }
+
+    // 1, 1, 2, 1, 1, 2, 4, 1, 1, 2, 1, 1, 2, 4, 8, ...
+    private static long luby(int index) {
+        int size = 1;
+        int sequence = 0;
+        while (size < index + 1) {
+            sequence++;
+            size = 2 * size + 1;
+        }
+        int x = index;
+        while (size - 1 != x) {
+            size = (size - 1) >> 1;
+            sequence--;
+            x = x % size;
+        }
+        return 1L << sequence;
+    }
+
+    // Max-heap of variables by activity
+    private void heapInsert(int var) {
+        heapIndex[var] = heapSize;
+        heap[heapSize++] = var;
+        siftUp(heapSize - 1);
+    }
+
+    private int heapRemoveMax() {
+        int top = heap[0];
+        heapIndex[top] = -1;
+        int last = heap[--heapSize];
+        if (heapSize > 0) {
+            heap[0] = last;
+            heapIndex[last] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    private void siftUp(int i) {
+        int var = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            if (activity[heap[parent]] >= activity[var]) {
+                break;
+            }
+            heap[i] = heap[parent];
+            heapIndex[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = var;
+        heapIndex[var] = i;
+    }
+
+    private void siftDown(int i) {
+        int var = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && activity[heap[child + 1]] > activity[heap[child]]) {
+                child++;
+            }
+            if (activity[heap[child]] <= activity[var]) {
+                break;
+            }
+            heap[i] = heap[child];
+            heapIndex[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = var;
+        heapIndex[var] = i;
+    }
+
+    public long getConflicts() {
+        return conflicts;
+    }
+
+    public long getDecisions() {
+        return decisions;
+    }
+
+    public long getPropagations() {
+        return propagations;
+    }
+
+    public long getRestarts() {
+        return restarts;
+    }
+
+    public int getLearntClauseCount() {
+        return learnts.size();
+    }
+
+    public long getDeletedClauses() {
+        return deletedClauses;
+    }
+
+    public int getMaxDecisionLevel() {
+        return maxDecisionLevel;
+    }
+}
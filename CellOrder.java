@@ -0,0 +1,138 @@
+import java.util.Arrays;
+
+/**
+ * The ways a search can pick the cell to branch on.
+ */
+public enum CellOrder {
+    /** The first empty cell in row-major order, like the original solvers. */
+    FIRST_EMPTY,
+    /** The empty cell with the fewest candidates (minimum remaining values, MRV). */
+    MOST_CONSTRAINED,
+    /** MRV, with ties going to the cell with the most empty peers (the degree heuristic). */
+    MOST_CONSTRAINED_DEGREE,
+    /**
+     * The cell with the fewest candidates per unit of weighted degree (dom/wdeg). Every unit
+     * starts with weight 1, and a unit gains 1 each time a cell in it is left without candidates,
+     * so the search turns to the parts of the board that keep failing.
+     */
+    DOM_WDEG;
+
+    /**
+     * Makes a selector for this ordering. Selectors can hold state, so make one per search.
+     */
+    public CellSelector newSelector() {
+        switch (this) {
+            case MOST_CONSTRAINED: return new MostConstrained(false);
+            case MOST_CONSTRAINED_DEGREE: return new MostConstrained(true);
+            case DOM_WDEG: return new DomOverWdeg();
+            default: return new FirstEmpty();
+        }
+    }
+
+    private static class FirstEmpty implements CellSelector {
+        @Override
+        public int selectCell(SudokuGraph graph) {
+            return graph.nextEmptyCell(0);
+        }
+    }
+
+    private static class MostConstrained implements CellSelector {
+        private final boolean breakTiesByDegree;
+
+        MostConstrained(boolean breakTiesByDegree) {
+            this.breakTiesByDegree = breakTiesByDegree;
+        }
+
+        @Override
+        public int selectCell(SudokuGraph graph) {
+            int best = -1;
+            int bestCount = Integer.MAX_VALUE;
+            int bestDegree = -1; // Only worked out once a tie needs it
+            for (int cellId = graph.nextEmptyCell(0); cellId >= 0; cellId = graph.nextEmptyCell(cellId + 1)) {
+                int count = graph.getCandidateCount(cellId);
+                if (count < bestCount) {
+                    best = cellId;
+                    bestCount = count;
+                    bestDegree = -1;
+                    // No cell can beat a dead end, and without tie-breaks no cell beats a single
+                    if (count == 0 || (count == 1 && !breakTiesByDegree)) {
+                        break;
+                    }
+                } else if (count == bestCount && breakTiesByDegree) {
+                    if (bestDegree < 0) {
+                        bestDegree = emptyPeers(graph, best);
+                    }
+                    int degree = emptyPeers(graph, cellId);
+                    if (degree > bestDegree) {
+                        best = cellId;
+                        bestDegree = degree;
+                    }
+                }
+            }
+            return best;
+        }
+    }
+
+    private static class DomOverWdeg implements CellSelector {
+        private int[] weights; // One per unit, laid out like SudokuTopology's units
+
+        @Override
+        public void prepare(SudokuGraph graph) {
+            // Weights carry over between boards of one search, but not to a board of another size
+            int units = graph.getTopology().getUnitCount();
+            if (weights == null || weights.length != units) {
+                weights = new int[units];
+                Arrays.fill(weights, 1);
+            }
+        }
+
+        @Override
+        public int selectCell(SudokuGraph graph) {
+            SudokuTopology topology = graph.getTopology();
+            int size = graph.getSize();
+            int best = -1;
+            long bestCount = 1;
+            long bestWeight = 0;
+            for (int cellId = graph.nextEmptyCell(0); cellId >= 0; cellId = graph.nextEmptyCell(cellId + 1)) {
+                long count = graph.getCandidateCount(cellId);
+                if (count == 0) {
+                    return cellId;
+                }
+                long weight = weights[topology.rowOf(cellId)] + weights[size + topology.colOf(cellId)]
+                        + weights[2 * size + topology.boxOf(cellId)];
+                // count / weight < bestCount / bestWeight, without dividing
+                if (best < 0 || count * bestWeight < bestCount * weight) {
+                    best = cellId;
+                    bestCount = count;
+                    bestWeight = weight;
+                }
+            }
+            return best;
+        }
+
+        @Override
+        public void onContradiction(SudokuGraph graph) {
+            int cellId = graph.getConflictCell();
+            if (cellId < 0) {
+                return;
+            }
+            SudokuTopology topology = graph.getTopology();
+            int size = graph.getSize();
+            weights[topology.rowOf(cellId)]++;
+            weights[size + topology.colOf(cellId)]++;
+            weights[2 * size + topology.boxOf(cellId)]++;
+        }
+    }
+
+    // Number of empty cells that share a row, column, or box with a cell
+    static int emptyPeers(SudokuGraph graph, int cellId) {
+        SudokuTopology topology = graph.getTopology();
+        int count = 0;
+        for (int i = 0; i < topology.getPeerCount(); i++) {
+            if (graph.getCell(topology.getPeer(cellId, i)) == 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
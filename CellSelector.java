@@ -0,0 +1,27 @@
+/**
+ * Picks the empty cell a search branches on next. Make one with CellOrder.newSelector.
+ *
+ * A selector may learn from the search (dom/wdeg counts contradictions), so one selector belongs
+ * to one search on one thread; parallel solvers give every worker its own.
+ */
+public interface CellSelector {
+    /**
+     * Gets the selector ready for a board, for example by sizing the weights it learns.
+     * Call it once for every board the selector will be used on, before the first selectCell.
+     */
+    default void prepare(SudokuGraph graph) {
+    }
+
+    /**
+     * Picks the cell to branch on.
+     * @return the cell id, or -1 if the board has no empty cell
+     */
+    int selectCell(SudokuGraph graph);
+
+    /**
+     * Tells the selector that propagate just ran into a contradiction on this board, so
+     * graph.getConflictCell() is the cell that was left without candidates.
+     */
+    default void onContradiction(SudokuGraph graph) {
+    }
+}
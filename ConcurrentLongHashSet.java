@@ -0,0 +1,98 @@
+/**
+ * Thread-safe set of board hashes, for searches that expand states on several threads at once.
+ *
+ * The keys are split over a power-of-two number of stripes by their top bits, and each stripe is
+ * a LongHashSet behind its own lock. Two threads only wait for each other when their states land
+ * in the same stripe, so with many more stripes than threads an add almost never blocks.
+ * Created with a PackedBoard, every stripe confirms hash matches against the packed cells, the
+ * same as LongHashSet.
+ */
+public class ConcurrentLongHashSet {
+    private final LongHashSet[] stripes;
+    private final int shift; // Shifts a key down to its stripe index
+
+    /**
+     * Creates a set that treats equal hashes as equal states.
+     * @param stripeCount Number of stripes, rounded up to a power of two
+     */
+    public ConcurrentLongHashSet(int stripeCount) {
+        this(stripeCount, null);
+    }
+
+    /**
+     * Creates a set that confirms hash matches against the packed state (codec may be null).
+     * @param stripeCount Number of stripes, rounded up to a power of two
+     */
+    public ConcurrentLongHashSet(int stripeCount, PackedBoard codec) {
+        int stripeBits = 32 - Integer.numberOfLeadingZeros(Math.max(1, stripeCount - 1));
+        stripes = new LongHashSet[1 << stripeBits];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = codec == null ? new LongHashSet() : new LongHashSet(codec);
+        }
+        // A shift of 64 would leave the key as it is, so one stripe needs a special case
+        shift = stripeBits == 0 ? 0 : 64 - stripeBits;
+    }
+
+    // Zobrist keys are random in every bit, so the top bits pick a stripe evenly
+    private LongHashSet stripeOf(long key) {
+        return shift == 0 ? stripes[0] : stripes[(int) (key >>> shift)];
+    }
+
+    /**
+     * Adds a key.
+     * @return true if the key was not already in the set
+     */
+    public boolean add(long key) {
+        LongHashSet stripe = stripeOf(key);
+        synchronized (stripe) {
+            return stripe.add(key);
+        }
+    }
+
+    /**
+     * Adds a state by its hash and packed cells, like LongHashSet.add(key, packed, offset).
+     * @return true if the state was not already in the set
+     */
+    public boolean add(long key, long[] packed, int offset) {
+        LongHashSet stripe = stripeOf(key);
+        synchronized (stripe) {
+            return stripe.add(key, packed, offset);
+        }
+    }
+
+    /**
+     * Checks whether a key is in the set (hash only, without confirming the state).
+     */
+    public boolean contains(long key) {
+        LongHashSet stripe = stripeOf(key);
+        synchronized (stripe) {
+            return stripe.contains(key);
+        }
+    }
+
+    /**
+     * Gets the number of keys. Adds that run at the same time may or may not be counted.
+     */
+    public int size() {
+        int size = 0;
+        for (LongHashSet stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Gets the bytes held by every stripe's table.
+     */
+    public long getBytes() {
+        long bytes = 0;
+        for (LongHashSet stripe : stripes) {
+            synchronized (stripe) {
+                bytes += stripe.getBytes();
+            }
+        }
+        return bytes;
+    }
+}
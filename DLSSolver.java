@@ -1,4 +1,5 @@
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * Depth-Limited Search implementation for solving Sudoku puzzles.
@@ -10,6 +11,17 @@ import java.util.*;
 public class DLSSolver {
     private final List<int[][]> solutions;
     private int steps;
+    private boolean quiet; // Skip the summary line that solve prints
+    private SearchMetrics metrics;
+    private Consumer<SearchMetrics> metricsListener; // Told about every solve, null for none
+    private CellOrder cellOrder = CellOrder.FIRST_EMPTY;
+    private ValueOrder valueOrder = ValueOrder.ASCENDING;
+    private long nodeLimit; // Give up after expanding this many nodes, 0 for no limit
+    private boolean nodeLimitReached;
+    private int maxSolutions = 1; // Keep searching until this many solutions are found
+    private BackjumpingSearch backjumper; // null for plain chronological backtracking
+    private long backjumps; // Backjumps of the last solve
+    private long nogoodHits; // Branches the last solve cut off with a cached nogood
     
     public DLSSolver() {
         this.solutions = new ArrayList<>();
@@ -18,6 +30,7 @@ public class DLSSolver {
     
     /**
      * Solves the Sudoku puzzle using Depth-Limited Search.
+     * The search stops early, with no solution, if the node limit runs out or the thread is interrupted.
      * @param initialGrid The initial Sudoku grid
      * @param maxDepth Maximum depth to search
      * @param maxSolutions Maximum number of solutions to find (0 for all)
@@ -25,52 +38,148 @@ public class DLSSolver {
      */
     public boolean solve(SudokuGraph initialGraph, int maxDepth) {
         solutions.clear();
-        boolean searchResult = dls(initialGraph.copyGrid(), maxDepth);
-        System.out.println("Number of DLS solutions found: " + solutions.size());
+        nodeLimitReached = false;
+        metrics = new SearchMetrics("DLSSolver");
+        SearchMetrics.Tally tally = metrics.newTally();
+        SudokuGraph sudokuGraph = new SudokuGraph(initialGraph.copyGrid());
+        if (backjumper != null) {
+            searchWithBackjumping(sudokuGraph, maxDepth, tally);
+        } else {
+            dls(sudokuGraph, maxDepth, tally);
+        }
+        metrics.flush(tally);
+        metrics.finish(solutions.size());
+        steps = (int) Math.min(Integer.MAX_VALUE, metrics.getNodesExpanded());
+        if (metricsListener != null) {
+            metricsListener.accept(metrics);
+        }
+        if (!quiet) {
+            System.out.println("Number of DLS solutions found: " + solutions.size());
+        }
         return !solutions.isEmpty();
     }
     
     /**
-     * Recursive helper for DLS.
+     * The same search with conflict-directed backjumping and a nogood cache (see BackjumpingSearch).
      */
-    private boolean dls(int[][] currentGrid, int maxDepth) {
-        
-        // If we have traversed as far as we can, there is no solution
-        if (maxDepth == 0) {
-            return false;
+    private void searchWithBackjumping(SudokuGraph sudokuGraph, int maxDepth, SearchMetrics.Tally tally) {
+        CellSelector selector = cellOrder == CellOrder.FIRST_EMPTY ? null : cellOrder.newSelector();
+        if (selector != null) {
+            selector.prepare(sudokuGraph);
         }
-        
-        // Create a new Graph based on the current state of the grid
-        SudokuGraph sudokuGraph = new SudokuGraph(currentGrid);
-        
-        // If solved, add the current Grid to the solutions
-        if (sudokuGraph.isPuzzleSolved()) {
-            solutions.add(currentGrid);
-            return true;
+        long backjumpsBefore = backjumper.getBackjumps();
+        long hitsBefore = backjumper.getNogoodHits();
+        backjumper.search(sudokuGraph, maxDepth, selector, valueOrder, tally, 0, () -> {
+            // Give up when out of nodes, or when another thread asked this one to stop
+            if (nodeLimit > 0 && tally.nodesExpanded >= nodeLimit) {
+                nodeLimitReached = true;
+                return true;
+            }
+            return Thread.currentThread().isInterrupted();
+        }, graph -> {
+            solutions.add(graph.copyGrid());
+            return solutions.size() >= maxSolutions;
+        });
+        backjumps = backjumper.getBackjumps() - backjumpsBefore;
+        nogoodHits = backjumper.getNogoodHits() - hitsBefore;
+    }
+
+    /**
+     * DLS on one board, assigning and undoing cells in place.
+     * Instead of recursing, the branch cell, the values in the order they are tried, and the
+     * propagation trail mark of every depth are kept on stacks that are allocated once per solve,
+     * so visiting a node allocates nothing. The board is only copied when a solution is found.
+     * @return true if the search stopped because it had found maxSolutions solutions
+     */
+    private boolean dls(SudokuGraph sudokuGraph, int maxDepth, SearchMetrics.Tally tally) {
+        int size = sudokuGraph.getSize();
+        int maxStack = sudokuGraph.getEmptyCellCount() + 1;
+        int[] cellStack = new int[maxStack]; // Cell branched on at each depth
+        int[] valueStack = new int[maxStack * size]; // Values of each depth's cell, size slots per depth
+        int[] nextValue = new int[maxStack]; // Index of the next value to try at each depth
+        int[] valueCount = new int[maxStack]; // Number of values at each depth
+        int[] markStack = new int[maxStack]; // Trail length when each depth was entered
+
+        CellSelector selector = cellOrder == CellOrder.FIRST_EMPTY ? null : cellOrder.newSelector();
+        if (selector != null) {
+            selector.prepare(sudokuGraph);
         }
 
-        // Do a DLS
-        for (int currRow = 0; currRow < currentGrid.length; currRow ++) {
-            for (int currCol = 0; currCol < currentGrid[currRow].length; currCol ++) {
-                // If the value in the current grid is a zero, that means we have to find a value to input
-                if (currentGrid [currRow][currCol] == 0) {
-                    // Create a list of all the values that we can put in the slot
-                    List <Integer> values = sudokuGraph.validValueList(currRow, currCol);
-                    // Put each possible value in the grid
-                    for (int possibleValue : values) {
-                        currentGrid [currRow][currCol] = possibleValue;
-                        
-                        // Run the DLS with the cell that we input, testing if it's a valid solution
-                        if (dls(currentGrid, maxDepth - 1)) {
-                            // If the DLS is successful, return true
-                            return true;
-                        }
-                        // If the search was not successful, set the value ack to zero, and move on
-                        currentGrid[currRow][currCol] = 0;
-                    }
+        int depth = 0;
+        boolean entering = true; // false when we come back up to a depth to try its next value
+        while (depth >= 0) {
+            if (entering) {
+                // If we have traversed as far as we can, there is no solution here
+                if (depth == maxDepth) {
+                    tally.backtracks++;
+                    depth--;
+                    entering = false;
+                    continue;
+                }
+
+                // Give up when out of nodes, or when another thread asked this one to stop
+                if (nodeLimit > 0 && tally.nodesExpanded >= nodeLimit) {
+                    nodeLimitReached = true;
+                    return false;
+                }
+                if (Thread.currentThread().isInterrupted()) {
                     return false;
                 }
+
+                // Fill in every forced value. If that runs into a contradiction, this branch is a dead end
+                tally.nodesExpanded++;
+                tally.reachedDepth(depth);
+                markStack[depth] = sudokuGraph.getTrailSize();
+                boolean consistent = sudokuGraph.propagate();
+                tally.propagationFills += sudokuGraph.getTrailSize() - markStack[depth];
+                if (!consistent) {
+                    tally.backtracks++;
+                    if (selector != null) {
+                        selector.onContradiction(sudokuGraph);
+                    }
+                    sudokuGraph.undoTo(markStack[depth]);
+                    depth--;
+                    entering = false;
+                    continue;
+                }
+
+                // If solved, add a copy of the current Grid to the solutions. Unless that is enough,
+                // carry on as if the branch had failed
+                if (sudokuGraph.isPuzzleSolved()) {
+                    solutions.add(sudokuGraph.copyGrid());
+                    if (solutions.size() >= maxSolutions) {
+                        return true;
+                    }
+                    sudokuGraph.undoTo(markStack[depth]);
+                    depth--;
+                    entering = false;
+                    continue;
+                }
+
+                // Branch on the first empty cell, unless another cell order was chosen. Every cell
+                // before the parent's branch cell is already filled, so the scan can start there
+                int cellId = selector != null ? selector.selectCell(sudokuGraph)
+                        : sudokuGraph.nextEmptyCell(depth == 0 ? 0 : cellStack[depth - 1]);
+                cellStack[depth] = cellId;
+                nextValue[depth] = 0;
+                valueCount[depth] = valueOrder.order(sudokuGraph, cellId, sudokuGraph.getCandidates(cellId),
+                        valueStack, depth * size);
             }
+
+            if (nextValue[depth] == valueCount[depth]) {
+                // Every value failed: clear the branch cell and the cells propagation filled at this depth
+                tally.backtracks++;
+                sudokuGraph.setCell(cellStack[depth], 0);
+                sudokuGraph.undoTo(markStack[depth]);
+                depth--;
+                entering = false;
+                continue;
+            }
+
+            // Put the next possible value in the grid (this replaces the value that just failed)
+            sudokuGraph.setCell(cellStack[depth], valueStack[depth * size + nextValue[depth]++]);
+            depth++;
+            entering = true;
         }
         return false;
     }
@@ -94,7 +203,86 @@ public class DLSSolver {
     }
     
     /**
-     * Gets the number of steps taken by DLS.
+     * Stops solve from printing how many solutions it found, for batch runs over many boards.
+     */
+    public void setQuiet(boolean quiet) {
+        this.quiet = quiet;
+    }
+    
+    /**
+     * Sets how the search picks the cell to branch on (FIRST_EMPTY by default).
+     */
+    public void setCellOrder(CellOrder cellOrder) {
+        this.cellOrder = cellOrder;
+    }
+
+    /**
+     * Sets the order the values of a branch cell are tried in (ASCENDING by default).
+     */
+    public void setValueOrder(ValueOrder valueOrder) {
+        this.valueOrder = valueOrder;
+    }
+
+    /**
+     * Sets how many nodes a solve may expand before it gives up (0, the default, for no limit).
+     * Restarting with a growing limit and a RANDOM value order is a randomized restart search.
+     */
+    public void setNodeLimit(long nodeLimit) {
+        this.nodeLimit = nodeLimit;
+    }
+
+    /**
+     * Sets how many solutions a solve looks for before it stops (1, the default, stops at the first).
+     */
+    public void setMaxSolutions(int maxSolutions) {
+        this.maxSolutions = Math.max(1, maxSolutions);
+    }
+
+    /**
+     * Turns on conflict-directed backjumping with a nogood cache (off by default, which backtracks
+     * one depth at a time). It finds the same solutions with fewer nodes, but each node costs more.
+     */
+    public void setBackjumping(boolean backjumping) {
+        this.backjumper = backjumping ? new BackjumpingSearch() : null;
+    }
+
+    /**
+     * Gets the number of times the last solve jumped back past at least one depth (0 without backjumping).
+     */
+    public long getBackjumps() {
+        return backjumps;
+    }
+
+    /**
+     * Gets the number of branches the last solve cut off with a cached nogood.
+     */
+    public long getNogoodHits() {
+        return nogoodHits;
+    }
+
+    /**
+     * Checks whether the last solve gave up because it ran out of nodes, so "no solution" is not an answer.
+     */
+    public boolean isNodeLimitReached() {
+        return nodeLimitReached;
+    }
+
+    /**
+     * Sets a listener that is handed the metrics of every solve when it ends.
+     */
+    public void setMetricsListener(Consumer<SearchMetrics> metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * Gets the metrics of the last solve.
+     */
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * Gets the number of steps taken by DLS: the search nodes the last solve expanded.
      */
     public int getSteps() {
         return steps;
@@ -0,0 +1,297 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Dancing Links (Knuth's Algorithm X) solver for Sudoku puzzles of any perfect-square size.
+ *
+ * The puzzle is turned into an exact-cover matrix with one option per (empty cell, candidate)
+ * pair. Every empty cell is a primary column that must be covered exactly once. Every
+ * (row, value), (column, value) and (box, value) pair is a secondary column that may be covered
+ * at most once. On a valid puzzle that is the same as the usual exact-cover encoding, and on a
+ * board whose givens already break a rule it finds the same fillings as the other solvers.
+ *
+ * The links live in preallocated int arrays, so the search itself allocates nothing until a
+ * solution is copied out.
+ */
+public class DancingLinksSolver {
+    private final List<int[][]> solutions;
+    private long solutionCount;
+
+    // Matrix links. Index 0 is the root, then the column headers, then the option nodes.
+    private int[] left;
+    private int[] right;
+    private int[] up;
+    private int[] down;
+    private int[] column; // Column header of each node
+    private int[] columnSize; // Number of nodes in each column (headers only)
+    private int[] option; // Option of each node: cellId * size + (value - 1)
+
+    private int[] chosen; // Option nodes picked on the current path, by depth
+    private int[][] baseGrid;
+    private int size;
+    private long limit; // Stop after this many solutions (0 for all)
+    private boolean storeSolutions;
+    private boolean quiet; // Skip the summary line that solve prints
+    private SearchMetrics metrics;
+    private SearchMetrics.Tally tally; // Counts for the search in progress
+    private Consumer<SearchMetrics> metricsListener; // Told about every solve and count, null for none
+
+    public DancingLinksSolver() {
+        this.solutions = new ArrayList<>();
+    }
+
+    /**
+     * Solves the Sudoku puzzle using Dancing Links.
+     * @param initialGraph The initial Sudoku graph
+     * @param maxSolutions Maximum number of solutions to find (0 for all)
+     * @return true if at least one solution was found
+     */
+    public boolean solve(SudokuGraph initialGraph, int maxSolutions) {
+        solutions.clear();
+        run(initialGraph, maxSolutions, true);
+        if (!quiet) {
+            System.out.println("Number of Dancing Links solutions found: " + solutions.size());
+        }
+        return !solutions.isEmpty();
+    }
+
+    /**
+     * Counts the solutions of a puzzle without keeping any of them.
+     * @param limit Stop counting once this many solutions are found (0 for all)
+     * @return the number of solutions found, at most limit
+     */
+    public long countSolutions(SudokuGraph initialGraph, long limit) {
+        solutions.clear();
+        run(initialGraph, limit, false);
+        return solutionCount;
+    }
+
+    private void run(SudokuGraph initialGraph, long limit, boolean storeSolutions) {
+        this.limit = limit;
+        this.storeSolutions = storeSolutions;
+        this.solutionCount = 0;
+        this.baseGrid = initialGraph.copyGrid();
+        this.size = baseGrid.length;
+
+        metrics = new SearchMetrics("DancingLinksSolver");
+        tally = metrics.newTally();
+        buildMatrix(initialGraph);
+        search(0);
+        metrics.flush(tally);
+        metrics.finish((int) Math.min(Integer.MAX_VALUE, solutionCount));
+        if (metricsListener != null) {
+            metricsListener.accept(metrics);
+        }
+    }
+
+    /**
+     * Builds the exact-cover matrix for the empty cells of a graph.
+     */
+    private void buildMatrix(SudokuGraph graph) {
+        SudokuTopology topology = graph.getTopology();
+
+        // Primary columns: one per empty cell
+        int emptyCells = 0;
+        int optionCount = 0;
+        int[] cellColumn = new int[size * size];
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                if (graph.getValue(row, col) == 0) {
+                    cellColumn[row * size + col] = 1 + emptyCells++;
+                    optionCount += graph.countCandidates(row, col);
+                }
+            }
+        }
+        // Secondary columns: (row, value), then (column, value), then (box, value)
+        int firstSecondary = 1 + emptyCells;
+        int headers = firstSecondary + 3 * size * size;
+        int nodes = headers + 4 * optionCount;
+
+        left = new int[nodes];
+        right = new int[nodes];
+        up = new int[nodes];
+        down = new int[nodes];
+        column = new int[nodes];
+        columnSize = new int[headers];
+        option = new int[nodes];
+        chosen = new int[emptyCells];
+
+        // Only the root and the primary columns are on the header list.
+        // Secondary columns link to themselves so covering them never removes them from it.
+        for (int h = 0; h < headers; h++) {
+            up[h] = h;
+            down[h] = h;
+            column[h] = h;
+            if (h < firstSecondary) {
+                left[h] = h == 0 ? firstSecondary - 1 : h - 1;
+                right[h] = h == firstSecondary - 1 ? 0 : h + 1;
+            } else {
+                left[h] = h;
+                right[h] = h;
+            }
+        }
+
+        int next = headers;
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                if (graph.getValue(row, col) != 0) {
+                    continue;
+                }
+                int cellId = row * size + col;
+                int box = topology.boxOf(cellId);
+                for (long values = graph.getCandidates(row, col); values != 0; values &= values - 1) {
+                    int v = Long.numberOfTrailingZeros(values);
+                    int first = next;
+                    appendNode(next++, cellColumn[cellId], cellId * size + v);
+                    appendNode(next++, firstSecondary + row * size + v, cellId * size + v);
+                    appendNode(next++, firstSecondary + (size + col) * size + v, cellId * size + v);
+                    appendNode(next++, firstSecondary + (2 * size + box) * size + v, cellId * size + v);
+                    // Link the four nodes of the option into a ring
+                    for (int i = 0; i < 4; i++) {
+                        right[first + i] = first + (i + 1) % 4;
+                        left[first + i] = first + (i + 3) % 4;
+                    }
+                }
+            }
+        }
+    }
+
+    // Add a node to the bottom of a column
+    private void appendNode(int node, int header, int optionId) {
+        column[node] = header;
+        option[node] = optionId;
+        up[node] = up[header];
+        down[node] = header;
+        down[up[header]] = node;
+        up[header] = node;
+        columnSize[header]++;
+    }
+
+    /**
+     * Recursive Algorithm X search. An interrupted thread stops it like a reached limit does.
+     * @return true once the solution limit has been reached
+     */
+    private boolean search(int depth) {
+        if (Thread.currentThread().isInterrupted()) {
+            return true;
+        }
+        tally.nodesExpanded++;
+        tally.reachedDepth(depth);
+        // Every empty cell is covered, so the chosen options are a solution
+        if (right[0] == 0) {
+            recordSolution(depth);
+            return limit > 0 && solutionCount >= limit;
+        }
+
+        // Branch on the primary column with the fewest options left
+        int best = right[0];
+        for (int c = right[best]; c != 0; c = right[c]) {
+            if (columnSize[c] < columnSize[best]) {
+                best = c;
+            }
+        }
+        if (columnSize[best] == 0) {
+            tally.backtracks++;
+            return false;
+        }
+
+        cover(best);
+        for (int r = down[best]; r != best; r = down[r]) {
+            chosen[depth] = r;
+            for (int j = right[r]; j != r; j = right[j]) {
+                cover(column[j]);
+            }
+            boolean done = search(depth + 1);
+            for (int j = left[r]; j != r; j = left[j]) {
+                uncover(column[j]);
+            }
+            if (done) {
+                uncover(best);
+                return true;
+            }
+        }
+        uncover(best);
+        tally.backtracks++;
+        return false;
+    }
+
+    // Remove a column from the header list and every option that uses it from the other columns
+    private void cover(int c) {
+        right[left[c]] = right[c];
+        left[right[c]] = left[c];
+        for (int i = down[c]; i != c; i = down[i]) {
+            for (int j = right[i]; j != i; j = right[j]) {
+                down[up[j]] = down[j];
+                up[down[j]] = up[j];
+                columnSize[column[j]]--;
+            }
+        }
+    }
+
+    // Undo cover, in exactly the reverse order
+    private void uncover(int c) {
+        for (int i = up[c]; i != c; i = up[i]) {
+            for (int j = left[i]; j != i; j = left[j]) {
+                columnSize[column[j]]++;
+                down[up[j]] = j;
+                up[down[j]] = j;
+            }
+        }
+        right[left[c]] = c;
+        left[right[c]] = c;
+    }
+
+    private void recordSolution(int depth) {
+        solutionCount++;
+        if (!storeSolutions) {
+            return;
+        }
+        int[][] grid = new int[size][size];
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(baseGrid[i], 0, grid[i], 0, size);
+        }
+        for (int d = 0; d < depth; d++) {
+            int optionId = option[chosen[d]];
+            int cellId = optionId / size;
+            grid[cellId / size][cellId % size] = optionId % size + 1;
+        }
+        solutions.add(grid);
+    }
+
+    /**
+     * Gets the solutions found by the last solve.
+     */
+    public List<int[][]> getSolutions() {
+        return solutions;
+    }
+
+    /**
+     * Stops solve from printing how many solutions it found, for batch runs over many boards.
+     */
+    public void setQuiet(boolean quiet) {
+        this.quiet = quiet;
+    }
+
+    /**
+     * Sets a listener that is handed the metrics of every solve and count when it ends.
+     */
+    public void setMetricsListener(Consumer<SearchMetrics> metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * Gets the metrics of the last solve or count. Dancing Links has no propagation step or
+     * frontier, so those numbers stay 0.
+     */
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Gets the number of solutions found by the last solve or count.
+     */
+    public long getSolutionCount() {
+        return solutionCount;
+    }
+}
@@ -0,0 +1,391 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Hybrid search: breadth-first until there is enough work to go around, then depth-first on
+ * every thread.
+ *
+ * A solve starts with ImprovementBFS (most-constrained cell first) on the calling thread and
+ * stops it once its queue holds seedsPerThread states for every thread. Each queued state is a
+ * separate subproblem: no two of them share a solution. The seeds are sorted with the emptiest
+ * boards first, which are usually the biggest subtrees, and the workers claim them one at a time
+ * and search each with DLSSolver. A thread that drew small subtrees just claims more of them, so
+ * the threads stay busy until the last seeds, while memory stays at one BFS frontier of a few
+ * hundred boards plus one DLS stack per thread.
+ *
+ * More seeds balance the threads better but cost more BFS; the right number depends on the
+ * board. Unless it is set with setSeedsPerThread, it is tuned from solve to solve by how evenly
+ * the seeds kept the workers busy: if they searched for less than LOW_UTILIZATION of the time
+ * the busiest worker did, the next frontier is twice as big, and if they searched for more than
+ * HIGH_UTILIZATION of it, it is halved.
+ */
+public class HybridSolver {
+    private static final int DEFAULT_SEEDS_PER_THREAD = 8;
+    private static final int MIN_SEEDS_PER_THREAD = 2;
+    private static final int MAX_SEEDS_PER_THREAD = 256;
+    // Below this share of busy time, the frontier was too small to keep every thread working
+    private static final double LOW_UTILIZATION = 0.85;
+    // Above this, a smaller frontier would most likely do as well
+    private static final double HIGH_UTILIZATION = 0.97;
+
+    private final List<int[][]> solutions = new ArrayList<>();
+    private final SolverPool sharedPool; // null when each solve starts its own pool
+    private int parallelism;
+    private int seedsPerThread; // 0 to tune it automatically
+    private int tunedSeedsPerThread = DEFAULT_SEEDS_PER_THREAD;
+    private CellOrder cellOrder = CellOrder.MOST_CONSTRAINED;
+    private ValueOrder valueOrder = ValueOrder.ASCENDING;
+    private long timeoutMillis; // 0 for no time limit
+    private boolean timedOut;
+    private int seedCount; // Seeds the last solve handed to the workers
+    private int peakFrontierSize;
+    private double utilization; // Busy share of the workers in the last depth-first phase
+    private SearchMetrics metrics;
+    private Consumer<SearchMetrics> metricsListener; // Told about every solve, null for none
+
+    /**
+     * Creates a solver that starts a new work-stealing pool for every solve and stops it afterwards.
+     */
+    public HybridSolver() {
+        this(null);
+    }
+
+    /**
+     * Creates a solver that runs the depth-first phase of every solve on a shared, long-lived pool.
+     * The pool belongs to the caller, who closes it when the solver is no longer needed.
+     */
+    public HybridSolver(SolverPool sharedPool) {
+        this.sharedPool = sharedPool;
+        this.parallelism = sharedPool == null ? Runtime.getRuntime().availableProcessors() : sharedPool.getParallelism();
+    }
+
+    /**
+     * Solves a board, stopping every worker as soon as maxSolutions solutions have been found.
+     * If a timeout is set and runs out first, the solutions found so far are kept and isTimedOut() is true.
+     * @return true if at least one solution was found
+     */
+    public boolean solve(SudokuGraph graph, int maxSolutions) {
+        maxSolutions = Math.max(1, maxSolutions);
+        solutions.clear();
+        timedOut = false;
+        seedCount = 0;
+        utilization = 0;
+        metrics = new SearchMetrics("HybridSolver");
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        // Breadth-first on this thread until the frontier is big enough to split
+        int perThread = seedsPerThread > 0 ? seedsPerThread : tunedSeedsPerThread;
+        ImprovementBFS bfs = new ImprovementBFS();
+        bfs.setCellOrder(cellOrder);
+        bfs.setValueOrder(valueOrder);
+        bfs.solveToFrontier(graph, perThread * parallelism, maxSolutions);
+        solutions.addAll(bfs.getSolutions());
+        peakFrontierSize = bfs.getPeakFrontierSize();
+        SearchMetrics.Tally tally = metrics.newTally();
+        addCounts(tally, bfs.getMetrics(), 0);
+        tally.peakFrontierSize = peakFrontierSize;
+        metrics.flush(tally);
+
+        List<int[][]> seeds = new ArrayList<>(bfs.getSeeds());
+        seedCount = seeds.size();
+        if (!seeds.isEmpty() && solutions.size() < maxSolutions) {
+            seeds.sort(Comparator.comparingInt(HybridSolver::emptyCells).reversed());
+            SeedRun run = new SeedRun(seeds, maxSolutions - solutions.size(), bfs.getMetrics().getMaxDepth());
+            runSeeds(run, deadline);
+            if (seedsPerThread == 0 && !timedOut && !run.enough) {
+                tune();
+            }
+        }
+
+        metrics.finish(solutions.size());
+        if (metricsListener != null) {
+            metricsListener.accept(metrics);
+        }
+        return !solutions.isEmpty();
+    }
+
+    /**
+     * Hands the seeds to one worker per thread and waits for them, for enough solutions, or for
+     * the time limit.
+     */
+    private void runSeeds(SeedRun run, long deadline) {
+        int workers = Math.min(parallelism, run.seeds.size());
+        SolverPool pool = sharedPool != null ? sharedPool : SolverPool.workStealing(parallelism);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < workers; i++) {
+                futures.add(pool.getExecutor().submit(() -> work(run)));
+            }
+            for (Future<?> future : futures) {
+                if (timeoutMillis > 0) {
+                    future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } else {
+                    future.get();
+                }
+            }
+        }
+        catch (TimeoutException e) {
+            // Out of time: stop the workers and keep what they found. They check for the
+            // interrupt at every node, so waiting for them to unwind is quick
+            timedOut = true;
+            run.stop();
+            awaitStopped(futures);
+        }
+        catch (InterruptedException e) {
+            run.stop();
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+            // One worker failed: stop the others and wait for them like on a timeout, or on a shared
+            // pool they could still add to this solve after it returned. awaitStopped prints the failure
+            run.stop();
+            awaitStopped(futures);
+        }
+        finally {
+            if (pool != sharedPool) {
+                pool.getExecutor().shutdownNow();
+            }
+        }
+        // Measured against the busiest worker, so starting the threads does not count as idle time
+        long busiest = run.busiestNanos.get();
+        utilization = busiest == 0 ? 1 : (double) run.busyNanos.get() / (busiest * (double) workers);
+        synchronized (run) {
+            solutions.addAll(run.solutions);
+        }
+    }
+
+    // Wait for stopped workers to finish, so none of them is still counting into this solve
+    private static void awaitStopped(List<Future<?>> futures) {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            }
+            catch (ExecutionException e) {
+                System.out.println(e);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // One worker: claim the next seed and search it depth-first, until the seeds run out or the run stops
+    private void work(SeedRun run) {
+        if (!run.register()) {
+            return;
+        }
+        SearchMetrics.Tally tally = metrics.newTally();
+        long busy = 0;
+        try {
+            DLSSolver dls = new DLSSolver();
+            dls.setQuiet(true);
+            dls.setCellOrder(cellOrder);
+            dls.setValueOrder(valueOrder);
+            while (!run.stopped) {
+                int next = run.nextSeed.getAndIncrement();
+                if (next >= run.seeds.size()) {
+                    break;
+                }
+                long start = System.nanoTime();
+                int[][] seed = run.seeds.get(next);
+                dls.setMaxSolutions(run.stillNeeded());
+                dls.solve(new SudokuGraph(seed), seed.length * seed.length);
+                busy += System.nanoTime() - start;
+                addCounts(tally, dls.getMetrics(), run.seedDepth);
+                run.addSolutions(dls.getSolutions());
+            }
+        }
+        finally {
+            run.busyNanos.addAndGet(busy);
+            run.busiestNanos.accumulateAndGet(busy, Math::max);
+            metrics.flush(tally);
+            run.unregister();
+        }
+    }
+
+    // Add what a sub-solve counted to a tally; its depths start at depthOffset
+    private static void addCounts(SearchMetrics.Tally tally, SearchMetrics counted, long depthOffset) {
+        tally.nodesExpanded += counted.getNodesExpanded();
+        tally.backtracks += counted.getBacktracks();
+        tally.propagationFills += counted.getPropagationFills();
+        tally.dedupHits += counted.getDedupHits();
+        tally.reachedDepth(depthOffset + counted.getMaxDepth());
+    }
+
+    // Grow the frontier when the workers sat idle, shrink it when they were busy the whole time
+    private void tune() {
+        if (utilization < LOW_UTILIZATION) {
+            tunedSeedsPerThread = Math.min(MAX_SEEDS_PER_THREAD, tunedSeedsPerThread * 2);
+        } else if (utilization > HIGH_UTILIZATION) {
+            tunedSeedsPerThread = Math.max(MIN_SEEDS_PER_THREAD, tunedSeedsPerThread / 2);
+        }
+    }
+
+    private static int emptyCells(int[][] grid) {
+        int empty = 0;
+        for (int[] row : grid) {
+            for (int value : row) {
+                if (value == 0) {
+                    empty++;
+                }
+            }
+        }
+        return empty;
+    }
+
+    /**
+     * The depth-first phase of one solve, shared by its workers.
+     *
+     * DLSSolver only stops for an interrupt, so stopping the run interrupts every worker that is
+     * still searching. A worker unregisters before it clears its interrupt, and interrupts are only
+     * sent to registered workers, so none is left over for the next task on the same pool thread.
+     */
+    private static class SeedRun {
+        private final List<int[][]> seeds; // Biggest first
+        private final int maxSolutions;
+        private final long seedDepth; // BFS levels above the seeds, for the metrics
+        private final AtomicInteger nextSeed = new AtomicInteger();
+        private final AtomicLong busyNanos = new AtomicLong(); // Search time of every worker together
+        private final AtomicLong busiestNanos = new AtomicLong(); // Search time of the busiest worker
+        private final List<int[][]> solutions = new ArrayList<>(); // Guarded by this
+        private final List<Thread> running = new ArrayList<>(); // Guarded by this
+        private volatile boolean stopped;
+        private volatile boolean enough; // Stopped because maxSolutions were found
+
+        SeedRun(List<int[][]> seeds, int maxSolutions, long seedDepth) {
+            this.seeds = seeds;
+            this.maxSolutions = maxSolutions;
+            this.seedDepth = seedDepth;
+        }
+
+        synchronized boolean register() {
+            if (stopped) {
+                return false;
+            }
+            running.add(Thread.currentThread());
+            return true;
+        }
+
+        synchronized void unregister() {
+            running.remove(Thread.currentThread());
+            Thread.interrupted();
+        }
+
+        synchronized void stop() {
+            if (!stopped) {
+                stopped = true;
+                for (Thread thread : running) {
+                    thread.interrupt();
+                }
+            }
+        }
+
+        synchronized int stillNeeded() {
+            return Math.max(1, maxSolutions - solutions.size());
+        }
+
+        // Keep a worker's solutions up to maxSolutions, and stop everyone once there are enough
+        synchronized void addSolutions(List<int[][]> found) {
+            for (int i = 0; i < found.size() && solutions.size() < maxSolutions; i++) {
+                solutions.add(found.get(i));
+            }
+            if (solutions.size() >= maxSolutions) {
+                enough = true;
+                stop();
+            }
+        }
+    }
+
+    /**
+     * Sets how many seeds the breadth-first phase makes for every thread (0, the default, tunes it
+     * from solve to solve).
+     */
+    public void setSeedsPerThread(int seedsPerThread) {
+        this.seedsPerThread = Math.max(0, seedsPerThread);
+    }
+
+    /**
+     * Gets the seeds per thread the next solve will use.
+     */
+    public int getSeedsPerThread() {
+        return seedsPerThread > 0 ? seedsPerThread : tunedSeedsPerThread;
+    }
+
+    /**
+     * Sets how many threads search the seeds. Ignored with a shared pool, which has its own size.
+     */
+    public void setParallelism(int parallelism) {
+        if (sharedPool == null) {
+            this.parallelism = Math.max(1, parallelism);
+        }
+    }
+
+    /**
+     * Sets the cell order of both phases (MOST_CONSTRAINED by default).
+     */
+    public void setCellOrder(CellOrder cellOrder) {
+        this.cellOrder = cellOrder;
+    }
+
+    /**
+     * Sets the value order of both phases (ASCENDING by default).
+     */
+    public void setValueOrder(ValueOrder valueOrder) {
+        this.valueOrder = valueOrder;
+    }
+
+    /**
+     * Sets a time limit for each solve (0 for none). It is checked once the seeds are handed out;
+     * the breadth-first phase is short and always runs to its frontier.
+     */
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Gets the number of seeds the last solve searched depth-first (0 if BFS finished it alone).
+     */
+    public int getSeedCount() {
+        return seedCount;
+    }
+
+    /**
+     * Gets the largest BFS frontier of the last solve.
+     */
+    public int getPeakFrontierSize() {
+        return peakFrontierSize;
+    }
+
+    /**
+     * Gets how evenly the last solve's seeds kept the workers busy, from 0 to 1: their search time
+     * over what it would have been had every worker searched as long as the busiest one.
+     */
+    public double getUtilization() {
+        return utilization;
+    }
+
+    public void setMetricsListener(Consumer<SearchMetrics> metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+
+    public List<int[][]> getSolutions() {
+        return solutions;
+    }
+}
@@ -1,8 +1,16 @@
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * Improved BFS implementation for solving Sudoku puzzles.
- * This implementation uses a most-constrained-cell heuristic to improve efficiency.
+ * This implementation uses a most-constrained-cell heuristic to improve efficiency
+ * (any CellOrder can be chosen with setCellOrder).
+ * With setParallelism above 1 (or a shared SolverPool), each level of the search is expanded
+ * on several threads at once, and the solutions are the same as on one thread.
  * 
  * CITATION:
  * Based on the paper: "Comparison Analysis of Breadth First Search and Depth Limited Search Algorithms in Sudoku Game"
@@ -10,148 +18,430 @@ import java.util.*;
  * https://www.researchgate.net/publication/358642884_Comparison_Analysis_of_Breadth_First_Search_and_Depth_Limited_Search_Algorithms_in_Sudoku_Game
  */
 public class ImprovementBFS {
+    // Cut each level into about this many chunks per thread
+    private static final int CHUNKS_PER_THREAD = 8;
+    // Smallest chunk worth handing to a thread
+    private static final int MIN_CHUNK_SIZE = 16;
+    // Stripes of the visited set per thread, so two threads rarely wait on the same stripe
+    private static final int STRIPES_PER_THREAD = 16;
+
     private List<int[][]> solutions;
+    private final SolverPool sharedPool; // null when each parallel solve starts its own pool
+    private int parallelism; // 1 searches one state at a time on the calling thread
     private final int MAX_SOLUTIONS = 5; // Limit number of solutions to find
     private int exploredStates; // Add this field to track states explored
+    private int peakFrontierSize; // Most states that were waiting in the queue at once
+    private long peakFrontierBytes; // Packed bytes held by the queue at that point
+    private boolean confirmVisitedStates; // Compare full states on a hash match, not just hashes
+    private SolvedBoardCache resultCache; // null when every solve searches
+    private SearchMetrics metrics;
+    private Consumer<SearchMetrics> metricsListener; // Told about every solve, null for none
+    private CellOrder cellOrder = CellOrder.MOST_CONSTRAINED;
+    private ValueOrder valueOrder = ValueOrder.ASCENDING;
+    private int maxFrontierSize; // Give up once this many states are queued, 0 for no limit
+    private boolean frontierLimitReached;
+    private int maxInHeapStates; // Spill queued states and visited hashes past this many, 0 to never spill
+    private Path spillDirectory; // Where spill files go, null for the system temp directory
+    private long spillCount; // Files written by the last solve's spills
+    private long spillBytesWritten;
+    private long spillBytesRead;
+    private int seedTarget; // Stop once this many states are queued and hand them back, 0 to search to the end
+    private final List<int[][]> seeds = new ArrayList<>(); // The states handed back by the last solveToFrontier
 
     public ImprovementBFS() {
+        this(null);
+    }
+
+    /**
+     * Creates a solver whose solves expand each level on a shared, long-lived pool, with as many
+     * threads as the pool has. The pool belongs to the caller, who closes it when it is no longer needed.
+     */
+    public ImprovementBFS(SolverPool sharedPool) {
         solutions = new ArrayList<>();
         exploredStates = 0;
+        this.sharedPool = sharedPool;
+        this.parallelism = sharedPool == null ? 1 : sharedPool.getParallelism();
     }
 
     public boolean solve(SudokuGraph graph, int maxSolutions) {
         solutions.clear();
         exploredStates = 0; // Reset counter
+        spillCount = 0;
+        spillBytesWritten = 0;
+        spillBytesRead = 0;
+        seeds.clear();
+        frontierLimitReached = false;
+        metrics = new SearchMetrics("ImprovementBFS");
+        SearchMetrics.Tally tally = metrics.newTally();
         
         // Use the copyGrid method from SudokuGraph to get a copy of the initial grid
         int[][] initialGrid = graph.copyGrid();
+
+        // A puzzle already solved up to symmetry needs no search when one solution is enough
+        CanonicalForm form = null;
+        if (resultCache != null && maxSolutions == 1) {
+            form = resultCache.canonicalize(initialGrid);
+            int[][] cached = resultCache.get(form);
+            if (cached != null) {
+                solutions.add(cached);
+                finishMetrics(tally);
+                return true;
+            }
+        }
         
-        Queue<int[][]> queue = new LinkedList<>();
-        Set<String> visited = new HashSet<>();
+        if (parallelism > 1 && seedTarget == 0) {
+            searchLevels(initialGrid, maxSolutions);
+        } else {
+            searchQueue(initialGrid, maxSolutions, tally);
+        }
+
+        if (form != null && !solutions.isEmpty()) {
+            resultCache.put(form, solutions.get(0));
+        }
+
+        tally.peakFrontierSize = peakFrontierSize;
+        finishMetrics(tally);
+        return !solutions.isEmpty();
+    }
+
+    /**
+     * The single-threaded search: one FIFO queue of packed states, polled one state at a time.
+     */
+    private void searchQueue(int[][] initialGrid, int maxSolutions, SearchMetrics.Tally tally) {
+        // One working board is reused for every state; the queue holds packed copies of the
+        // cells that were empty at the start, since the givens are the same in every state
+        SudokuGraph currentGraph = new SudokuGraph(initialGrid);
+        PackedBoard codec = PackedBoard.forFreeCells(initialGrid);
+        BoardFrontier queue = maxInHeapStates > 0
+                ? BoardFrontier.spilling(codec, maxInHeapStates, spillDirectory) : new BoardFrontier(codec);
+        CellSelector selector = cellOrder.newSelector();
+        selector.prepare(currentGraph);
+        int[] values = new int[currentGraph.getSize()];
         
-        queue.add(initialGrid);
-        visited.add(gridToString(initialGrid));
+        // Visited states are remembered by their Zobrist hash, which setValue keeps up to date,
+        // so checking a child is O(1). Confirming also compares the packed cells on a hash match.
+        // Without confirming, a spilling search keeps only the newest hashes in the heap.
+        LongHashSet visited;
+        if (confirmVisitedStates) {
+            visited = new LongHashSet(codec);
+        } else if (maxInHeapStates > 0) {
+            visited = new SpillingLongHashSet(maxInHeapStates, spillDirectory);
+        } else {
+            visited = new LongHashSet();
+        }
+        long[] child = new long[codec.getWordsPerBoard()];
         
-        while (!queue.isEmpty() && solutions.size() < maxSolutions) {
-            int[][] currentGrid = queue.poll();
-            exploredStates++; // Increment counter for each state explored
-            
-            if (isComplete(currentGrid)) {
-                solutions.add(deepCopy(currentGrid));
-                continue;
-            }
-            
-            // Improvement: Find the most constrained cell (cell with fewest valid options)
-            int[] bestCell = findMostConstrainedCell(currentGrid);
-            if (bestCell == null) continue;
+        queue.offer(currentGraph);
+        codec.pack(currentGraph, child, 0);
+        visited.add(currentGraph.getHash(), child, 0);
+
+        // The queue holds one level after another, so a level ends once as many states as it
+        // had queued have been polled
+        int depth = 0;
+        int leftInLevel = 1;
+        
+        try {
+            while (!queue.isEmpty() && solutions.size() < maxSolutions) {
+                // Give up when the queue has outgrown its limit, or when another thread asked this one to stop
+                if (maxFrontierSize > 0 && queue.size() > maxFrontierSize) {
+                    frontierLimitReached = true;
+                    break;
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                // Seeding: once the queue is big enough, hand every queued state back unexpanded
+                if (seedTarget > 0 && queue.size() >= seedTarget) {
+                    while (queue.poll(currentGraph)) {
+                        seeds.add(currentGraph.copyGrid());
+                    }
+                    break;
+                }
+                queue.poll(currentGraph);
+                exploredStates++; // Increment counter for each state explored
+                if (leftInLevel == 0) {
+                    depth++;
+                    leftInLevel = queue.size() + 1;
+                }
+                leftInLevel--;
+                tally.reachedDepth(depth);
             
-            int row = bestCell[0];
-            int col = bestCell[1];
-            int size = currentGrid.length;
+                // Fill in every forced value first. A contradiction means this state has no solutions.
+                int mark = currentGraph.getTrailSize();
+                boolean consistent = currentGraph.propagate();
+                tally.propagationFills += currentGraph.getTrailSize() - mark;
+                if (!consistent) {
+                    tally.backtracks++;
+                    selector.onContradiction(currentGraph);
+                    currentGraph.undoTo(mark);
+                    continue;
+                }
             
-            // Try each possible value
-            for (int num = 1; num <= size; num++) {
-                if (isValid(currentGrid, row, col, num)) {
-                    int[][] newGrid = deepCopy(currentGrid);
-                    newGrid[row][col] = num;
+                if (currentGraph.isPuzzleSolved()) {
+                    solutions.add(currentGraph.copyGrid());
+                } else {
+                    // Improvement: Find the most constrained cell (cell with fewest valid options)
+                    int cellId = selector.selectCell(currentGraph);
+                
+                    // Try each possible value, packing the child straight from the working board
+                    int valueCount = valueOrder.order(currentGraph, cellId, currentGraph.getCandidates(cellId), values, 0);
+                    for (int i = 0; i < valueCount; i++) {
+                        currentGraph.setCell(cellId, values[i]);
                     
-                    String gridStr = gridToString(newGrid);
-                    if (!visited.contains(gridStr)) {
-                        visited.add(gridStr);
-                        queue.add(newGrid);
+                        if (confirmVisitedStates) {
+                            codec.pack(currentGraph, child, 0);
+                            if (visited.add(currentGraph.getHash(), child, 0)) {
+                                queue.offer(child, 0);
+                            } else {
+                                tally.dedupHits++;
+                            }
+                        } else if (visited.add(currentGraph.getHash())) {
+                            queue.offer(currentGraph);
+                        } else {
+                            tally.dedupHits++;
+                        }
+                        currentGraph.setCell(cellId, 0);
                     }
                 }
+            
+                // Clear the propagated cells before the next state is loaded
+                currentGraph.undoTo(mark);
             }
         }
-        
-        return !solutions.isEmpty();
+        finally {
+            // Spilled files are deleted even if the search fails
+            queue.close();
+            spillCount = queue.getSpillCount();
+            spillBytesWritten = queue.getSpillBytesWritten();
+            spillBytesRead = queue.getSpillBytesRead();
+            if (visited instanceof SpillingLongHashSet) {
+                SpillingLongHashSet spilledVisited = (SpillingLongHashSet) visited;
+                spilledVisited.close();
+                spillCount += spilledVisited.getSpillCount();
+                spillBytesWritten += spilledVisited.getSpillBytesWritten();
+                spillBytesRead += spilledVisited.getSpillBytesRead();
+            }
+        }
+
+        peakFrontierSize = queue.getPeakSize();
+        peakFrontierBytes = queue.getPeakBytes();
+        tally.nodesExpanded = exploredStates;
     }
-    
-    // Improvement: Find the cell with fewest valid options to reduce branching factor
-    private int[] findMostConstrainedCell(int[][] grid) {
-        int minOptions = Integer.MAX_VALUE;
-        int[] bestCell = null;
-        
-        for (int i = 0; i < grid.length; i++) {
-            for (int j = 0; j < grid[0].length; j++) {
-                if (grid[i][j] == 0) {
-                    int options = countValidOptions(grid, i, j);
-                    if (options < minOptions) {
-                        minOptions = options;
-                        bestCell = new int[]{i, j};
-                        
-                        // Optimization: If we find a cell with only one option, return immediately
-                        if (minOptions == 1) return bestCell;
+
+    /**
+     * The level-synchronous search: every state of a level is expanded, spread over the pool's
+     * threads, before any state of the next level. A level is cut into chunks that the threads
+     * claim in order; each chunk's children go to a buffer of its own, and the buffers are joined
+     * in chunk order to make the next level, so no thread ever waits on a shared queue. The levels
+     * come out in the order the queue would poll them (up to which copy of a duplicate state is
+     * kept when two threads reach it at once), and solutions are taken in level order, so
+     * maxSolutions keeps the same solutions as the single-threaded search and getExploredStates
+     * counts the states it would have polled. The metrics count every state a thread expanded.
+     */
+    private void searchLevels(int[][] initialGrid, int maxSolutions) {
+        peakFrontierSize = 0;
+        PackedBoard codec = PackedBoard.forFreeCells(initialGrid);
+        int words = codec.getWordsPerBoard();
+        ConcurrentLongHashSet visited = new ConcurrentLongHashSet(parallelism * STRIPES_PER_THREAD,
+                confirmVisitedStates ? codec : null);
+        LevelWorker[] workers = new LevelWorker[parallelism];
+        for (int i = 0; i < parallelism; i++) {
+            workers[i] = new LevelWorker(initialGrid, codec);
+        }
+
+        long[] level = new long[words];
+        codec.pack(workers[0].graph, level, 0);
+        visited.add(workers[0].graph.getHash(), level, 0);
+        int levelSize = 1;
+
+        SolverPool pool = sharedPool != null ? sharedPool : SolverPool.workStealing(parallelism);
+        try {
+            for (int depth = 0; levelSize > 0 && solutions.size() < maxSolutions; depth++) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                // Several chunks per thread, so a thread that drew cheap states takes more of them
+                int chunkSize = Math.max(MIN_CHUNK_SIZE, levelSize / (parallelism * CHUNKS_PER_THREAD));
+                LevelRun run = new LevelRun(level, levelSize, depth, chunkSize,
+                        maxSolutions - solutions.size(), visited);
+
+                // The calling thread takes chunks as well, instead of only waiting for the pool
+                int helpers = Math.min(parallelism, run.chunks.length) - 1;
+                List<Future<?>> futures = new ArrayList<>();
+                for (int i = 1; i <= helpers; i++) {
+                    LevelWorker worker = workers[i];
+                    futures.add(pool.getExecutor().submit(() -> worker.expand(run)));
+                }
+                workers[0].expand(run);
+                awaitLevel(futures, run);
+                if (run.stopped) {
+                    break;
+                }
+
+                // The chunks were claimed in order and each one was finished, so the ones that
+                // ran are a prefix of the level
+                int chunksDone = Math.min(run.nextChunk.get(), run.chunks.length);
+                int nextSize = 0;
+                int lastSolutionIndex = -1;
+                for (int c = 0; c < chunksDone; c++) {
+                    LevelChunk chunk = run.chunks[c];
+                    for (int i = 0; i < chunk.solutions.size() && solutions.size() < maxSolutions; i++) {
+                        solutions.add(chunk.solutions.get(i));
+                        lastSolutionIndex = chunk.solutionIndexes.get(i);
                     }
+                    nextSize += chunk.childCount;
+                }
+                peakFrontierSize = Math.max(peakFrontierSize, levelSize + nextSize);
+                if (solutions.size() >= maxSolutions) {
+                    // The queue would have stopped polling at the last solution it needed
+                    exploredStates += lastSolutionIndex + 1;
+                    break;
+                }
+                exploredStates += Math.min(levelSize, chunksDone * chunkSize);
+                if (maxFrontierSize > 0 && nextSize > maxFrontierSize) {
+                    frontierLimitReached = true;
+                    break;
+                }
+
+                long[] next = new long[nextSize * words];
+                int offset = 0;
+                for (int c = 0; c < chunksDone; c++) {
+                    LevelChunk chunk = run.chunks[c];
+                    System.arraycopy(chunk.children, 0, next, offset, chunk.childCount * words);
+                    offset += chunk.childCount * words;
                 }
+                level = next;
+                levelSize = nextSize;
             }
         }
-        return bestCell;
-    }
-    
-    private int countValidOptions(int[][] grid, int row, int col) {
-        int count = 0;
-        int size = grid.length;
-        
-        for (int num = 1; num <= size; num++) {
-            if (isValid(grid, row, col, num)) {
-                count++;
+        finally {
+            if (pool != sharedPool) {
+                pool.getExecutor().shutdownNow();
             }
         }
-        return count;
+        peakFrontierBytes = (long) peakFrontierSize * codec.getBytesPerBoard();
     }
-    
-    private boolean isComplete(int[][] grid) {
-        for (int[] row : grid) {
-            for (int cell : row) {
-                if (cell == 0) return false;
+
+    // Wait for the pool's share of a level. If this thread is interrupted, the level is stopped
+    private void awaitLevel(List<Future<?>> futures, LevelRun run) {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
             }
         }
-        return true;
-    }
-    
-    private boolean isValid(int[][] grid, int row, int col, int num) {
-        int size = grid.length;
-        int boxSize = (int) Math.sqrt(size);
-        
-        // Check row
-        for (int j = 0; j < size; j++) {
-            if (grid[row][j] == num) return false;
+        catch (InterruptedException e) {
+            run.stopped = true;
+            Thread.currentThread().interrupt();
         }
-        
-        // Check column
-        for (int i = 0; i < size; i++) {
-            if (grid[i][col] == num) return false;
+        catch (ExecutionException e) {
+            run.stopped = true;
+            System.out.println(e);
         }
-        
-        // Check box
-        int boxRowStart = row - row % boxSize;
-        int boxColStart = col - col % boxSize;
-        for (int i = 0; i < boxSize; i++) {
-            for (int j = 0; j < boxSize; j++) {
-                if (grid[boxRowStart + i][boxColStart + j] == num) return false;
-            }
+    }
+
+    private void finishMetrics(SearchMetrics.Tally tally) {
+        metrics.flush(tally);
+        metrics.finish(solutions.size());
+        if (metricsListener != null) {
+            metricsListener.accept(metrics);
         }
-        
-        return true;
     }
     
-    private String gridToString(int[][] grid) {
-        StringBuilder sb = new StringBuilder();
-        for (int[] row : grid) {
-            for (int cell : row) {
-                sb.append(cell);
-            }
-        }
-        return sb.toString();
+    // When enabled, two states are only treated as duplicates if their cells match as well as
+    // their 64-bit hashes. This costs a packed copy of every visited state.
+    public void setConfirmVisitedStates(boolean confirmVisitedStates) {
+        this.confirmVisitedStates = confirmVisitedStates;
     }
     
-    private int[][] deepCopy(int[][] original) {
-        int[][] copy = new int[original.length][original[0].length];
-        for (int i = 0; i < original.length; i++) {
-            System.arraycopy(original[i], 0, copy[i], 0, original[i].length);
+    /**
+     * Searches breadth-first only until targetStates states are queued, then stops and keeps the
+     * queued states, unexpanded, for getSeeds. Every solution lies either in getSolutions (found
+     * before the stop) or under exactly one seed, since a state's children split its solutions
+     * between them. If the search ends before the queue gets that big, there are no seeds and the
+     * solve is complete. Seeding always runs on the calling thread and skips the result cache.
+     * @return true if a solution was found before the stop
+     */
+    boolean solveToFrontier(SudokuGraph graph, int targetStates, int maxSolutions) {
+        SolvedBoardCache cache = resultCache;
+        seedTarget = Math.max(1, targetStates);
+        resultCache = null;
+        try {
+            return solve(graph, maxSolutions);
+        }
+        finally {
+            seedTarget = 0;
+            resultCache = cache;
         }
-        return copy;
+    }
+
+    // The queued states the last solveToFrontier stopped at, oldest first
+    List<int[][]> getSeeds() {
+        return seeds;
+    }
+
+    // Choose how the cell to branch on is picked (MOST_CONSTRAINED by default)
+    public void setCellOrder(CellOrder cellOrder) {
+        this.cellOrder = cellOrder;
+    }
+
+    // Choose the order a cell's values are queued in (ASCENDING by default)
+    public void setValueOrder(ValueOrder valueOrder) {
+        this.valueOrder = valueOrder;
+    }
+    
+    // Give up once more than this many states are waiting in the queue (0 for no limit), so a
+    // board that BFS is a poor fit for cannot use up the heap. isFrontierLimitReached tells
+    // a gave-up solve apart from one that ran out of states
+    public void setMaxFrontierSize(int maxFrontierSize) {
+        this.maxFrontierSize = maxFrontierSize;
+    }
+
+    public boolean isFrontierLimitReached() {
+        return frontierLimitReached;
+    }
+
+    // Keep at most about this many queued states in the heap (0, the default, for no limit) and
+    // spill older ones to memory-mapped files in a new directory inside spillDirectory (null for
+    // the system temp directory). Unless visited states are confirmed, the visited hashes spill
+    // past the same limit. Only the single-threaded search spills; parallel levels stay in the heap
+    public void setSpillToDisk(int maxInHeapStates, Path spillDirectory) {
+        this.maxInHeapStates = Math.max(0, maxInHeapStates);
+        this.spillDirectory = spillDirectory;
+    }
+
+    // Files written to disk by the last solve, for the queue and the visited set together
+    public long getSpillCount() {
+        return spillCount;
+    }
+
+    public long getSpillBytesWritten() {
+        return spillBytesWritten;
+    }
+
+    public long getSpillBytesRead() {
+        return spillBytesRead;
+    }
+
+    // Expand each level on this many threads (1, the default without a shared pool, keeps the
+    // single-threaded queue). A parallel solve starts its own work-stealing pool unless the
+    // solver was given a shared one
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+    
+    // Answer single-solution solves from a cache of puzzles solved before, up to symmetry
+    public void setResultCache(SolvedBoardCache resultCache) {
+        this.resultCache = resultCache;
+    }
+    
+    // Hand the metrics of every solve to a listener when it ends
+    public void setMetricsListener(Consumer<SearchMetrics> metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    // Metrics of the last solve
+    public SearchMetrics getMetrics() {
+        return metrics;
     }
     
     public List<int[][]> getSolutions() {
@@ -162,4 +452,154 @@ public class ImprovementBFS {
     public int getExploredStates() {
         return exploredStates;
     }
+
+    // Largest number of states that were queued at once during the last solve
+    public int getPeakFrontierSize() {
+        return peakFrontierSize;
+    }
+
+    // Packed size of the queue at its peak, in bytes
+    public long getPeakFrontierBytes() {
+        return peakFrontierBytes;
+    }
+
+    /**
+     * One level of a parallel solve, shared by the threads that expand it.
+     */
+    private static class LevelRun {
+        private final long[] level; // Packed states of the level, back to back
+        private final int levelSize;
+        private final int depth;
+        private final int chunkSize;
+        private final LevelChunk[] chunks; // Filled in by whichever thread claimed each chunk
+        private final int neededSolutions; // Solutions still wanted when the level started
+        private final ConcurrentLongHashSet visited;
+        private final AtomicInteger nextChunk = new AtomicInteger();
+        private final AtomicInteger solutionsFound = new AtomicInteger();
+        private final AtomicInteger queued = new AtomicInteger(); // Children of the finished chunks
+        private volatile boolean stopped; // Interrupted, so the level is dropped
+
+        LevelRun(long[] level, int levelSize, int depth, int chunkSize, int neededSolutions,
+                 ConcurrentLongHashSet visited) {
+            this.level = level;
+            this.levelSize = levelSize;
+            this.depth = depth;
+            this.chunkSize = chunkSize;
+            this.chunks = new LevelChunk[(levelSize + chunkSize - 1) / chunkSize];
+            this.neededSolutions = neededSolutions;
+            this.visited = visited;
+        }
+    }
+
+    /**
+     * What one chunk of a level produced: its children, packed back to back, and its solutions
+     * with their index in the level.
+     */
+    private static class LevelChunk {
+        private final int wordsPerBoard;
+        private long[] children;
+        private int childCount;
+        private final List<int[][]> solutions = new ArrayList<>();
+        private final List<Integer> solutionIndexes = new ArrayList<>();
+
+        LevelChunk(int wordsPerBoard, int expectedChildren) {
+            this.wordsPerBoard = wordsPerBoard;
+            this.children = new long[Math.max(1, expectedChildren) * wordsPerBoard];
+        }
+
+        void addChild(long[] packed) {
+            if ((childCount + 1) * wordsPerBoard > children.length) {
+                children = Arrays.copyOf(children, children.length * 2);
+            }
+            System.arraycopy(packed, 0, children, childCount * wordsPerBoard, wordsPerBoard);
+            childCount++;
+        }
+    }
+
+    /**
+     * One thread's share of a parallel solve: its own working board, cell selector, and buffers,
+     * kept from level to level. Only one thread uses a worker at a time.
+     */
+    private class LevelWorker {
+        private final SudokuGraph graph;
+        private final PackedBoard codec;
+        private final CellSelector selector;
+        private final int[] values;
+        private final long[] child;
+
+        LevelWorker(int[][] initialGrid, PackedBoard codec) {
+            this.graph = new SudokuGraph(initialGrid);
+            this.codec = codec;
+            this.selector = cellOrder.newSelector();
+            this.selector.prepare(graph);
+            this.values = new int[graph.getSize()];
+            this.child = new long[codec.getWordsPerBoard()];
+        }
+
+        // Claim chunks until the level is used up, has given enough solutions, or has outgrown the frontier limit
+        void expand(LevelRun run) {
+            SearchMetrics.Tally tally = metrics.newTally();
+            try {
+                while (!run.stopped && run.solutionsFound.get() < run.neededSolutions
+                        && (maxFrontierSize == 0 || run.queued.get() <= maxFrontierSize)) {
+                    int chunk = run.nextChunk.getAndIncrement();
+                    if (chunk >= run.chunks.length) {
+                        break;
+                    }
+                    run.chunks[chunk] = expandChunk(run, chunk, tally);
+                }
+            }
+            finally {
+                metrics.flush(tally);
+            }
+        }
+
+        // The same steps as the single-threaded loop, for every state of one chunk
+        private LevelChunk expandChunk(LevelRun run, int chunk, SearchMetrics.Tally tally) {
+            int words = codec.getWordsPerBoard();
+            int from = chunk * run.chunkSize;
+            int to = Math.min(run.levelSize, from + run.chunkSize);
+            LevelChunk out = new LevelChunk(words, to - from);
+            for (int index = from; index < to; index++) {
+                if (Thread.currentThread().isInterrupted()) {
+                    run.stopped = true;
+                }
+                if (run.stopped) {
+                    break;
+                }
+                codec.unpack(run.level, index * words, graph);
+                tally.nodesExpanded++;
+                tally.reachedDepth(run.depth);
+
+                int mark = graph.getTrailSize();
+                boolean consistent = graph.propagate();
+                tally.propagationFills += graph.getTrailSize() - mark;
+                if (!consistent) {
+                    tally.backtracks++;
+                    selector.onContradiction(graph);
+                } else if (graph.isPuzzleSolved()) {
+                    out.solutions.add(graph.copyGrid());
+                    out.solutionIndexes.add(index);
+                    run.solutionsFound.incrementAndGet();
+                } else {
+                    int cellId = selector.selectCell(graph);
+                    int valueCount = valueOrder.order(graph, cellId, graph.getCandidates(cellId), values, 0);
+                    for (int i = 0; i < valueCount; i++) {
+                        graph.setCell(cellId, values[i]);
+                        codec.pack(graph, child, 0);
+                        // Without confirming, the set only looks at the hash
+                        if (run.visited.add(graph.getHash(), child, 0)) {
+                            out.addChild(child);
+                        } else {
+                            tally.dedupHits++;
+                        }
+                        graph.setCell(cellId, 0);
+                    }
+                }
+                graph.undoTo(mark);
+            }
+            run.queued.addAndGet(out.childCount);
+            return out;
+        }
+    }
 }
@@ -14,129 +14,591 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 public class ImprovementDLS {
+    // Keep forking while at least this many cells are still empty; below it a branch is searched on one thread
+    private static final int DEFAULT_SPLIT_THRESHOLD = 24;
+    // Only fork when the current worker has fewer than this many tasks waiting to be stolen
+    private static final int MAX_SURPLUS_TASKS = 2;
+
     private final List<int[][]> solutions;
+    private final SolverPool sharedPool; // null when each solve starts its own pool
+    private int splitThreshold;
+    private int parallelism;
+    private long timeoutMillis; // 0 for no time limit
+    private boolean timedOut;
+    private SolvedBoardCache resultCache; // null when every solve searches
+    private SearchMetrics metrics;
+    private Consumer<SearchMetrics> metricsListener; // Told about every solve, null for none
+    private CellOrder cellOrder = CellOrder.FIRST_EMPTY;
+    private ValueOrder valueOrder = ValueOrder.ASCENDING;
+    private boolean backjumping; // Search the sequential part with BackjumpingSearch instead of plain dls
+    private long backjumps; // Backjumps of the last solve, summed over every task
+    private long nogoodHits;
+    // One backjumping engine per pool thread: a task's dls never forks, so a thread runs one search at a time,
+    // and reusing the engine keeps its nogood cache and stacks from being allocated for every task
+    private static final ThreadLocal<BackjumpingSearch> BACKJUMPERS = ThreadLocal.withInitial(BackjumpingSearch::new);
     
+    /**
+     * Creates a solver that starts a new work-stealing pool for every solve and stops it afterwards.
+     */
     public ImprovementDLS() {
+        this(null);
+    }
+
+    /**
+     * Creates a solver that runs every solve on a shared, long-lived pool.
+     * The pool belongs to the caller, who closes it when the solver is no longer needed.
+     */
+    public ImprovementDLS(SolverPool sharedPool) {
         this.solutions = Collections.synchronizedList(new ArrayList<>());
+        this.sharedPool = sharedPool;
+        this.splitThreshold = DEFAULT_SPLIT_THRESHOLD;
+        this.parallelism = sharedPool == null ? Runtime.getRuntime().availableProcessors() : sharedPool.getParallelism();
     }
     
     /**
      * Solves the Sudoku puzzle using Depth-Limited Search.
-     * @param initialGrid The initial Sudoku grid
+     * Each value of the first empty cell is searched as its own branch, and each branch keeps its first solution.
+     * @param initialGraph The initial Sudoku graph
      * @param maxDepth Maximum depth to search
-     * @param maxSolutions Maximum number of solutions to find (0 for all)
      * @return true if at least one solution was found
      */
     public boolean solve(SudokuGraph initialGraph, int maxDepth) {
+        return solve(initialGraph, maxDepth, 0);
+    }
+
+    /**
+     * Solves the Sudoku puzzle using Depth-Limited Search, stopping every worker as soon as
+     * maxSolutions solutions have been found (1 for first-solution mode).
+     * If a timeout is set and runs out first, the solutions found so far are kept and isTimedOut() is true.
+     * @param initialGraph The initial Sudoku graph
+     * @param maxDepth Maximum depth to search
+     * @param maxSolutions Number of solutions to stop at (0 for the first solution of each root branch)
+     * @return true if at least one solution was found
+     */
+    public boolean solve(SudokuGraph initialGraph, int maxDepth, int maxSolutions) {
         solutions.clear();
+        this.timedOut = false;
+        this.backjumps = 0;
+        this.nogoodHits = 0;
+        this.metrics = new SearchMetrics("ImprovementDLS");
 
         int [][] initialGrid = initialGraph.copyGrid();
 
-        // Start the threading process, using one thread per available processor.
-        // We will use threading in order to speed up search time, allowing bigger grids to run on our machines
-        ExecutorService sudokuExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-        
-        // This list stores the results of future computations
-        // This is important to have, as we are doing threading
-        // If, after running the search, we can retrieve a value from this ArrayList, that means we've found a solution
+        // A puzzle already solved up to symmetry needs no search when one solution is enough
+        CanonicalForm form = null;
+        if (resultCache != null && maxSolutions == 1) {
+            form = resultCache.canonicalize(initialGrid);
+            int[][] cached = resultCache.get(form);
+            if (cached != null) {
+                solutions.add(cached);
+                finishMetrics();
+                System.out.println("Number of DLS solutions Found: " + solutions.size());
+                return true;
+            }
+        }
+
+        // Fill in every forced value before splitting the work between threads
+        SudokuGraph rootGraph = new SudokuGraph(initialGrid);
+        SearchMetrics.Tally rootTally = metrics.newTally();
+        rootTally.nodesExpanded++;
+        boolean consistent = rootGraph.propagate();
+        rootTally.propagationFills += rootGraph.getTrailSize();
+        if (!consistent) {
+            rootTally.backtracks++;
+            metrics.flush(rootTally);
+            finishMetrics();
+            System.out.println("Number of DLS solutions Found: 0");
+            return false;
+        }
+        metrics.flush(rootTally);
+        if (rootGraph.isPuzzleSolved()) {
+            solutions.add(rootGraph.copyGrid());
+            if (form != null) {
+                resultCache.put(form, solutions.get(0));
+            }
+            finishMetrics();
+            System.out.println("Number of DLS solutions Found: " + solutions.size());
+            return true;
+        }
+
+        // Start the threading process. By default this is a work-stealing pool with one worker per available processor:
+        // idle workers steal the subtrees that busy workers fork off, so one slow branch no longer
+        // keeps the other processors waiting. A shared pool skips the thread start-up and tear-down
+        SolverPool pool = sharedPool != null ? sharedPool : SolverPool.workStealing(parallelism);
+        SearchRun run = new SearchRun(maxSolutions, maxDepth, metrics, cellOrder, valueOrder, backjumping);
+        try {
+            if (pool.isWorkStealing()) {
+                runForkJoin(pool.getForkJoinPool(), run, rootGraph.copyGrid(), maxDepth);
+            } else {
+                runRootBranches(pool.getExecutor(), run, rootGraph, maxDepth);
+            }
+        }
+        finally {
+            // Stop the running of all threads, showing that we're finished
+            if (pool != sharedPool) {
+                pool.getExecutor().shutdownNow();
+            }
+        }
+
+        backjumps = run.backjumps.sum();
+        nogoodHits = run.nogoodHits.sum();
+        if (form != null && !solutions.isEmpty() && !timedOut) {
+            resultCache.put(form, solutions.get(0));
+        }
+
+        finishMetrics();
+        System.out.println("Number of DLS solutions Found: " + solutions.size());
+        // Return true if a solution has been found
+        return !solutions.isEmpty();
+    }
+
+    private void finishMetrics() {
+        metrics.finish(solutions.size());
+        if (metricsListener != null) {
+            metricsListener.accept(metrics);
+        }
+    }
+
+    /**
+     * Runs the adaptive splitting search on a ForkJoinPool and waits for it, or for the time limit.
+     * @param rootGrid the board after solve's propagation, so the root task does not propagate again
+     */
+    private void runForkJoin(ForkJoinPool pool, SearchRun run, int[][] rootGrid, int maxDepth) {
+        ForkJoinTask<Boolean> rootTask = pool.submit(new SearchTask(run, rootGrid, maxDepth, null));
+        try {
+            if (timeoutMillis > 0) {
+                rootTask.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } else {
+                rootTask.get();
+            }
+        }
+        catch (TimeoutException e) {
+            // Out of time: tell the workers to stop and keep what they found so far.
+            // They poll the flag at every node, so waiting for them to unwind is quick
+            timedOut = true;
+            run.stopped = true;
+            rootTask.quietlyJoin();
+        }
+        catch (InterruptedException e) {
+            run.stopped = true;
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+            run.stopped = true;
+            System.out.println(e);
+        }
+    }
+
+    /**
+     * Runs one task per value of the root's branch cell on a plain executor (a fixed or virtual thread pool),
+     * which cannot run fork/join tasks, and waits for them or for the time limit.
+     */
+    private void runRootBranches(ExecutorService executor, SearchRun run, SudokuGraph rootGraph, int maxDepth) {
+        CellSelector selector = run.cellOrder.newSelector();
+        selector.prepare(rootGraph);
+        int cellId = selector.selectCell(rootGraph);
+        int[] values = new int[rootGraph.getSize()];
+        int valueCount = run.valueOrder.order(rootGraph, cellId, rootGraph.getCandidates(cellId), values, 0);
         List<Future<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < valueCount; i++) {
+            rootGraph.setCell(cellId, values[i]);
+            int[][] branch = rootGraph.copyGrid();
+            futures.add(executor.submit(() -> {
+                SudokuGraph branchGraph = new SudokuGraph(branch);
+                Worker worker = new Worker(run, branchGraph);
+                try {
+                    return dls(run, branchGraph, maxDepth - 1, new AtomicBoolean(), worker);
+                }
+                finally {
+                    run.metrics.flush(worker.tally);
+                }
+            }));
+        }
+        rootGraph.setCell(cellId, 0);
 
-        // We are using a label so that we can jump out of all of these nested loops
-        // We want to do this, as we need to exit from here as soon as we find an empty cell and start running our threads
-        outerLoop:
-        for (int currRow = 0; currRow < initialGrid.length; currRow ++) {
-            for (int currCol = 0; currCol < initialGrid[currRow].length; currCol ++) {
-                // If we have found an empty cell, we can start running the multiple threads
-                if (initialGrid[currRow][currCol] == 0) {
-                    // Get a list of the possible values we can place in the empty cell
-                    List<Integer> validValues = initialGraph.validValueList (currRow, currCol);
-                    // For these valid values, create a new branch that will run threads that test that specific "path"
-                    for (int validVal : validValues) {
-                        int[][] branch = initialGraph.copyGrid();
-                        branch [currRow][currCol] = validVal;
-
-                        // CHATGPT helped with the specific threading syntax here
-                        // We are running the dls seach for the branches we created above on different threads, with the
-                        // goal of finding solutions quickly
-                        Callable<Boolean> task = () -> dls(branch, maxDepth - 1);
-                        futures.add(sudokuExecutor.submit(task));
-                    }
-                    break outerLoop;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            for (Future<Boolean> future : futures) {
+                if (timeoutMillis > 0) {
+                    future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } else {
+                    future.get();
                 }
             }
         }
+        catch (TimeoutException e) {
+            timedOut = true;
+            run.stopped = true;
+        }
+        catch (InterruptedException e) {
+            run.stopped = true;
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+            run.stopped = true;
+            System.out.println(e);
+        }
+    }
 
-        // Finish executing the, then stop running the thread
-        sudokuExecutor.shutdown();
+    /**
+     * State shared by every worker of one solve. Tasks hold on to their own run, so a task that is
+     * still unwinding on a shared pool can never add to or stop a later solve.
+     */
+    private static class SearchRun {
+        private final int maxSolutions; // 0 keeps the first solution of each root branch
+        private final int depthLimit; // maxDepth of the root, so depth = depthLimit - maxDepth
+        private final SearchMetrics metrics; // Every task flushes its tally here when it ends
+        private final CellOrder cellOrder;
+        private final ValueOrder valueOrder;
+        private final boolean backjumping;
+        private final LongAdder backjumps = new LongAdder();
+        private final LongAdder nogoodHits = new LongAdder();
+        private volatile boolean stopped; // Polled by every worker at every node
 
-        // hasBeenFound will represent if we have found a solution
-        boolean hasBeenFound = false;
+        SearchRun(int maxSolutions, int depthLimit, SearchMetrics metrics, CellOrder cellOrder, ValueOrder valueOrder,
+                  boolean backjumping) {
+            this.maxSolutions = maxSolutions;
+            this.depthLimit = depthLimit;
+            this.metrics = metrics;
+            this.cellOrder = cellOrder;
+            this.valueOrder = valueOrder;
+            this.backjumping = backjumping;
+        }
+    }
 
-        // See if any solution has been found
-        for (Future<Boolean> future : futures) {
+    /**
+     * What one task keeps to itself while it searches its board: its metrics tally, its own cell
+     * selector (dom/wdeg weights are learned per task), and room for the value order of every depth.
+     */
+    private static class Worker {
+        private final SearchMetrics.Tally tally;
+        private final CellSelector selector;
+        private final int[] values; // size slots per depth, indexed by the cells filled since the task started
+        private final int startEmptyCells;
+
+        Worker(SearchRun run, SudokuGraph sudokuGraph) {
+            this.tally = run.metrics.newTally();
+            this.selector = run.cellOrder.newSelector();
+            this.selector.prepare(sudokuGraph);
+            this.startEmptyCells = sudokuGraph.getEmptyCellCount();
+            this.values = new int[(startEmptyCells + 1) * sudokuGraph.getSize()];
+        }
+
+        // Where this depth's values go: every depth of a path has fewer empty cells than the one above
+        int valueOffset(SudokuGraph sudokuGraph) {
+            return (startEmptyCells - sudokuGraph.getEmptyCellCount()) * sudokuGraph.getSize();
+        }
+    }
+
+    /**
+     * A subtree of the search. Each task builds its own board from its grid, so workers never share
+     * mutable state and can assign and undo cells freely.
+     */
+    private class SearchTask extends RecursiveTask<Boolean> {
+        private static final long serialVersionUID = 1L;
+
+        private final SearchRun run;
+        private final int[][] grid;
+        private final int maxDepth;
+        private final AtomicBoolean branchSolved; // Shared by every task under one root branch, null at the root
+
+        SearchTask(SearchRun run, int[][] grid, int maxDepth, AtomicBoolean branchSolved) {
+            this.run = run;
+            this.grid = grid;
+            this.maxDepth = maxDepth;
+            this.branchSolved = branchSolved;
+        }
+
+        @Override
+        protected Boolean compute() {
+            SudokuGraph sudokuGraph = new SudokuGraph(grid);
+            Worker worker = new Worker(run, sudokuGraph);
             try {
-                if (future.get()) {
-                    hasBeenFound = true;
+                return search(run, sudokuGraph, maxDepth, branchSolved, worker);
+            }
+            finally {
+                run.metrics.flush(worker.tally);
+            }
+        }
+    }
+
+    /**
+     * Searches a subtree, forking each child off as its own task while the remaining work is large
+     * and the pool is hungry for tasks. Smaller subtrees are searched sequentially with dls.
+     * The root is always split, one branch per value of its branch cell.
+     * @return true if the search of this subtree should stop
+     */
+    private boolean search(SearchRun run, SudokuGraph sudokuGraph, int maxDepth, AtomicBoolean branchSolved,
+                           Worker worker) {
+        boolean isRoot = branchSolved == null;
+        SearchMetrics.Tally tally = worker.tally;
+
+        // Few empty cells left, or plenty of queued work already: finish this branch here
+        if (!isRoot && (sudokuGraph.getEmptyCellCount() < splitThreshold
+                || ForkJoinTask.getSurplusQueuedTaskCount() >= MAX_SURPLUS_TASKS)) {
+            return dls(run, sudokuGraph, maxDepth, branchSolved, worker);
+        }
+
+        if (isRoot ? run.stopped : shouldStop(run, branchSolved)) {
+            return true;
+        }
+        if (maxDepth == 0) {
+            tally.backtracks++;
+            return false;
+        }
+        // The root board was already propagated and counted by solve
+        boolean consistent = isRoot || sudokuGraph.propagate();
+        if (!isRoot) {
+            tally.nodesExpanded++;
+            tally.reachedDepth(run.depthLimit - maxDepth);
+            tally.propagationFills += sudokuGraph.getTrailSize();
+        }
+        if (!consistent) {
+            tally.backtracks++;
+            worker.selector.onContradiction(sudokuGraph);
+            return false;
+        }
+        if (sudokuGraph.isPuzzleSolved()) {
+            return recordSolution(run, sudokuGraph, isRoot ? new AtomicBoolean() : branchSolved);
+        }
+
+        // Fork one task per value of the branch cell, each with its own copy of the board
+        int cellId = worker.selector.selectCell(sudokuGraph);
+        int offset = worker.valueOffset(sudokuGraph);
+        int valueCount = run.valueOrder.order(sudokuGraph, cellId, sudokuGraph.getCandidates(cellId),
+                worker.values, offset);
+        List<SearchTask> children = new ArrayList<>();
+        for (int i = 0; i < valueCount; i++) {
+            sudokuGraph.setCell(cellId, worker.values[offset + i]);
+            AtomicBoolean childSolved = isRoot ? new AtomicBoolean() : branchSolved;
+            children.add(new SearchTask(run, sudokuGraph.copyGrid(), maxDepth - 1, childSolved));
+        }
+
+        // The children may run on this thread while it waits, and count their own work,
+        // so that time is left out of this task's tally
+        run.metrics.flush(tally);
+        ForkJoinTask.invokeAll(children);
+        run.metrics.restartClock(tally);
+        return run.stopped;
+    }
+
+    /**
+     * Checks whether a worker should give up on its branch: the whole search was cancelled, or
+     * (when keeping one solution per root branch) another task already solved this root branch.
+     */
+    private boolean shouldStop(SearchRun run, AtomicBoolean branchSolved) {
+        return run.stopped || (run.maxSolutions == 0 && branchSolved.get());
+    }
+
+    /**
+     * Keeps a solved board, unless the search was already stopped or (when keeping one
+     * solution per root branch) this root branch already has its solution.
+     * @return true if the branch that found it should stop searching
+     */
+    private boolean recordSolution(SearchRun run, SudokuGraph sudokuGraph, AtomicBoolean branchSolved) {
+        synchronized (solutions) {
+            if (run.stopped) {
+                return true;
+            }
+            if (run.maxSolutions == 0) {
+                if (branchSolved.compareAndSet(false, true)) {
+                    solutions.add(sudokuGraph.copyGrid());
                 }
+                return true;
             }
-            catch (InterruptedException | ExecutionException e) {
-                System.out.println(e);
+            solutions.add(sudokuGraph.copyGrid());
+            // Enough solutions: cancel every other worker
+            if (solutions.size() >= run.maxSolutions) {
+                run.stopped = true;
             }
+            return run.stopped;
         }
+    }
 
-        // Stop the running of all threads and tasks, showing that we're finished
-        sudokuExecutor.shutdownNow();
-        System.out.println("Number of DLS solutions Found: " + solutions.size());
-        // Return true if a solution has been found
-        return hasBeenFound;
+    /**
+     * Sets a time limit for each solve (0 for none). When it runs out the workers are stopped and
+     * the solutions found so far are returned.
+     */
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Sets a cache that single-solution solves (maxSolutions of 1) check before searching and
+     * fill afterwards. The depth limit is not applied to cached solutions.
+     */
+    public void setResultCache(SolvedBoardCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * Sets how the search picks the cell to branch on (FIRST_EMPTY by default).
+     */
+    public void setCellOrder(CellOrder cellOrder) {
+        this.cellOrder = cellOrder;
+    }
+
+    /**
+     * Sets the order the values of a branch cell are tried in (ASCENDING by default).
+     */
+    public void setValueOrder(ValueOrder valueOrder) {
+        this.valueOrder = valueOrder;
+    }
+
+    /**
+     * Sets a listener that is handed the metrics of every solve when it ends.
+     */
+    public void setMetricsListener(Consumer<SearchMetrics> metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * Gets the metrics of the last solve, with a breakdown for every worker thread that took part.
+     */
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Checks whether the last solve stopped because its time limit ran out.
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Sets how many empty cells a branch needs before it is split into parallel tasks.
+     * Lower values split deeper (more, smaller tasks); higher values split less.
+     */
+    public void setSplitThreshold(int splitThreshold) {
+        this.splitThreshold = splitThreshold;
+    }
+
+    /**
+     * Sets the number of worker threads used by the next solve when the solver starts its own pool.
+     * A shared pool keeps its own size.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Turns on conflict-directed backjumping with a nogood cache for the part of each branch that is
+     * searched on one thread (off by default). Nogoods are kept per task, since they only hold under
+     * the decisions that led to the task's board.
+     */
+    public void setBackjumping(boolean backjumping) {
+        this.backjumping = backjumping;
+    }
+
+    /**
+     * Gets the number of times the last solve jumped back past at least one depth, over every task.
+     */
+    public long getBackjumps() {
+        return backjumps;
+    }
+
+    /**
+     * Gets the number of branches the last solve cut off with a cached nogood, over every task.
+     */
+    public long getNogoodHits() {
+        return nogoodHits;
     }
     
     /**
      * Recursive helper for DLS.
+     * @return true if the search of this branch should stop (it was solved or cancelled)
      */
-    private boolean dls(int[][] currentGrid, int maxDepth) {
+    private boolean dls(SearchRun run, SudokuGraph sudokuGraph, int maxDepth, AtomicBoolean branchSolved,
+                        Worker worker) {
+        SearchMetrics.Tally tally = worker.tally;
+        if (run.backjumping) {
+            return backjump(run, sudokuGraph, maxDepth, branchSolved, worker);
+        }
         
+        // Stop right away if the search was cancelled or another task already solved this branch
+        if (shouldStop(run, branchSolved)) {
+            return true;
+        }
+
         // If we have traversed as far as we can, there is no solution
         if (maxDepth == 0) {
+            tally.backtracks++;
             return false;
         }
+        tally.nodesExpanded++;
+        tally.reachedDepth(run.depthLimit - maxDepth);
         
-        // Create a new Graph based on the current state of the grid
-        SudokuGraph sudokuGraph = new SudokuGraph(currentGrid);
+        // Fill in every forced value. If that runs into a contradiction, this branch is a dead end
+        int mark = sudokuGraph.getTrailSize();
+        boolean consistent = sudokuGraph.propagate();
+        tally.propagationFills += sudokuGraph.getTrailSize() - mark;
+        if (!consistent) {
+            tally.backtracks++;
+            worker.selector.onContradiction(sudokuGraph);
+            sudokuGraph.undoTo(mark);
+            return false;
+        }
         
+        // If solved, hand a copy of the current Grid to recordSolution, which decides if the search goes on
         if (sudokuGraph.isPuzzleSolved()) {
-            solutions.add(currentGrid);
-            return true;
+            if (recordSolution(run, sudokuGraph, branchSolved)) {
+                return true;
+            }
+            // The search goes on, so the siblings must not see the cells propagation filled here
+            sudokuGraph.undoTo(mark);
+            return false;
         }
 
-        // Do a DLS
-        for (int currRow = 0; currRow < currentGrid.length; currRow ++) {
-            for (int currCol = 0; currCol < currentGrid[currRow].length; currCol ++) {
-                // If the value in the current grid is a zero, that means we have to find a value to input
-                if (currentGrid [currRow][currCol] == 0) {
-                    // Create a list of all the values that we can put in the slot
-                    List <Integer> values = sudokuGraph.validValueList(currRow, currCol);
-                    // Put each possible value in the grid
-                    for (int possibleValue : values) {
-                        currentGrid [currRow][currCol] = possibleValue;
-                        
-                        // Run the DLS with the cell that we input, testing if it's a valid solution
-                        if (dls(currentGrid, maxDepth - 1)) {
-                            // If the DLS is successful, return true
-                            return true;
-                        }
-                        // If the search was not successful, set the value ack to zero, and move on
-                        currentGrid[currRow][currCol] = 0;
-                    }
-                    return false;
-                }
+        // Do a DLS on the cell the selector picks (the first empty cell by default)
+        int cellId = worker.selector.selectCell(sudokuGraph);
+
+        // Put each possible value in the grid, in the chosen value order
+        int offset = worker.valueOffset(sudokuGraph);
+        int valueCount = run.valueOrder.order(sudokuGraph, cellId, sudokuGraph.getCandidates(cellId),
+                worker.values, offset);
+        for (int i = 0; i < valueCount; i++) {
+            sudokuGraph.setCell(cellId, worker.values[offset + i]);
+            
+            // Run the DLS with the cell that we input, testing if it's a valid solution
+            if (dls(run, sudokuGraph, maxDepth - 1, branchSolved, worker)) {
+                // If the branch is finished (solved or cancelled), stop here too
+                return true;
             }
+            // If the search was not successful, set the value back to zero, and move on
+            sudokuGraph.setCell(cellId, 0);
         }
+        // Clear the cells that propagation filled at this depth
+        sudokuGraph.undoTo(mark);
+        tally.backtracks++;
         return false;
     }
     
+    /**
+     * The same search as dls, with conflict-directed backjumping and a nogood cache (see BackjumpingSearch).
+     * @return true if the search of this branch should stop (it was solved or cancelled)
+     */
+    private boolean backjump(SearchRun run, SudokuGraph sudokuGraph, int maxDepth, AtomicBoolean branchSolved,
+                             Worker worker) {
+        BackjumpingSearch backjumper = BACKJUMPERS.get();
+        long backjumpsBefore = backjumper.getBackjumps();
+        long hitsBefore = backjumper.getNogoodHits();
+        try {
+            return backjumper.search(sudokuGraph, maxDepth, worker.selector, run.valueOrder, worker.tally,
+                    run.depthLimit - maxDepth, () -> shouldStop(run, branchSolved),
+                    graph -> recordSolution(run, graph, branchSolved));
+        }
+        finally {
+            run.backjumps.add(backjumper.getBackjumps() - backjumpsBefore);
+            run.nogoodHits.add(backjumper.getNogoodHits() - hitsBefore);
+        }
+    }
+
     /**
      * Creates a deep copy of a grid.
      */
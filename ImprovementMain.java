@@ -47,6 +47,7 @@ public class ImprovementMain {
         ImprovementBFS bfsSolver = new ImprovementBFS();
         ImprovementDLS improvedDLSSolver = new ImprovementDLS();
         DLSSolver regDlsSolver = new DLSSolver();
+        DancingLinksSolver dlxSolver = new DancingLinksSolver();
 
         int depthLimit = 256;
 
@@ -68,6 +69,8 @@ public class ImprovementMain {
             System.out.println("Improved BFS found " + bfsSolver.getSolutions().size() + 
                               " solution(s) in " + (bfsEndTime - bfsStartTime) + "ns");
             System.out.println("States explored by BFS: " + bfsSolver.getExploredStates());
+            System.out.println("Peak BFS frontier: " + bfsSolver.getPeakFrontierSize() + " states (" +
+                              bfsSolver.getPeakFrontierBytes() + " bytes)");
             System.out.println("Final empty cells: " + countEmptyCells(bfsSolver.getSolutions().get(0)));
             System.out.println("First solution:");
             printGrid(bfsSolver.getSolutions().get(0));
@@ -75,6 +78,42 @@ public class ImprovementMain {
             System.out.println("Improved BFS could not solve the puzzle");
         }
 
+        // Run Iterative Deepening, which needs no depth limit and keeps one path in memory
+        System.out.println("\nSolving with Iterative Deepening: ");
+        IterativeDeepeningSolver idSolver = new IterativeDeepeningSolver();
+        long idStartTime = System.nanoTime();
+        boolean idSolved = idSolver.solve(new SudokuGraph(grid), 5);
+        long idEndTime = System.nanoTime();
+
+        if (idSolved) {
+            System.out.println("Iterative Deepening found " + idSolver.getSolutions().size() +
+                              " solution(s) in " + (idEndTime - idStartTime) + "ns after " +
+                              idSolver.getIterations() + " passes");
+            System.out.println("States explored: " + idSolver.getExploredStates() +
+                              ", peak memory: " + idSolver.getPeakMemoryBytes() + " bytes");
+        } else {
+            System.out.println("Iterative Deepening could not solve the puzzle");
+        }
+
+        // Run the memory-bounded best-first search with the same budget
+        System.out.println("\nSolving with SMA*: ");
+        SMAStarSolver smaSolver = new SMAStarSolver();
+        long smaStartTime = System.nanoTime();
+        boolean smaSolved = smaSolver.solve(new SudokuGraph(grid), 5);
+        long smaEndTime = System.nanoTime();
+
+        if (smaSolved) {
+            System.out.println("SMA* found " + smaSolver.getSolutions().size() +
+                              " solution(s) in " + (smaEndTime - smaStartTime) + "ns");
+            System.out.println("States explored: " + smaSolver.getExploredStates() +
+                              ", peak memory: " + smaSolver.getPeakMemoryBytes() + " bytes (" +
+                              smaSolver.getPeakNodes() + " boards), forgotten: " + smaSolver.getForgottenNodes());
+        } else if (smaSolver.isMemoryBudgetExceeded()) {
+            System.out.println("SMA* ran out of its memory budget");
+        } else {
+            System.out.println("SMA* could not solve the puzzle");
+        }
+
         // Run the Improved DLS Search
         System.out.println("\nSolving with Improved DLS (This will take some time, maybe up to a minute for 16x16)...");
         SudokuGraph dlSudokuGraph = new SudokuGraph(grid);
@@ -86,12 +125,55 @@ public class ImprovementMain {
         if (dlsSolved) {
             System.out.println("Improved DLS found " + improvedDLSSolver.getSolutions().size() + 
                               " solution(s) in " + (impdlsEndTime - impdlsStartTime) + "ns");
+            System.out.println("Improved DLS metrics: " + improvedDLSSolver.getMetrics().toJsonLine());
             System.out.println("First solution:");
             printGrid(improvedDLSSolver.getSolutions().get(0));
         } else {
             System.out.println("Improved DLS could not solve the puzzle with depth limit " + depthLimit);
         }
 
+        // Run the Dancing Links Search, finding every solution
+        System.out.println("\nSolving with Dancing Links...");
+        SudokuGraph dlxSudokuGraph = new SudokuGraph(grid);
+
+        long dlxStartTime = System.nanoTime();
+        boolean dlxSolved = dlxSolver.solve(dlxSudokuGraph, 0);
+        long dlxEndTime = System.nanoTime();
+
+        if (dlxSolved) {
+            System.out.println("Dancing Links found " + dlxSolver.getSolutions().size() + 
+                              " solution(s) in " + (dlxEndTime - dlxStartTime) + "ns");
+            System.out.println("First solution:");
+            printGrid(dlxSolver.getSolutions().get(0));
+        } else {
+            System.out.println("Dancing Links could not solve the puzzle");
+        }
+
+        // Run the SAT solver, stopping at the first solution
+        System.out.println("\nSolving with SAT...");
+        SatSolver satSolver = new SatSolver();
+        long satStartTime = System.nanoTime();
+        boolean satSolved = satSolver.solve(new SudokuGraph(grid), depthLimit);
+        long satEndTime = System.nanoTime();
+
+        if (satSolved) {
+            System.out.println("SAT found " + satSolver.getSolutions().size() +
+                              " solution(s) in " + (satEndTime - satStartTime) + "ns (" +
+                              satSolver.getVariableCount() + " variables, " + satSolver.getClauseCount() +
+                              " clauses, " + satSolver.getConflicts() + " conflicts)");
+        } else {
+            System.out.println("SAT could not solve the puzzle");
+        }
+
+        // Count the solutions without keeping any of them
+        System.out.println("\nCounting solutions...");
+        SolutionCounter counter = new SolutionCounter();
+        long countStartTime = System.nanoTime();
+        long solutionCount = counter.countSolutions(new SudokuGraph(grid), 0);
+        long countEndTime = System.nanoTime();
+        System.out.println("Counted " + solutionCount + " solution(s) in " + (countEndTime - countStartTime) + "ns" +
+                          (solutionCount == 1 ? " (unique)" : ""));
+
         System.out.println("\nSolving with Regular DLS (This may take around a minute for large Grids)...");
         SudokuGraph regDlsGraph = new SudokuGraph(grid);
 
@@ -111,7 +193,7 @@ public class ImprovementMain {
 
     // This code improves upon the original by supporting non-standard 9x9 grids. 
     // It works for numbers that are perfect squares (4x4, 9x9, 16x16, etc...)
-    private static int[][] readImprovedSudokuFiles(String fileName, int dimension) {
+    static int[][] readImprovedSudokuFiles(String fileName, int dimension) {
         // Initialize the board as a 2D array
         List <int[]> boardList = new ArrayList<>();
 
@@ -134,8 +216,7 @@ public class ImprovementMain {
                     int [] row = new int[dimension];
 
                     for (int i = 0; i < dimension; i ++) {
-                        char c = Character.toUpperCase(line.charAt(i));
-                        row[i] = charToInt(c);
+                        row[i] = charToInt(line.charAt(i), dimension);
                     }
                     boardList.add(row);
                 }
@@ -158,18 +239,11 @@ public class ImprovementMain {
     }
 
     // Given a character as input, return it's decimal equivalent (A  = 10, for example).
-    // This is very useful when doing grids that require alphabets in them, like the 16x16
-    private static int charToInt (char c) {
-        if (c >= 'A' && c <= 'F') {
-            return 10 + (c - 'A');
-        }
-        if (c == 'G') {
-            return 16;
-        }
-        if (c >- '1' && c <= '9') {
-            return c - '0';
-        }
-        return 0;
+    // This is very useful when doing grids that require alphabets in them, like the 16x16.
+    // The alphabet is PuzzleReader's, so it keeps going past G for 25x25 and 36x36 grids;
+    // anything that is not a value is an empty cell
+    private static int charToInt (char c, int dimension) {
+        return Math.max(0, PuzzleReader.decodeValue(c, dimension));
     }
 
     //Print a great in neat columns
@@ -20,9 +20,10 @@
  *      as standard BFS/DFS would consume too much memory or take too long
  * 
  * Limitations:
- *    - Still requires grid sizes to be perfect squares (4x4, 9x9, 16x16)
+ *    - Still requires grid sizes to be perfect squares (4x4, 9x9, 16x16, 25x25, 36x36), up to 64x64
  *    - Memory usage grows significantly with larger grids
- *    - For extremely large grids (25x25+), additional optimizations would be needed
+ *    - 25x25 and 36x36 grids solve in milliseconds with about 60% of the cells given (see
+ *      ScalingBenchmark), but with much fewer givens the search can still take a very long time
  * 
  * The most constrained cell heuristic is particularly effective because:
  *    - It reduces the branching factor of the search tree
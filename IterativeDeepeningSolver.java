@@ -0,0 +1,295 @@
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Iterative deepening search for Sudoku puzzles: a depth-limited search is run with a limit of
+ * 0, 1, 2, ... branching levels until enough solutions are found or a pass is no longer cut off
+ * by its limit. There is no depth limit to guess, and memory stays at one path of the search,
+ * where BFS keeps a whole level of the tree.
+ *
+ * Each pass finds the solutions at exactly its own depth, in the order a BFS with the same cell
+ * and value orders polls them, so the solutions match ImprovementBFS. That needs every pass to
+ * branch on the same cells, so the cell order never adapts during a solve. Subtrees that a pass
+ * searched to the end, without reaching the limit, are remembered by the Zobrist hash of their
+ * propagated board and skipped by later passes, so only the part of the tree that is still
+ * growing is searched again. That table is the only part of the memory that grows, and it stops
+ * taking entries once it would go over the memory budget.
+ */
+public class IterativeDeepeningSolver {
+    // Enough for a long run on any board size; a search that needs more is not worth waiting for
+    public static final long DEFAULT_MEMORY_BUDGET_BYTES = 64L << 20;
+
+    private final List<int[][]> solutions;
+    private long memoryBudgetBytes = DEFAULT_MEMORY_BUDGET_BYTES;
+    private boolean memoryBudgetExceeded;
+    private long peakMemoryBytes;
+    private int iterations;
+    private long exploredStates;
+    private SearchMetrics metrics;
+    private Consumer<SearchMetrics> metricsListener; // Told about every solve, null for none
+    private CellOrder cellOrder = CellOrder.MOST_CONSTRAINED;
+    private ValueOrder valueOrder = ValueOrder.ASCENDING;
+
+    // Stacks of the current pass, one entry per depth
+    private int[] cellStack; // Cell branched on at each depth
+    private int[] valueStack; // Values of each depth's cell, size slots per depth
+    private int[] nextValue; // Index of the next value to try at each depth
+    private int[] valueCount; // Number of values at each depth
+    private int[] markStack; // Trail length when each depth was entered
+    private long[] hashStack; // Hash of each depth's propagated board
+    private boolean[] cutStack; // Whether the limit cut off anything below each depth
+    private LongHashSet finished; // Hashes of boards whose whole subtree has been searched
+    private int maxFinished; // Most entries the finished table may hold within the budget
+
+    public IterativeDeepeningSolver() {
+        this.solutions = new ArrayList<>();
+    }
+
+    /**
+     * Solves the puzzle with iterative deepening.
+     * @param maxSolutions Maximum number of solutions to find
+     * @return true if at least one solution was found
+     */
+    public boolean solve(SudokuGraph graph, int maxSolutions) {
+        solutions.clear();
+        memoryBudgetExceeded = false;
+        iterations = 0;
+        exploredStates = 0;
+        metrics = new SearchMetrics("IterativeDeepeningSolver");
+        SearchMetrics.Tally tally = metrics.newTally();
+
+        SudokuGraph sudokuGraph = new SudokuGraph(graph.copyGrid());
+        int size = sudokuGraph.getSize();
+        int maxStack = sudokuGraph.getEmptyCellCount() + 1;
+        long stackBytes = (long) maxStack * ((size + 5) * Integer.BYTES + Long.BYTES + 1);
+        finished = new LongHashSet();
+        peakMemoryBytes = stackBytes + finished.getBytes();
+        if (peakMemoryBytes > memoryBudgetBytes) {
+            // Not even one path and an empty table fit
+            memoryBudgetExceeded = true;
+            finished = null;
+            finishMetrics(tally);
+            return false;
+        }
+
+        cellStack = new int[maxStack];
+        valueStack = new int[maxStack * size];
+        nextValue = new int[maxStack];
+        valueCount = new int[maxStack];
+        markStack = new int[maxStack];
+        hashStack = new long[maxStack];
+        cutStack = new boolean[maxStack];
+        // The table doubles once it is more than half full, so the largest table that fits in
+        // what is left of the budget holds half as many entries as it has slots
+        long tableSlots = Long.highestOneBit((memoryBudgetBytes - stackBytes) / Long.BYTES);
+        maxFinished = (int) Math.min(Integer.MAX_VALUE / 2, tableSlots / 2);
+
+        CellSelector selector = cellOrder.newSelector();
+        selector.prepare(sudokuGraph);
+
+        // Every pass but the last is cut off somewhere, or it would have searched the whole tree
+        boolean cutOff = true;
+        for (int limit = 0; limit < maxStack && cutOff && solutions.size() < maxSolutions; limit++) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            iterations++;
+            cutOff = searchToLimit(sudokuGraph, selector, limit, maxSolutions, tally);
+        }
+        // The table only grows, so memory use is largest at the end
+        peakMemoryBytes = stackBytes + finished.getBytes();
+
+        finishMetrics(tally);
+        return !solutions.isEmpty();
+    }
+
+    /**
+     * One depth-limited pass, kept on the stacks the same way DLSSolver keeps its search.
+     * Only solutions found at exactly the limit are new; shallower ones were found by earlier passes.
+     * @return true if the limit cut off part of the tree, so a deeper pass has more to find
+     */
+    private boolean searchToLimit(SudokuGraph sudokuGraph, CellSelector selector, int limit,
+                                  int maxSolutions, SearchMetrics.Tally tally) {
+        int size = sudokuGraph.getSize();
+        int depth = 0;
+        boolean entering = true; // false when we come back up to a depth to try its next value
+        while (depth >= 0) {
+            if (entering) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+
+                // Fill in every forced value. If that runs into a contradiction, this branch is a dead end
+                exploredStates++;
+                tally.nodesExpanded++;
+                tally.reachedDepth(depth);
+                markStack[depth] = sudokuGraph.getTrailSize();
+                boolean consistent = sudokuGraph.propagate();
+                tally.propagationFills += sudokuGraph.getTrailSize() - markStack[depth];
+                long hash = sudokuGraph.getHash();
+                boolean leaf = true;
+                boolean cut = false;
+                if (!consistent) {
+                    // The selector is not told: an adaptive order (DOM_WDEG) would then branch on
+                    // other cells in the next pass, and its solutions would sit at other depths
+                    tally.backtracks++;
+                } else if (sudokuGraph.isPuzzleSolved()) {
+                    if (depth == limit) {
+                        solutions.add(sudokuGraph.copyGrid());
+                    }
+                } else if (finished.contains(hash)) {
+                    // Searched to the end by an earlier pass
+                    tally.dedupHits++;
+                } else if (depth == limit) {
+                    // There is more below this board, but not in this pass
+                    cut = true;
+                } else {
+                    leaf = false;
+                }
+
+                if (leaf) {
+                    sudokuGraph.undoTo(markStack[depth]);
+                    if (solutions.size() >= maxSolutions) {
+                        return true;
+                    }
+                    if (depth == 0) {
+                        return cut;
+                    }
+                    depth--;
+                    cutStack[depth] |= cut;
+                    entering = false;
+                    continue;
+                }
+
+                hashStack[depth] = hash;
+                cutStack[depth] = false;
+                int cellId = selector.selectCell(sudokuGraph);
+                cellStack[depth] = cellId;
+                nextValue[depth] = 0;
+                valueCount[depth] = valueOrder.order(sudokuGraph, cellId, sudokuGraph.getCandidates(cellId),
+                        valueStack, depth * size);
+            }
+
+            if (nextValue[depth] == valueCount[depth]) {
+                // Every value has been tried. A subtree the limit never reached is searched for good
+                tally.backtracks++;
+                sudokuGraph.setCell(cellStack[depth], 0);
+                sudokuGraph.undoTo(markStack[depth]);
+                boolean cut = cutStack[depth];
+                if (!cut) {
+                    remember(hashStack[depth]);
+                }
+                if (depth == 0) {
+                    return cut;
+                }
+                depth--;
+                cutStack[depth] |= cut;
+                entering = false;
+                continue;
+            }
+
+            // Put the next possible value in the grid (this replaces the value that just failed)
+            sudokuGraph.setCell(cellStack[depth], valueStack[depth * size + nextValue[depth]++]);
+            depth++;
+            entering = true;
+        }
+        return false; // Not reached: the root's return ends the pass
+    }
+
+    // Add a finished subtree to the table, unless the table is already as big as the budget allows
+    private void remember(long hash) {
+        if (finished.size() < maxFinished) {
+            finished.add(hash);
+            return;
+        }
+        memoryBudgetExceeded = true;
+    }
+
+    private void finishMetrics(SearchMetrics.Tally tally) {
+        metrics.flush(tally);
+        metrics.finish(solutions.size());
+        if (metricsListener != null) {
+            metricsListener.accept(metrics);
+        }
+        // The stacks are only needed during a solve
+        cellStack = null;
+        valueStack = null;
+        nextValue = null;
+        valueCount = null;
+        markStack = null;
+        hashStack = null;
+        cutStack = null;
+        finished = null;
+    }
+
+    /**
+     * Sets how much memory a solve may use for its stacks and its table of finished subtrees
+     * (64 MB by default). When the table is full, later passes search those subtrees again.
+     */
+    public void setMemoryBudgetBytes(long memoryBudgetBytes) {
+        this.memoryBudgetBytes = memoryBudgetBytes;
+    }
+
+    /**
+     * Checks whether the last solve ran into the memory budget: either the stacks did not fit,
+     * and nothing was searched, or the finished-subtree table filled up.
+     */
+    public boolean isMemoryBudgetExceeded() {
+        return memoryBudgetExceeded;
+    }
+
+    /**
+     * Gets the memory the last solve used at its peak, in bytes (stacks and table, estimated).
+     */
+    public long getPeakMemoryBytes() {
+        return peakMemoryBytes;
+    }
+
+    /**
+     * Sets how the search picks the cell to branch on (MOST_CONSTRAINED by default, like ImprovementBFS).
+     * Every pass has to branch on the same cells, so DOM_WDEG keeps its starting weights for the
+     * whole solve and does not learn from contradictions.
+     */
+    public void setCellOrder(CellOrder cellOrder) {
+        this.cellOrder = cellOrder;
+    }
+
+    /**
+     * Sets the order the values of a branch cell are tried in (ASCENDING by default).
+     */
+    public void setValueOrder(ValueOrder valueOrder) {
+        this.valueOrder = valueOrder;
+    }
+
+    /**
+     * Sets a listener that is handed the metrics of every solve when it ends.
+     */
+    public void setMetricsListener(Consumer<SearchMetrics> metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * Gets the metrics of the last solve.
+     */
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+
+    public List<int[][]> getSolutions() {
+        return solutions;
+    }
+
+    /**
+     * Gets the number of depth-limited passes the last solve ran.
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Gets the number of states the last solve explored, over every pass.
+     */
+    public long getExploredStates() {
+        return exploredStates;
+    }
+}
@@ -0,0 +1,171 @@
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash set of primitive long keys, used to remember board states by their
+ * Zobrist hash without allocating an object per state.
+ *
+ * When it is created with a PackedBoard, the set also keeps a packed copy of every state it
+ * accepts. Two states are then only treated as the same when both the hash and the packed
+ * cells match, so a 64-bit hash collision can never drop a state.
+ */
+public class LongHashSet {
+    private static final int INITIAL_CAPACITY = 64;
+    // Key 0 marks an empty slot, so a real key of 0 is stored as this instead
+    private static final long ZERO_KEY = 0x9E3779B97F4A7C15L;
+
+    private final PackedBoard codec; // null when only hashes are compared
+    private final int wordsPerBoard;
+    private long[] keys;
+    private int[] stateIndexes; // Slot -> index of its packed state (confirming sets only)
+    private long[] states; // Packed states in insertion order (confirming sets only)
+    private int size;
+
+    /**
+     * Creates a set that treats equal hashes as equal states.
+     */
+    public LongHashSet() {
+        this(null);
+    }
+
+    /**
+     * Creates a set that confirms hash matches against the packed state.
+     */
+    public LongHashSet(PackedBoard codec) {
+        this.codec = codec;
+        this.wordsPerBoard = codec == null ? 0 : codec.getWordsPerBoard();
+        keys = new long[INITIAL_CAPACITY];
+        if (codec != null) {
+            stateIndexes = new int[INITIAL_CAPACITY];
+            states = new long[INITIAL_CAPACITY * wordsPerBoard];
+        }
+    }
+
+    /**
+     * Adds a key.
+     * @return true if the key was not already in the set
+     */
+    public boolean add(long key) {
+        if (codec != null) {
+            throw new IllegalStateException("This set confirms states; use add(key, packed, offset)");
+        }
+        return add(key, null, 0);
+    }
+
+    /**
+     * Adds a state by its hash and packed cells. The packed cells are ignored (and may be
+     * null) if the set was created without a PackedBoard.
+     * @return true if the state was not already in the set
+     */
+    public boolean add(long key, long[] packed, int offset) {
+        if (key == 0) {
+            key = ZERO_KEY;
+        }
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key && (codec == null
+                    || codec.equals(states, stateIndexes[slot] * wordsPerBoard, packed, offset))) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        if (codec != null) {
+            if ((size + 1) * wordsPerBoard > states.length) {
+                states = Arrays.copyOf(states, states.length * 2);
+            }
+            System.arraycopy(packed, offset, states, size * wordsPerBoard, wordsPerBoard);
+            stateIndexes[slot] = size;
+        }
+        size++;
+
+        // Keep the table at most half full so probe chains stay short
+        if (size * 2 > keys.length) {
+            rehash();
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a key is in the set (hash only, without confirming the state).
+     */
+    public boolean contains(long key) {
+        if (key == 0) {
+            key = ZERO_KEY;
+        }
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Double the table and reinsert every key. The packed states do not move.
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldIndexes = stateIndexes;
+        keys = new long[oldKeys.length * 2];
+        if (codec != null) {
+            stateIndexes = new int[keys.length];
+        }
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = mix(oldKeys[i]) & mask;
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                if (codec != null) {
+                    stateIndexes[slot] = oldIndexes[i];
+                }
+            }
+        }
+    }
+
+    // Zobrist keys are already random, so folding the high bits in is enough
+    private static int mix(long key) {
+        return (int) (key ^ (key >>> 32));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gets the bytes held by the table: its key slots, and the packed states of a confirming set.
+     */
+    public long getBytes() {
+        long bytes = (long) keys.length * Long.BYTES;
+        if (codec != null) {
+            bytes += (long) stateIndexes.length * Integer.BYTES + (long) states.length * Long.BYTES;
+        }
+        return bytes;
+    }
+
+    /**
+     * Copies the keys into a new array, in no particular order.
+     */
+    long[] toArray() {
+        long[] out = new long[size];
+        int next = 0;
+        for (long key : keys) {
+            if (key != 0) {
+                out[next++] = key == ZERO_KEY ? 0 : key;
+            }
+        }
+        return out;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        size = 0;
+    }
+}
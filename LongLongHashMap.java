@@ -0,0 +1,101 @@
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from primitive long keys to long values, used to remember a number
+ * for each board state by its Zobrist hash without allocating an object per entry.
+ * Like LongHashSet, it trusts the hash: two states with the same hash are treated as the same.
+ */
+public class LongLongHashMap {
+    private static final int INITIAL_CAPACITY = 64;
+    // Key 0 marks an empty slot, so a real key of 0 is stored as this instead
+    private static final long ZERO_KEY = 0x9E3779B97F4A7C15L;
+
+    private long[] keys;
+    private long[] values;
+    private int size;
+
+    public LongLongHashMap() {
+        keys = new long[INITIAL_CAPACITY];
+        values = new long[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Gets the value for a key.
+     * @return the value, or missingValue if the key is not in the map
+     */
+    public long get(long key, long missingValue) {
+        if (key == 0) {
+            key = ZERO_KEY;
+        }
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+        }
+        return missingValue;
+    }
+
+    /**
+     * Sets the value for a key, replacing any value it had.
+     */
+    public void put(long key, long value) {
+        if (key == 0) {
+            key = ZERO_KEY;
+        }
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+
+        // Keep the table at most half full so probe chains stay short
+        if (size * 2 > keys.length) {
+            rehash();
+        }
+    }
+
+    // Double the table and reinsert every entry
+    private void rehash() {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new long[keys.length];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = mix(oldKeys[i]) & mask;
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    // Zobrist keys are already random, so folding the high bits in is enough
+    private static int mix(long key) {
+        return (int) (key ^ (key >>> 32));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        size = 0;
+    }
+}
@@ -0,0 +1,260 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads puzzles written one per line, the usual format for large puzzle collections, from a
+ * memory-mapped file. Each line holds every cell of a board row-major: 16 characters for 4x4,
+ * 81 for 9x9, 256 for 16x16, 625 for 25x25, 1296 for 36x36. The cell characters are the same as
+ * PuzzleReader's (0 or . for empty, 1-9, then letters, with lowercase ones going on past Z on
+ * 36x36 and larger boards), and a line may end in \n or \r\n. Lines of any other
+ * length, or with a character that is not a cell of that size, are skipped and counted.
+ *
+ * The file is mapped a window at a time, and advance() decodes the bytes of a line straight
+ * into a PackedBoard buffer, so reading creates no String or other object per puzzle.
+ * The Iterator methods unpack each board into a new int[][] for code that wants grids, such as
+ * BatchSolver. Use either advance() or the Iterator methods on one reader, not both.
+ */
+public class MappedPuzzleReader implements Iterator<int[][]>, AutoCloseable {
+    private static final long WINDOW_BYTES = 64L << 20; // Map this much of the file at a time
+    private static final int MAX_SIZE = SudokuTopology.MAX_SIZE;
+    private static final int NOT_A_CELL = Integer.MAX_VALUE; // Larger than any size, so one compare rejects it
+    // Value of every byte, looked up instead of branching per character: one table for boards
+    // that read letters in either case, one for the larger boards that give lowercase its own values
+    private static final int[] BYTE_VALUES = new int[256];
+    private static final int[] WIDE_BYTE_VALUES = new int[256];
+
+    static {
+        for (int b = 0; b < BYTE_VALUES.length; b++) {
+            int value = PuzzleReader.decodeValue((char) b);
+            BYTE_VALUES[b] = value < 0 ? NOT_A_CELL : value;
+            value = PuzzleReader.decodeValue((char) b, MAX_SIZE);
+            WIDE_BYTE_VALUES[b] = value < 0 ? NOT_A_CELL : value;
+        }
+    }
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private MappedByteBuffer window;
+    private long windowStart; // File position of the first byte of the window
+    private long position; // File position of the next line
+    private boolean skipping; // In the middle of a line too long to be a board
+    private int lastLineLength; // Bytes in the last board line, newline not included
+
+    private final PackedBoard[] codecs = new PackedBoard[MAX_SIZE + 1]; // Built the first time each size is seen
+    private PackedBoard codec; // Encoding of the current board
+    private long[] packed; // The current board
+    private boolean ready; // hasNext read a board that next has not returned yet
+    private long boardCount;
+    private long skippedLines;
+
+    public MappedPuzzleReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        this.packed = new long[1];
+    }
+
+    /**
+     * Moves to the next board in the file and decodes it into getPacked().
+     * @return false at the end of the file
+     */
+    public boolean advance() throws IOException {
+        if (ready) {
+            ready = false;
+            return true;
+        }
+        return readBoard();
+    }
+
+    private boolean readBoard() throws IOException {
+        while (position < fileSize) {
+            if (window == null || position < windowStart || position >= windowStart + window.limit()) {
+                map(position);
+            }
+            int start = (int) (position - windowStart);
+            // Lines in a puzzle file are nearly always the same length, so try the last board's
+            // length before scanning for the newline
+            int guess = start + lastLineLength;
+            if (lastLineLength > 0 && guess < window.limit() && window.get(guess) == '\n'
+                    && decodeLine(start, guess)) {
+                position = windowStart + guess + 1;
+                boardCount++;
+                return true;
+            }
+
+            int end = findNewline(start);
+            if (end < 0) {
+                if (windowStart + window.limit() >= fileSize) {
+                    // The last line has no newline
+                    end = window.limit();
+                } else if (start > 0) {
+                    // The line runs past the window: map again from its first byte
+                    map(position);
+                    continue;
+                } else {
+                    // A whole window without a newline cannot be a board; skip to the next line
+                    skipping = true;
+                    position = windowStart + window.limit();
+                    continue;
+                }
+            }
+            position = windowStart + end + 1;
+            if (skipping) {
+                skipping = false;
+                skippedLines++;
+                continue;
+            }
+
+            if (decodeLine(start, end)) {
+                lastLineLength = end - start;
+                boardCount++;
+                return true;
+            }
+            if (!isBlank(start, end)) {
+                skippedLines++;
+            }
+        }
+        return false;
+    }
+
+    // Map the window that starts at a file position
+    private void map(long start) throws IOException {
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_BYTES, fileSize - start));
+    }
+
+    // Position of the next \n in the window at or after start, or -1
+    private int findNewline(int start) {
+        int limit = window.limit();
+        for (int i = start; i < limit; i++) {
+            if (window.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isBlank(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (window.get(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the line between two window positions into the packed buffer, ignoring the \r
+     * and any other whitespace at its end.
+     * A newline is not a cell character, so a guessed line that really holds two lines fails here.
+     * @return false if the line is not a board
+     */
+    private boolean decodeLine(int start, int end) {
+        while (end > start && window.get(end - 1) <= ' ') {
+            end--;
+        }
+        int length = end - start;
+        int size = (int) Math.sqrt(length);
+        int boxSize = (int) Math.sqrt(size);
+        if (size * size != length || boxSize * boxSize != size || size < 4 || size > MAX_SIZE) {
+            return false;
+        }
+
+        if (codecs[size] == null) {
+            codecs[size] = PackedBoard.forSize(size);
+        }
+        PackedBoard lineCodec = codecs[size];
+        if (packed.length < lineCodec.getWordsPerBoard()) {
+            packed = new long[lineCodec.getWordsPerBoard()];
+        }
+        int[] byteValues = size > PuzzleReader.CASE_INSENSITIVE_MAX_VALUE ? WIDE_BYTE_VALUES : BYTE_VALUES;
+        // Pack the cells back to back, the same layout PackedBoard.put writes, but a word at a time
+        int bitsPerCell = lineCodec.getBitsPerCell();
+        long word = 0;
+        int bits = 0;
+        int w = 0;
+        for (int i = 0; i < length; i++) {
+            int value = byteValues[window.get(start + i) & 0xFF];
+            if (value > size) {
+                return false;
+            }
+            word |= (long) value << bits;
+            bits += bitsPerCell;
+            if (bits >= 64) {
+                packed[w++] = word;
+                bits -= 64;
+                // The high bits of a cell that straddles two words start the next word
+                word = bits == 0 ? 0 : (long) value >>> (bitsPerCell - bits);
+            }
+        }
+        if (bits > 0) {
+            packed[w] = word;
+        }
+        codec = lineCodec;
+        return true;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!ready) {
+            try {
+                ready = readBoard();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return ready;
+    }
+
+    @Override
+    public int[][] next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ready = false;
+        int[][] grid = new int[codec.getSize()][codec.getSize()];
+        codec.unpack(packed, 0, grid);
+        return grid;
+    }
+
+    /**
+     * Gets the encoding of the current board; its size is the board's size.
+     */
+    public PackedBoard getCodec() {
+        return codec;
+    }
+
+    /**
+     * Gets the current board, packed with getCodec() at offset 0.
+     * The array is reused, so copy the words out to keep the board past the next advance().
+     */
+    public long[] getPacked() {
+        return packed;
+    }
+
+    /**
+     * Gets the number of boards read so far.
+     */
+    public long getBoardCount() {
+        return boardCount;
+    }
+
+    /**
+     * Gets the number of non-blank lines that were skipped because they are not boards.
+     */
+    public long getSkippedLines() {
+        return skippedLines;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
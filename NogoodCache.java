@@ -0,0 +1,85 @@
+/**
+ * Bounded cache of nogoods: sets of cell assignments that have been proven to leave the board
+ * without a solution, whatever else is on it.
+ *
+ * A nogood is stored once under each of its assignments, in a hash table of small buckets, so
+ * after any cell is set the nogoods that mention it can be found and checked against the board.
+ * A full bucket drops its oldest entry, so the cache never holds more than its slot count, and
+ * clear only moves to a new generation instead of wiping the table.
+ */
+public class NogoodCache {
+    // Entries per bucket; a new entry replaces the oldest one in its bucket
+    private static final int WAYS = 4;
+
+    private final int bucketMask;
+    private final int[] keys; // cellId * 65 + value of the assignment a slot is filed under
+    private final int[][] nogoods; // cellId, value pairs, back to back; shared by every slot of a nogood
+    private final int[] generations; // Slots from an older generation are empty
+    private final byte[] nextWay; // Slot of each bucket that the next entry replaces
+    private int generation = 1;
+
+    /**
+     * Creates a cache of about the given number of slots, rounded up to a power of two.
+     */
+    public NogoodCache(int slots) {
+        int buckets = Integer.highestOneBit(Math.max(1, (slots + WAYS - 1) / WAYS - 1)) << 1;
+        bucketMask = buckets - 1;
+        keys = new int[buckets * WAYS];
+        nogoods = new int[buckets * WAYS][];
+        generations = new int[buckets * WAYS];
+        nextWay = new byte[buckets];
+    }
+
+    /**
+     * Adds a nogood, filed under each of its assignments.
+     * @param pairs cellId, value pairs, back to back; the array is kept, not copied
+     */
+    public void add(int[] pairs) {
+        for (int i = 0; i < pairs.length; i += 2) {
+            int key = pairs[i] * 65 + pairs[i + 1];
+            int bucket = bucketOf(key);
+            int slot = bucket * WAYS + nextWay[bucket];
+            nextWay[bucket] = (byte) ((nextWay[bucket] + 1) % WAYS);
+            keys[slot] = key;
+            nogoods[slot] = pairs;
+            generations[slot] = generation;
+        }
+    }
+
+    /**
+     * Finds a nogood that mentions the assignment of value to cellId and whose every assignment
+     * is on the board.
+     * @return the nogood's pairs, or null if there is none
+     */
+    public int[] find(SudokuGraph graph, int cellId, int value) {
+        int key = cellId * 65 + value;
+        int bucket = bucketOf(key);
+        for (int slot = bucket * WAYS; slot < (bucket + 1) * WAYS; slot++) {
+            if (generations[slot] == generation && keys[slot] == key && holds(graph, nogoods[slot])) {
+                return nogoods[slot];
+            }
+        }
+        return null;
+    }
+
+    private static boolean holds(SudokuGraph graph, int[] pairs) {
+        for (int i = 0; i < pairs.length; i += 2) {
+            if (graph.getCell(pairs[i]) != pairs[i + 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Fibonacci hashing spreads neighbouring cells and values over the buckets
+    private int bucketOf(int key) {
+        return (key * 0x9E3779B9 >>> 8) & bucketMask;
+    }
+
+    /**
+     * Empties the cache, for a search that starts from a different board.
+     */
+    public void clear() {
+        generation++;
+    }
+}
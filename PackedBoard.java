@@ -0,0 +1,191 @@
+/**
+ * Compact encoding of Sudoku board states into long words.
+ * Each stored cell takes just enough bits to hold 0..size (4 bits for 9x9, 5 bits for 16x16
+ * and 25x25, 6 bits for 36x36), and cells are packed back to back across word boundaries.
+ *
+ * A PackedBoard can store every cell of the board, or only the cells that were empty in a
+ * starting puzzle. During one search every state shares the same givens, so the second form
+ * only pays for the cells that can actually change.
+ */
+public final class PackedBoard {
+    private final int size;
+    private final int bitsPerCell;
+    private final long cellMask;
+    private final int[] rows; // Row and column of each stored cell, in storage order
+    private final int[] cols;
+    private final int wordsPerBoard;
+
+    private PackedBoard(int size, int[] rows, int[] cols) {
+        this.size = size;
+        this.bitsPerCell = 32 - Integer.numberOfLeadingZeros(size);
+        this.cellMask = (1L << bitsPerCell) - 1;
+        this.rows = rows;
+        this.cols = cols;
+        this.wordsPerBoard = Math.max(1, (rows.length * bitsPerCell + 63) / 64);
+    }
+
+    /**
+     * Creates an encoding that stores every cell of a size x size board.
+     */
+    public static PackedBoard forSize(int size) {
+        int[] rows = new int[size * size];
+        int[] cols = new int[size * size];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = i / size;
+            cols[i] = i % size;
+        }
+        return new PackedBoard(size, rows, cols);
+    }
+
+    /**
+     * Creates an encoding that only stores the cells that are empty in the given grid.
+     * Unpacking only writes those cells, so the destination must already hold the givens.
+     */
+    public static PackedBoard forFreeCells(int[][] grid) {
+        int size = grid.length;
+        int freeCells = 0;
+        for (int[] row : grid) {
+            for (int cell : row) {
+                if (cell == 0) {
+                    freeCells++;
+                }
+            }
+        }
+
+        int[] rows = new int[freeCells];
+        int[] cols = new int[freeCells];
+        int next = 0;
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                if (grid[row][col] == 0) {
+                    rows[next] = row;
+                    cols[next] = col;
+                    next++;
+                }
+            }
+        }
+        return new PackedBoard(size, rows, cols);
+    }
+
+    /**
+     * Writes the stored cells of a grid into dest, starting at offset.
+     */
+    public void pack(int[][] grid, long[] dest, int offset) {
+        clear(dest, offset);
+        for (int i = 0; i < rows.length; i++) {
+            put(dest, offset, i, grid[rows[i]][cols[i]]);
+        }
+    }
+
+    /**
+     * Writes the stored cells of a graph into dest, starting at offset.
+     */
+    public void pack(SudokuGraph graph, long[] dest, int offset) {
+        clear(dest, offset);
+        for (int i = 0; i < rows.length; i++) {
+            put(dest, offset, i, graph.getValue(rows[i], cols[i]));
+        }
+    }
+
+    /**
+     * Zeroes the words of one packed board.
+     */
+    public void clear(long[] dest, int offset) {
+        for (int w = 0; w < wordsPerBoard; w++) {
+            dest[offset + w] = 0;
+        }
+    }
+
+    /**
+     * Ors the value of the i-th stored cell into a cleared packed board.
+     */
+    public void put(long[] dest, int offset, int i, int value) {
+        int bit = i * bitsPerCell;
+        int word = offset + (bit >>> 6);
+        int shift = bit & 63;
+        dest[word] |= (long) value << shift;
+        // The cell straddles two words
+        if (shift + bitsPerCell > 64) {
+            dest[word + 1] |= (long) value >>> (64 - shift);
+        }
+    }
+
+    /**
+     * Gets the value of the i-th stored cell of a packed board.
+     */
+    public int get(long[] src, int offset, int i) {
+        int bit = i * bitsPerCell;
+        int word = offset + (bit >>> 6);
+        int shift = bit & 63;
+        long value = src[word] >>> shift;
+        if (shift + bitsPerCell > 64) {
+            value |= src[word + 1] << (64 - shift);
+        }
+        return (int) (value & cellMask);
+    }
+
+    /**
+     * Reads a packed board back into a grid. Only the stored cells are written.
+     */
+    public void unpack(long[] src, int offset, int[][] grid) {
+        for (int i = 0; i < rows.length; i++) {
+            grid[rows[i]][cols[i]] = get(src, offset, i);
+        }
+    }
+
+    /**
+     * Reads a packed board back into a SudokuGraph, keeping its masks up to date.
+     * Only the stored cells are written.
+     */
+    public void unpack(long[] src, int offset, SudokuGraph graph) {
+        // Clear the cells that change first, so a value moving between two peers
+        // never has both of them set at once and the masks stay exact
+        for (int i = 0; i < rows.length; i++) {
+            int current = graph.getValue(rows[i], cols[i]);
+            if (current != 0 && current != get(src, offset, i)) {
+                graph.setValue(rows[i], cols[i], 0);
+            }
+        }
+        for (int i = 0; i < rows.length; i++) {
+            int value = get(src, offset, i);
+            if (value != 0 && graph.getValue(rows[i], cols[i]) != value) {
+                graph.setValue(rows[i], cols[i], value);
+            }
+        }
+    }
+
+    /**
+     * Checks whether two packed boards hold the same state.
+     */
+    public boolean equals(long[] a, int aOffset, long[] b, int bOffset) {
+        for (int w = 0; w < wordsPerBoard; w++) {
+            if (a[aOffset + w] != b[bOffset + w]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getBitsPerCell() {
+        return bitsPerCell;
+    }
+
+    /**
+     * Gets the number of cells this encoding stores.
+     */
+    public int getStoredCells() {
+        return rows.length;
+    }
+
+    public int getWordsPerBoard() {
+        return wordsPerBoard;
+    }
+
+    public int getBytesPerBoard() {
+        return wordsPerBoard * Long.BYTES;
+    }
+}
@@ -0,0 +1,235 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Races several solver configurations on the same board and keeps the first answer.
+ *
+ * Which engine is fastest changes a lot from board to board, so running a few different ones at
+ * once, each on its own thread, and stopping at the first answer cuts the slow tail of a mixed
+ * workload: a board is only slow when it is slow for every engine. The losers are cancelled by
+ * interrupting their threads, and the solvers check for that at every node.
+ *
+ * The default portfolio is plain DLS, DLS with MRV + degree and least-constraining values,
+ * DLS with random value orders and restarts, BFS with a capped frontier, and Dancing Links.
+ * It works best with a core for every strategy. The threads are kept between solves; close the
+ * portfolio when it is no longer needed.
+ */
+public class PortfolioSolver implements AutoCloseable {
+    /**
+     * What a strategy returns for a board that has no solution.
+     */
+    public static final int[][] NO_SOLUTION = new int[0][];
+
+    // Frontier cap for the BFS strategy, so a board it is wrong for cannot fill the heap
+    private static final int BFS_MAX_FRONTIER = 1 << 16;
+    // Node limit of the first randomized restart; each restart allows half as many again
+    private static final long FIRST_RESTART_NODES = 100;
+
+    /**
+     * One way of solving a board. It runs on its own thread, must check
+     * Thread.currentThread().isInterrupted() often, and should return soon after it is set.
+     */
+    public interface Strategy {
+        /**
+         * Solves a board. The graph belongs to this strategy alone.
+         * @return a solution, NO_SOLUTION if the board has none, or null if the strategy gave up
+         *         (or was interrupted) without an answer
+         */
+        int[][] solve(SudokuGraph graph);
+    }
+
+    private final List<String> names = new ArrayList<>();
+    private final List<Strategy> strategies = new ArrayList<>();
+    private SolverPool pool; // Started by the first solve, one thread per strategy
+    private long timeoutMillis; // 0 for no time limit
+    private int[][] solution;
+    private String winner;
+    private boolean timedOut;
+
+    /**
+     * Creates an empty portfolio; add strategies with addStrategy.
+     */
+    public PortfolioSolver() {
+    }
+
+    /**
+     * Creates a portfolio of the default strategies.
+     */
+    public static PortfolioSolver withDefaultStrategies() {
+        PortfolioSolver portfolio = new PortfolioSolver();
+        portfolio.addStrategy("dls", graph -> solveWithDls(graph, CellOrder.FIRST_EMPTY, ValueOrder.ASCENDING));
+        portfolio.addStrategy("dls-mrv-lcv",
+                graph -> solveWithDls(graph, CellOrder.MOST_CONSTRAINED_DEGREE, ValueOrder.LEAST_CONSTRAINING));
+        portfolio.addStrategy("dls-restarts", PortfolioSolver::solveWithRestarts);
+        portfolio.addStrategy("bfs-mrv", PortfolioSolver::solveWithBfs);
+        portfolio.addStrategy("dlx", PortfolioSolver::solveWithDancingLinks);
+        return portfolio;
+    }
+
+    /**
+     * Adds a strategy to the race. Add every strategy before the first solve.
+     */
+    public void addStrategy(String name, Strategy strategy) {
+        if (pool != null) {
+            throw new IllegalStateException("Strategies must be added before the first solve");
+        }
+        names.add(name);
+        strategies.add(strategy);
+    }
+
+    /**
+     * Runs every strategy on the board and returns as soon as one of them has an answer,
+     * cancelling the rest. If the time limit runs out first, every strategy is cancelled and
+     * isTimedOut() is true.
+     * @return true if a solution was found; false if the board has none, or every strategy gave up
+     */
+    public boolean solve(SudokuGraph initialGraph) {
+        if (strategies.isEmpty()) {
+            throw new IllegalStateException("The portfolio has no strategies");
+        }
+        if (pool == null) {
+            // A queue as long as the portfolio, so a solve never waits for the caller to run a strategy
+            pool = SolverPool.fixed(strategies.size(), strategies.size());
+        }
+        solution = null;
+        winner = null;
+        timedOut = false;
+
+        int[][] grid = initialGraph.copyGrid();
+        ExecutorCompletionService<int[][]> race = new ExecutorCompletionService<>(pool.getExecutor());
+        List<Future<int[][]>> futures = new ArrayList<>();
+        for (Strategy strategy : strategies) {
+            futures.add(race.submit(() -> strategy.solve(new SudokuGraph(grid))));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            for (int finished = 0; finished < futures.size(); finished++) {
+                Future<int[][]> done = timeoutMillis > 0
+                        ? race.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS) : race.take();
+                if (done == null) {
+                    timedOut = true;
+                    break;
+                }
+                int[][] answer = answerOf(done);
+                if (answer != null) {
+                    winner = names.get(futures.indexOf(done));
+                    solution = answer == NO_SOLUTION ? null : answer;
+                    break;
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            // Stop the losers; they notice the interrupt at their next node
+            for (Future<int[][]> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return solution != null;
+    }
+
+    // The strategy's answer, or null if it gave up or failed
+    private static int[][] answerOf(Future<int[][]> future) throws InterruptedException {
+        try {
+            return future.get();
+        }
+        catch (ExecutionException | CancellationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Sets a time limit for each solve (0 for none).
+     */
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Checks whether the last solve stopped because its time limit ran out.
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Gets the solution found by the last solve, or null if there was none.
+     */
+    public int[][] getSolution() {
+        return solution;
+    }
+
+    /**
+     * Gets the name of the strategy that answered the last solve, or null if none did.
+     */
+    public String getWinner() {
+        return winner;
+    }
+
+    /**
+     * Stops the strategy threads.
+     */
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.getExecutor().shutdownNow();
+        }
+    }
+
+    // A full DLS with the given orderings; it always has an answer unless it is interrupted
+    private static int[][] solveWithDls(SudokuGraph graph, CellOrder cellOrder, ValueOrder valueOrder) {
+        DLSSolver solver = new DLSSolver();
+        solver.setQuiet(true);
+        solver.setCellOrder(cellOrder);
+        solver.setValueOrder(valueOrder);
+        return answer(solver.solve(graph, graph.getSize() * graph.getSize()), solver.getSolutions());
+    }
+
+    // DLS with random value orders, restarted with a 1.5x larger node limit each time it runs out
+    private static int[][] solveWithRestarts(SudokuGraph graph) {
+        DLSSolver solver = new DLSSolver();
+        solver.setQuiet(true);
+        solver.setCellOrder(CellOrder.MOST_CONSTRAINED);
+        solver.setValueOrder(ValueOrder.RANDOM);
+        for (long limit = FIRST_RESTART_NODES; !Thread.currentThread().isInterrupted(); limit += limit / 2) {
+            solver.setNodeLimit(limit);
+            boolean solved = solver.solve(graph, graph.getSize() * graph.getSize());
+            if (!solver.isNodeLimitReached()) {
+                return answer(solved, solver.getSolutions());
+            }
+        }
+        return null;
+    }
+
+    private static int[][] solveWithBfs(SudokuGraph graph) {
+        ImprovementBFS solver = new ImprovementBFS();
+        solver.setMaxFrontierSize(BFS_MAX_FRONTIER);
+        boolean solved = solver.solve(graph, 1);
+        if (solver.isFrontierLimitReached()) {
+            return null;
+        }
+        return answer(solved, solver.getSolutions());
+    }
+
+    private static int[][] solveWithDancingLinks(SudokuGraph graph) {
+        DancingLinksSolver solver = new DancingLinksSolver();
+        solver.setQuiet(true);
+        return answer(solver.solve(graph, 1), solver.getSolutions());
+    }
+
+    // Turn a finished solve into a strategy answer; an interrupted solve that found nothing has none
+    private static int[][] answer(boolean solved, List<int[][]> solutions) {
+        if (solved) {
+            return solutions.get(0);
+        }
+        return Thread.currentThread().isInterrupted() ? null : NO_SOLUTION;
+    }
+}
@@ -0,0 +1,173 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads Sudoku boards one at a time from a text stream, so a file of any length can be solved
+ * without loading it all into memory first.
+ *
+ * A board is written as size lines of size characters each, in the layout of puzzles.txt and
+ * the single-board files. 0 or . is an empty cell, 1-9 are values, and letters are the values
+ * past 9 (A = 10, B = 11, ... G = 16, ... Z = 35, in either case). Boards of 36x36 and up need
+ * more symbols than that, so on those boards the lowercase letters go on where the uppercase
+ * ones stop (a = 36, ... z = 61), which covers boards up to 49x49. Any line that is not part of
+ * a board, such as a blank line or a label like "easy", is skipped.
+ */
+public class PuzzleReader implements Iterator<int[][]>, AutoCloseable {
+    // Largest value that 1-9 and A-Z can write; bigger boards read lowercase letters as values of their own
+    static final int CASE_INSENSITIVE_MAX_VALUE = 35;
+
+    private final BufferedReader reader;
+    private int[][] nextBoard; // Read ahead by hasNext, null when it has not been read yet
+    private String pendingLine; // A line that broke off a board and may start the next one
+    private boolean finished;
+
+    public PuzzleReader(Reader reader) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextBoard == null && !finished) {
+            try {
+                nextBoard = readBoard();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            finished = nextBoard == null;
+        }
+        return nextBoard != null;
+    }
+
+    @Override
+    public int[][] next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int[][] board = nextBoard;
+        nextBoard = null;
+        return board;
+    }
+
+    /**
+     * Reads lines until a whole board has been read.
+     * @return the board, or null at the end of the stream
+     */
+    private int[][] readBoard() throws IOException {
+        String line;
+        while ((line = nextLine()) != null) {
+            int size = line.length();
+            if (!isRow(line, size)) {
+                continue;
+            }
+
+            int[][] board = new int[size][];
+            board[0] = decodeRow(line, size);
+            int row = 1;
+            while (row < size) {
+                String next = nextLine();
+                if (next == null) {
+                    return null;
+                }
+                if (next.length() != size || !isRow(next, size)) {
+                    // The board was cut short; the line that cut it may start another one
+                    pendingLine = next;
+                    break;
+                }
+                board[row++] = decodeRow(next, size);
+            }
+            if (row == size) {
+                return board;
+            }
+        }
+        return null;
+    }
+
+    private String nextLine() throws IOException {
+        if (pendingLine != null) {
+            String line = pendingLine;
+            pendingLine = null;
+            return line;
+        }
+        String line = reader.readLine();
+        return line == null ? null : line.trim();
+    }
+
+    // A row of a board of this size: a perfect square length, and every character is a value that fits
+    private static boolean isRow(String line, int size) {
+        int boxSize = (int) Math.sqrt(size);
+        if (size < 4 || boxSize * boxSize != size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            int value = decodeValue(line.charAt(i), size);
+            if (value < 0 || value > size) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int[] decodeRow(String line, int size) {
+        int[] row = new int[line.length()];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = decodeValue(line.charAt(i), size);
+        }
+        return row;
+    }
+
+    /**
+     * Gets the value of one cell character on a board of the given size: 0 for an empty cell,
+     * or -1 if the character is not a cell.
+     */
+    static int decodeValue(char c, int size) {
+        if (size > CASE_INSENSITIVE_MAX_VALUE && c >= 'a' && c <= 'z') {
+            return CASE_INSENSITIVE_MAX_VALUE + 1 + (c - 'a');
+        }
+        return decodeValue(c);
+    }
+
+    /**
+     * Gets the value of one cell character on a board of up to 35x35 (letters in either case).
+     */
+    static int decodeValue(char c) {
+        if (c == '.' || c == '0') {
+            return 0;
+        }
+        if (c >= '1' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return 10 + (c - 'A');
+        }
+        if (c >= 'a' && c <= 'z') {
+            return 10 + (c - 'a');
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the character for a cell value, the reverse of decodeValue ('.' for an empty cell).
+     */
+    static char encodeValue(int value) {
+        if (value == 0) {
+            return '.';
+        }
+        if (value <= 9) {
+            return (char) ('0' + value);
+        }
+        if (value <= CASE_INSENSITIVE_MAX_VALUE) {
+            return (char) ('A' + value - 10);
+        }
+        return (char) ('a' + value - CASE_INSENSITIVE_MAX_VALUE - 1);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,373 @@
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Memory-bounded best-first search for Sudoku puzzles, in the style of SMA*.
+ *
+ * The board with the fewest empty cells left (ties broken by the lowest candidate entropy, the
+ * sum of log2 of every empty cell's candidate count) is expanded first, making all its children.
+ * Every board in memory is packed like the BFS frontier and charged against a budget in bytes.
+ * When the next child would not fit, the worst leaf is forgotten: its value goes back to its
+ * parent, which remembers the best score among its forgotten children and will generate them
+ * again when that score comes up. No part of the tree is lost, so the search finds the same
+ * solutions as ImprovementBFS; with maxSolutions below the number of solutions, the ones it
+ * returns are the first it reaches in best-first order.
+ *
+ * The budget has to hold at least one path from the root to a solution. If it cannot,
+ * the search gives up and isMemoryBudgetExceeded() is true.
+ */
+public class SMAStarSolver {
+    public static final long DEFAULT_MEMORY_BUDGET_BYTES = 64L << 20;
+    // Rough heap cost of a node besides its packed board: the object, its array header, and its
+    // entries in the two ordered sets
+    private static final int NODE_OVERHEAD_BYTES = 176;
+    // log2(n) in thousandths of a bit, for candidate counts up to 64
+    private static final int[] LOG2_MILLIBITS = new int[65];
+
+    static {
+        for (int n = 1; n <= 64; n++) {
+            LOG2_MILLIBITS[n] = (int) Math.round(1000 * Math.log(n) / Math.log(2));
+        }
+    }
+
+    private final List<int[][]> solutions;
+    private long memoryBudgetBytes = DEFAULT_MEMORY_BUDGET_BYTES;
+    private boolean memoryBudgetExceeded;
+    private long memoryBytes; // Charged for the nodes in memory now
+    private long peakMemoryBytes;
+    private int peakNodes;
+    private long forgottenNodes;
+    private long exploredStates;
+    private long nextId;
+    private SearchMetrics metrics;
+    private Consumer<SearchMetrics> metricsListener; // Told about every solve, null for none
+    private CellOrder cellOrder = CellOrder.MOST_CONSTRAINED;
+    private ValueOrder valueOrder = ValueOrder.ASCENDING;
+
+    /**
+     * A board in memory. Its packed cells are taken after propagation, so loading one needs no search.
+     */
+    private static final class Node {
+        final long[] board;
+        final Node parent;
+        final int value; // Value the parent put in its branch cell to get here
+        final int depth;
+        final long score; // Empty cells in the high half, candidate entropy in the low half
+        final long id; // Creation order, the last tie-breaker
+        final int cellId; // Cell this board branches on
+        long remaining; // Values of cellId whose children are not in memory (never made, or forgotten)
+        long forgotten; // The part of remaining that was forgotten
+        long bestForgotten = Long.MAX_VALUE; // Best score among the forgotten children
+        int liveChildren; // Children in memory
+
+        Node(long[] board, Node parent, int value, int depth, long score, long id, int cellId, long remaining) {
+            this.board = board;
+            this.parent = parent;
+            this.value = value;
+            this.depth = depth;
+            this.score = score;
+            this.id = id;
+            this.cellId = cellId;
+            this.remaining = remaining;
+        }
+
+        // Score of the best child this node can still make: a forgotten child's backed-up score,
+        // or the node's own score for children not made yet
+        long priority() {
+            return Math.min(score, bestForgotten);
+        }
+    }
+
+    // Expand the best node first; deeper and then older nodes win ties
+    private static final Comparator<Node> BEST_FIRST = Comparator.comparingLong(Node::priority)
+            .thenComparing(Comparator.comparingInt((Node node) -> node.depth).reversed())
+            .thenComparingLong(node -> node.id);
+    // Forget the worst leaf first; shallower and then newer leaves go first on ties
+    private static final Comparator<Node> WORST_FIRST = Comparator.comparingLong((Node node) -> node.score).reversed()
+            .thenComparingInt(node -> node.depth)
+            .thenComparing(Comparator.comparingLong((Node node) -> node.id).reversed());
+
+    private TreeSet<Node> open; // Nodes with children left to make
+    private TreeSet<Node> leaves; // Nodes other than the root with no children in memory
+    private int nodeBytes;
+
+    public SMAStarSolver() {
+        this.solutions = new ArrayList<>();
+    }
+
+    /**
+     * Solves the puzzle with a memory-bounded best-first search.
+     * @param maxSolutions Maximum number of solutions to find
+     * @return true if at least one solution was found
+     */
+    public boolean solve(SudokuGraph graph, int maxSolutions) {
+        solutions.clear();
+        memoryBudgetExceeded = false;
+        memoryBytes = 0;
+        peakMemoryBytes = 0;
+        peakNodes = 0;
+        forgottenNodes = 0;
+        exploredStates = 0;
+        nextId = 0;
+        metrics = new SearchMetrics("SMAStarSolver");
+        SearchMetrics.Tally tally = metrics.newTally();
+
+        int[][] initialGrid = graph.copyGrid();
+        SudokuGraph currentGraph = new SudokuGraph(initialGrid);
+        PackedBoard codec = PackedBoard.forFreeCells(initialGrid);
+        nodeBytes = codec.getBytesPerBoard() + NODE_OVERHEAD_BYTES;
+        open = new TreeSet<>(BEST_FIRST);
+        leaves = new TreeSet<>(WORST_FIRST);
+        CellSelector selector = cellOrder.newSelector();
+        selector.prepare(currentGraph);
+        int[] values = new int[currentGraph.getSize()];
+
+        // The root is the propagated puzzle
+        exploredStates++;
+        tally.nodesExpanded++;
+        boolean consistent = currentGraph.propagate();
+        tally.propagationFills += currentGraph.getTrailSize();
+        if (!consistent) {
+            tally.backtracks++;
+        } else if (currentGraph.isPuzzleSolved()) {
+            solutions.add(currentGraph.copyGrid());
+        } else if (nodeBytes > memoryBudgetBytes) {
+            memoryBudgetExceeded = true;
+        } else {
+            open.add(newNode(currentGraph, codec, selector, null, 0, 0));
+        }
+
+        while (!open.isEmpty() && solutions.size() < maxSolutions) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            Node node = open.pollFirst();
+            codec.unpack(node.board, 0, currentGraph);
+
+            // Make every child this node has left, in the chosen value order, so they compete
+            // with the rest of the tree for the next expansion
+            int valueCount = valueOrder.order(currentGraph, node.cellId, node.remaining, values, 0);
+            boolean madeChild = false;
+            for (int i = 0; i < valueCount && solutions.size() < maxSolutions; i++) {
+                if (!makeRoom(node)) {
+                    break;
+                }
+                int value = values[i];
+                long bit = 1L << (value - 1);
+                node.remaining &= ~bit;
+                if ((node.forgotten & bit) != 0) {
+                    node.forgotten &= ~bit;
+                    if (node.forgotten == 0) {
+                        node.bestForgotten = Long.MAX_VALUE;
+                    }
+                }
+                madeChild = true;
+
+                currentGraph.setCell(node.cellId, value);
+                int mark = currentGraph.getTrailSize();
+                exploredStates++;
+                tally.nodesExpanded++;
+                tally.reachedDepth(node.depth + 1);
+                consistent = currentGraph.propagate();
+                tally.propagationFills += currentGraph.getTrailSize() - mark;
+                if (!consistent) {
+                    tally.backtracks++;
+                    selector.onContradiction(currentGraph);
+                } else if (currentGraph.isPuzzleSolved()) {
+                    solutions.add(currentGraph.copyGrid());
+                } else {
+                    Node child = newNode(currentGraph, codec, selector, node, value, node.depth + 1);
+                    leaves.remove(node);
+                    node.liveChildren++;
+                    open.add(child);
+                    leaves.add(child);
+                }
+                currentGraph.undoTo(mark);
+                currentGraph.setCell(node.cellId, 0);
+            }
+
+            if (!madeChild) {
+                // Even with every other leaf forgotten, the path to the next child does not fit
+                memoryBudgetExceeded = true;
+                break;
+            }
+            if (node.remaining != 0) {
+                open.add(node);
+            } else if (node.liveChildren == 0) {
+                release(node);
+            }
+        }
+
+        tally.peakFrontierSize = peakNodes;
+        open = null;
+        leaves = null;
+        metrics.flush(tally);
+        metrics.finish(solutions.size());
+        if (metricsListener != null) {
+            metricsListener.accept(metrics);
+        }
+        return !solutions.isEmpty();
+    }
+
+    // Pack the board on currentGraph into a new node and charge it against the budget
+    private Node newNode(SudokuGraph currentGraph, PackedBoard codec, CellSelector selector,
+                         Node parent, int value, int depth) {
+        long[] board = new long[codec.getWordsPerBoard()];
+        codec.pack(currentGraph, board, 0);
+        int cellId = selector.selectCell(currentGraph);
+        Node node = new Node(board, parent, value, depth, score(currentGraph), nextId++,
+                cellId, currentGraph.getCandidates(cellId));
+        memoryBytes += nodeBytes;
+        if (memoryBytes > peakMemoryBytes) {
+            peakMemoryBytes = memoryBytes;
+            peakNodes = (int) (memoryBytes / nodeBytes);
+        }
+        return node;
+    }
+
+    // Empty cells first, then how uncertain the empty cells are
+    private static long score(SudokuGraph graph) {
+        long entropy = 0;
+        int cellCount = graph.getSize() * graph.getSize();
+        for (int cellId = 0; cellId < cellCount; cellId++) {
+            if (graph.getCell(cellId) == 0) {
+                entropy += LOG2_MILLIBITS[graph.getCandidateCount(cellId)];
+            }
+        }
+        return (long) graph.getEmptyCellCount() << 32 | entropy;
+    }
+
+    /**
+     * Forgets the worst leaves until one more node fits in the budget. The node being expanded
+     * and the children it just made are not candidates: it needs them, and forgetting them
+     * would only hand the same work back to it.
+     * @return false if there is nothing left to forget and the node still does not fit
+     */
+    private boolean makeRoom(Node expanding) {
+        while (memoryBytes + nodeBytes > memoryBudgetBytes) {
+            Node worst = null;
+            for (Node leaf : leaves) {
+                if (leaf != expanding && leaf.parent != expanding) {
+                    worst = leaf;
+                    break;
+                }
+            }
+            if (worst == null) {
+                return false;
+            }
+            forget(worst);
+        }
+        return true;
+    }
+
+    // Drop a leaf, handing its value and its score back to its parent so the parent can make it again
+    private void forget(Node leaf) {
+        leaves.remove(leaf);
+        open.remove(leaf);
+        memoryBytes -= nodeBytes;
+        forgottenNodes++;
+
+        Node parent = leaf.parent;
+        open.remove(parent);
+        long bit = 1L << (leaf.value - 1);
+        parent.remaining |= bit;
+        parent.forgotten |= bit;
+        parent.bestForgotten = Math.min(parent.bestForgotten, leaf.priority());
+        parent.liveChildren--;
+        open.add(parent);
+        if (parent.liveChildren == 0 && parent.parent != null) {
+            leaves.add(parent);
+        }
+    }
+
+    // A node with no children left to make and none in memory is done; so may be its parent
+    private void release(Node node) {
+        while (node != null && node.remaining == 0 && node.liveChildren == 0) {
+            leaves.remove(node);
+            memoryBytes -= nodeBytes;
+            Node parent = node.parent;
+            if (parent != null) {
+                parent.liveChildren--;
+                if (parent.liveChildren == 0 && parent.parent != null && parent.remaining != 0) {
+                    leaves.add(parent);
+                }
+            }
+            node = parent;
+        }
+    }
+
+    /**
+     * Sets how many bytes the boards in memory may take (64 MB by default). The count is an
+     * estimate of the heap each node uses, packed board included.
+     */
+    public void setMemoryBudgetBytes(long memoryBudgetBytes) {
+        this.memoryBudgetBytes = memoryBudgetBytes;
+    }
+
+    /**
+     * Checks whether the last solve gave up because a path to the next board did not fit in the budget.
+     */
+    public boolean isMemoryBudgetExceeded() {
+        return memoryBudgetExceeded;
+    }
+
+    /**
+     * Gets the most memory the nodes of the last solve were charged for at once, in bytes.
+     */
+    public long getPeakMemoryBytes() {
+        return peakMemoryBytes;
+    }
+
+    /**
+     * Gets the most nodes the last solve held in memory at once.
+     */
+    public int getPeakNodes() {
+        return peakNodes;
+    }
+
+    /**
+     * Gets the number of nodes the last solve forgot to stay within its budget.
+     */
+    public long getForgottenNodes() {
+        return forgottenNodes;
+    }
+
+    /**
+     * Sets how the search picks the cell to branch on (MOST_CONSTRAINED by default, like ImprovementBFS).
+     */
+    public void setCellOrder(CellOrder cellOrder) {
+        this.cellOrder = cellOrder;
+    }
+
+    /**
+     * Sets the order the values of a branch cell are tried in (ASCENDING by default).
+     */
+    public void setValueOrder(ValueOrder valueOrder) {
+        this.valueOrder = valueOrder;
+    }
+
+    /**
+     * Sets a listener that is handed the metrics of every solve when it ends.
+     */
+    public void setMetricsListener(Consumer<SearchMetrics> metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * Gets the metrics of the last solve.
+     */
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+
+    public List<int[][]> getSolutions() {
+        return solutions;
+    }
+
+    /**
+     * Gets the number of states the last solve explored, regenerated ones included.
+     */
+    public long getExploredStates() {
+        return exploredStates;
+    }
+}
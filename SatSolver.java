@@ -0,0 +1,281 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * SAT solver for Sudoku puzzles: the board is encoded as clauses and handed to CdclCore.
+ *
+ * The board is propagated first, so only the (empty cell, candidate) pairs that are left get a
+ * variable. Every cell then takes at least one and at most one of its candidates, and every
+ * value that is missing from a row, column, or box goes in at least one and at most one of the
+ * cells of that unit where it is still a candidate (only at most one when the givens of the unit
+ * already break a rule, which finds the same fillings as DancingLinksSolver). At-most-one over a few variables is the
+ * pairwise clauses; over more it is the sequential counter encoding, which needs n - 1 extra
+ * variables and about 3n clauses instead of n^2 / 2, and is what keeps 25x25 and 36x36 boards
+ * small.
+ *
+ * To find more than one solution, each one is blocked with a clause saying that at least one of
+ * its cells has a different value, and the core is run again with what it has learnt so far.
+ */
+public class SatSolver {
+    // Groups up to this size get pairwise at-most-one clauses, bigger ones a sequential counter
+    private static final int PAIRWISE_LIMIT = 6;
+
+    private final List<int[][]> solutions;
+    private long timeoutMillis; // 0 for no time limit
+    private boolean timedOut;
+    private SearchMetrics metrics;
+    private Consumer<SearchMetrics> metricsListener; // Told about every solve, null for none
+    private CdclCore core; // The core of the last solve, for its statistics
+
+    public SatSolver() {
+        this.solutions = new ArrayList<>();
+    }
+
+    /**
+     * Solves the puzzle, stopping at the first solution.
+     * @param maxDepth Not used: a SAT search has no depth to limit. It is here so the solver can
+     *                 stand in for ImprovementDLS.
+     * @return true if a solution was found
+     */
+    public boolean solve(SudokuGraph initialGraph, int maxDepth) {
+        return solve(initialGraph, maxDepth, 1);
+    }
+
+    /**
+     * Solves the puzzle, stopping once maxSolutions solutions have been found.
+     * If a timeout is set and runs out first, the solutions found so far are kept and isTimedOut() is true.
+     * @param maxDepth Not used, as above
+     * @param maxSolutions Number of solutions to stop at. 0 is the same as 1, since the search has
+     *                     no root branches to keep one solution each for.
+     * @return true if at least one solution was found
+     */
+    public boolean solve(SudokuGraph initialGraph, int maxDepth, int maxSolutions) {
+        solutions.clear();
+        timedOut = false;
+        metrics = new SearchMetrics("SatSolver");
+        SearchMetrics.Tally tally = metrics.newTally();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        core = new CdclCore();
+
+        // Forced values need no variables
+        SudokuGraph graph = new SudokuGraph(initialGraph.copyGrid());
+        boolean consistent = graph.propagate();
+        tally.propagationFills += graph.getTrailSize();
+        if (consistent) {
+            int[] varOf = encode(graph);
+            int limit = Math.max(1, maxSolutions);
+            while (solutions.size() < limit) {
+                int status = core.solve(() -> Thread.currentThread().isInterrupted()
+                        || (timeoutMillis > 0 && System.nanoTime() - deadline > 0));
+                if (status == CdclCore.UNKNOWN) {
+                    timedOut = timeoutMillis > 0 && !Thread.currentThread().isInterrupted();
+                    break;
+                }
+                if (status == CdclCore.UNSAT) {
+                    break;
+                }
+                solutions.add(decodeAndBlock(graph, varOf));
+            }
+        }
+
+        tally.nodesExpanded += core.getDecisions();
+        tally.backtracks += core.getConflicts();
+        tally.reachedDepth(core.getMaxDecisionLevel());
+        metrics.flush(tally);
+        metrics.finish(solutions.size());
+        if (metricsListener != null) {
+            metricsListener.accept(metrics);
+        }
+        System.out.println("Number of SAT solutions Found: " + solutions.size());
+        return !solutions.isEmpty();
+    }
+
+    /**
+     * Adds the variables and clauses of a propagated board to the core.
+     * @return the variable of each (cell, value) pair at cellId * size + value - 1, -1 for none
+     */
+    private int[] encode(SudokuGraph graph) {
+        int size = graph.getSize();
+        SudokuTopology topology = graph.getTopology();
+        int[] varOf = new int[size * size * size];
+        Arrays.fill(varOf, -1);
+        int[] group = new int[size];
+
+        // Each empty cell holds exactly one of its candidates
+        for (int cellId = graph.nextEmptyCell(0); cellId >= 0; cellId = graph.nextEmptyCell(cellId + 1)) {
+            int count = 0;
+            for (long mask = graph.getCandidates(cellId); mask != 0; mask &= mask - 1) {
+                int value = Long.numberOfTrailingZeros(mask) + 1;
+                int var = core.newVar();
+                varOf[cellId * size + value - 1] = var;
+                group[count++] = CdclCore.lit(var, true);
+            }
+            exactlyOne(group, count);
+        }
+
+        // Each value missing from a unit goes in exactly one of its cells
+        for (int unit = 0; unit < topology.getUnitCount(); unit++) {
+            long placed = 0;
+            int emptyCount = 0;
+            for (int i = 0; i < size; i++) {
+                int value = graph.getCell(topology.getUnitCell(unit, i));
+                if (value != 0) {
+                    placed |= 1L << (value - 1);
+                } else {
+                    emptyCount++;
+                }
+            }
+            // A unit whose givens repeat a value has fewer empty cells than missing values, so
+            // some value can never go in; like DancingLinksSolver, such a unit only keeps its
+            // values from repeating again
+            boolean complete = emptyCount == size - Long.bitCount(placed);
+            for (int value = 1; value <= size; value++) {
+                if ((placed & (1L << (value - 1))) != 0) {
+                    continue;
+                }
+                int count = 0;
+                for (int i = 0; i < size; i++) {
+                    int var = varOf[topology.getUnitCell(unit, i) * size + value - 1];
+                    if (var >= 0) {
+                        group[count++] = CdclCore.lit(var, true);
+                    }
+                }
+                // No cell left for the value: the empty clause makes the core report no solution
+                if (complete) {
+                    core.addClause(Arrays.copyOf(group, count));
+                }
+                atMostOne(group, count);
+            }
+        }
+        return varOf;
+    }
+
+    // At least one and at most one of the first count literals of group
+    private void exactlyOne(int[] group, int count) {
+        core.addClause(Arrays.copyOf(group, count));
+        atMostOne(group, count);
+    }
+
+    // At most one of the first count literals of group
+    private void atMostOne(int[] group, int count) {
+        if (count <= 1) {
+            return;
+        }
+        if (count <= PAIRWISE_LIMIT) {
+            for (int i = 0; i < count; i++) {
+                for (int j = i + 1; j < count; j++) {
+                    core.addClause(group[i] ^ 1, group[j] ^ 1);
+                }
+            }
+            return;
+        }
+        // Sequential counter: s[i] is true once one of the first i + 1 literals is true
+        int previous = core.newVar();
+        core.addClause(group[0] ^ 1, CdclCore.lit(previous, true));
+        for (int i = 1; i < count - 1; i++) {
+            int next = core.newVar();
+            core.addClause(group[i] ^ 1, CdclCore.lit(next, true));
+            core.addClause(CdclCore.lit(previous, false), CdclCore.lit(next, true));
+            core.addClause(group[i] ^ 1, CdclCore.lit(previous, false));
+            previous = next;
+        }
+        core.addClause(group[count - 1] ^ 1, CdclCore.lit(previous, false));
+    }
+
+    /**
+     * Reads the solution out of the core's assignment and adds the clause that rules it out.
+     */
+    private int[][] decodeAndBlock(SudokuGraph graph, int[] varOf) {
+        int size = graph.getSize();
+        int[][] grid = graph.copyGrid();
+        List<Integer> blocking = new ArrayList<>();
+        for (int i = 0; i < varOf.length; i++) {
+            if (varOf[i] >= 0 && core.modelValue(varOf[i])) {
+                int cellId = i / size;
+                grid[cellId / size][cellId % size] = i % size + 1;
+                blocking.add(CdclCore.lit(varOf[i], false));
+            }
+        }
+        int[] clause = new int[blocking.size()];
+        for (int i = 0; i < clause.length; i++) {
+            clause[i] = blocking.get(i);
+        }
+        // With no empty cells left the clause is empty, and the core then reports no more solutions
+        core.addClause(clause);
+        return grid;
+    }
+
+    /**
+     * Sets a time limit for each solve (0 for none).
+     */
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Checks whether the last solve stopped because its time limit ran out.
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Sets a listener that is handed the metrics of every solve when it ends.
+     */
+    public void setMetricsListener(Consumer<SearchMetrics> metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * Gets the metrics of the last solve. Nodes expanded are the core's decisions and
+     * backtracks are its conflicts.
+     */
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Gets the number of variables of the last solve's encoding, with the counter variables.
+     */
+    public int getVariableCount() {
+        return core == null ? 0 : core.getVariableCount();
+    }
+
+    /**
+     * Gets the number of clauses of the last solve's encoding, without units and learnt clauses.
+     */
+    public int getClauseCount() {
+        return core == null ? 0 : core.getClauseCount();
+    }
+
+    /**
+     * Gets the number of conflicts of the last solve.
+     */
+    public long getConflicts() {
+        return core == null ? 0 : core.getConflicts();
+    }
+
+    /**
+     * Gets the number of restarts of the last solve.
+     */
+    public long getRestarts() {
+        return core == null ? 0 : core.getRestarts();
+    }
+
+    /**
+     * Gets the number of learnt clauses the last solve deleted.
+     */
+    public long getDeletedClauses() {
+        return core == null ? 0 : core.getDeletedClauses();
+    }
+
+    /**
+     * Gets the solutions found by the last solve.
+     */
+    public List<int[][]> getSolutions() {
+        return solutions;
+    }
+}
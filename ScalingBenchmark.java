@@ -0,0 +1,212 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Scaling benchmark: time and memory of the parallel solver (ImprovementDLS), or of the SAT
+ * solver with -e sat, for every board size from 4x4 to 36x36.
+ *
+ * The bundled puzzle files stop at 16x16, so the boards are generated. A pattern solution is
+ * shuffled by the Sudoku symmetries (bands, rows inside a band, the same for columns, and the
+ * values relabelled), then every cell is kept as a given with a fixed probability. The seed is
+ * fixed, so every run solves the same boards. Every size is solved once to warm up before it is
+ * measured.
+ *
+ * Memory is shown two ways: the bytes of one packed board, which is what a BFS frontier or the
+ * result cache keeps per state, and the bytes allocated by one solve over all threads. The second
+ * comes from the HotSpot per-thread allocation counters; the solver runs on one shared pool so
+ * its threads live from solve to solve and their counters can be read. Where the JVM has no such
+ * counters the column shows n/a.
+ *
+ * Every parallel solve also has its CPU time checked against its threads times its wall time,
+ * which catches work that the metrics count twice.
+ *
+ * Usage: java ScalingBenchmark [-n boardsPerSize] [-k clueRatio] [-s seed] [-t timeoutMillis] [-e dls|sat]
+ */
+public class ScalingBenchmark {
+    private static final int[] SIZES = {4, 9, 16, 25, 36};
+    private static final int DEFAULT_BOARDS = 10;
+    // With fewer givens than this, some 36x36 boards take the search far past the timeout
+    private static final double DEFAULT_CLUE_RATIO = 0.6;
+    private static final long DEFAULT_SEED = 2025;
+    private static final long DEFAULT_TIMEOUT_MILLIS = 10_000;
+
+    public static void main(String[] args) {
+        int boardsPerSize = DEFAULT_BOARDS;
+        double clueRatio = DEFAULT_CLUE_RATIO;
+        long seed = DEFAULT_SEED;
+        long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+        boolean sat = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-n": boardsPerSize = Integer.parseInt(args[++i]); break;
+                case "-k": clueRatio = Double.parseDouble(args[++i]); break;
+                case "-s": seed = Long.parseLong(args[++i]); break;
+                case "-t": timeoutMillis = Long.parseLong(args[++i]); break;
+                case "-e": sat = args[++i].equals("sat"); break;
+                default:
+                    System.out.println("Unknown option " + args[i]);
+                    return;
+            }
+        }
+
+        Random random = new Random(seed);
+        PrintStream console = System.out;
+        console.printf("%-7s %6s %7s %12s %12s %14s %16s%n",
+                "Board", "Boards", "Solved", "Median (ms)", "Max (ms)", "Packed (bytes)", "Allocated (KB)");
+        // The solver prints a line per solve; keep that out of the table
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try (SolverPool pool = SolverPool.workStealing()) {
+            for (int size : SIZES) {
+                List<int[][]> boards = new ArrayList<>();
+                for (int i = 0; i < boardsPerSize; i++) {
+                    boards.add(generate(size, clueRatio, random));
+                }
+                solve(pool, boards.get(0), timeoutMillis, sat); // warmup
+
+                long[] times = new long[boards.size()];
+                long[] allocated = new long[boards.size()];
+                long packedBytes = 0;
+                int solved = 0;
+                for (int i = 0; i < boards.size(); i++) {
+                    int[][] board = boards.get(i);
+                    packedBytes = Math.max(packedBytes, PackedBoard.forFreeCells(board).getBytesPerBoard());
+                    long allocatedBefore = allocatedBytes();
+                    long start = System.nanoTime();
+                    if (solve(pool, board, timeoutMillis, sat)) {
+                        solved++;
+                    }
+                    times[i] = System.nanoTime() - start;
+                    allocated[i] = allocatedBefore < 0 ? -1 : allocatedBytes() - allocatedBefore;
+                }
+
+                Arrays.sort(times);
+                Arrays.sort(allocated);
+                String allocatedColumn = allocated[0] < 0
+                        ? "n/a" : String.format(Locale.ROOT, "%.1f", median(allocated) / 1024.0);
+                console.printf(Locale.ROOT, "%-7s %6d %7d %12.2f %12.2f %14d %16s%n",
+                        size + "x" + size, boards.size(), solved, median(times) / 1e6,
+                        times[times.length - 1] / 1e6, packedBytes, allocatedColumn);
+            }
+        }
+        finally {
+            System.setOut(console);
+        }
+    }
+
+    // One solve of a board, checked against the givens and the rules
+    private static boolean solve(SolverPool pool, int[][] board, long timeoutMillis, boolean sat) {
+        List<int[][]> solutions;
+        if (sat) {
+            SatSolver solver = new SatSolver();
+            solver.setTimeoutMillis(timeoutMillis);
+            solver.solve(new SudokuGraph(board), board.length * board.length, 1);
+            solutions = solver.getSolutions();
+        } else {
+            ImprovementDLS solver = new ImprovementDLS(pool);
+            solver.setCellOrder(CellOrder.MOST_CONSTRAINED);
+            solver.setTimeoutMillis(timeoutMillis);
+            solver.solve(new SudokuGraph(board), board.length * board.length, 1);
+            solutions = solver.getSolutions();
+            if (!solver.getMetrics().isCpuWithinWall()) {
+                throw new IllegalStateException("CPU time over threads x wall time: "
+                        + solver.getMetrics().toJsonLine());
+            }
+        }
+        if (solutions.isEmpty()) {
+            return false;
+        }
+        int[][] solution = solutions.get(0);
+        for (int row = 0; row < board.length; row++) {
+            for (int col = 0; col < board.length; col++) {
+                if (board[row][col] != 0 && board[row][col] != solution[row][col]) {
+                    return false;
+                }
+            }
+        }
+        return new SudokuGraph(solution).isPuzzleSolved();
+    }
+
+    /**
+     * Generates a size x size board with about clueRatio of its cells given.
+     * The board always has a solution, but it is not always unique.
+     */
+    static int[][] generate(int size, double clueRatio, Random random) {
+        int boxSize = (int) Math.sqrt(size);
+        int[] rows = shuffledLines(boxSize, random);
+        int[] cols = shuffledLines(boxSize, random);
+        List<Integer> values = new ArrayList<>();
+        for (int value = 1; value <= size; value++) {
+            values.add(value);
+        }
+        Collections.shuffle(values, random);
+
+        int[][] board = new int[size][size];
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                if (random.nextDouble() < clueRatio) {
+                    // The pattern solution: each row is the one above shifted by a box, and each
+                    // band by one more
+                    int r = rows[row];
+                    int c = cols[col];
+                    board[row][col] = values.get(((r % boxSize) * boxSize + r / boxSize + c) % size);
+                }
+            }
+        }
+        return board;
+    }
+
+    // A permutation of the rows (or columns) that keeps every band together
+    private static int[] shuffledLines(int boxSize, Random random) {
+        List<Integer> bands = new ArrayList<>();
+        for (int band = 0; band < boxSize; band++) {
+            bands.add(band);
+        }
+        Collections.shuffle(bands, random);
+        int[] lines = new int[boxSize * boxSize];
+        int next = 0;
+        for (int band : bands) {
+            List<Integer> inBand = new ArrayList<>();
+            for (int line = 0; line < boxSize; line++) {
+                inBand.add(band * boxSize + line);
+            }
+            Collections.shuffle(inBand, random);
+            for (int line : inBand) {
+                lines[next++] = line;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Bytes allocated so far by every live thread, or -1 if the JVM does not count them.
+     */
+    private static long allocatedBytes() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) { // -1 for a thread that ended after the ids were read
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    private static double median(long[] sorted) {
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2.0;
+    }
+}
@@ -0,0 +1,388 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Counts what one solve did, the same way for every solver: search nodes expanded, backtracks
+ * (branches given up on a contradiction, with every value tried, or at the depth limit),
+ * the deepest level reached, cells filled by propagation, the largest frontier, duplicate states
+ * skipped, and wall and CPU time.
+ *
+ * Solvers count into a Tally, a plain object owned by one thread, so the search loops pay for a
+ * field increment and nothing more. A tally is flushed into the totals when its task ends; the
+ * totals are LongAdders, so parallel workers flushing at the same time do not fight over one
+ * counter. Every flush is also added to the flushing thread's own totals, which gives the
+ * per-thread breakdown.
+ *
+ * The numbers can be written as one JSON object per line or in the Prometheus text format.
+ * jsonLinesTo turns the JSON into a listener a solver calls after every solve, and
+ * prometheusTotals makes a listener that keeps running totals over every solve for scraping.
+ */
+public class SearchMetrics {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME_SUPPORTED = THREADS.isCurrentThreadCpuTimeSupported();
+
+    private final String solver;
+    private final LongAdder nodesExpanded = new LongAdder();
+    private final LongAdder backtracks = new LongAdder();
+    private final LongAdder propagationFills = new LongAdder();
+    private final LongAdder dedupHits = new LongAdder();
+    private final LongAdder cpuNanos = new LongAdder();
+    private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator peakFrontierSize = new LongAccumulator(Math::max, 0);
+    private final Map<String, Tally> threads = new ConcurrentHashMap<>(); // Thread name -> its totals
+    private long startNanos;
+    private volatile long wallNanos;
+    private volatile int solutions;
+
+    public SearchMetrics(String solver) {
+        this.solver = solver;
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Counts for one task on one thread. Only the thread that made it may touch it.
+     */
+    static final class Tally {
+        long nodesExpanded;
+        long backtracks;
+        long propagationFills;
+        long dedupHits;
+        long maxDepth;
+        long peakFrontierSize;
+        long cpuNanos;
+        private long cpuStart;
+
+        private Tally(long cpuStart) {
+            this.cpuStart = cpuStart;
+        }
+
+        // Keep a depth if it is the deepest seen so far
+        void reachedDepth(long depth) {
+            if (depth > maxDepth) {
+                maxDepth = depth;
+            }
+        }
+
+        private void addAll(Tally other) {
+            nodesExpanded += other.nodesExpanded;
+            backtracks += other.backtracks;
+            propagationFills += other.propagationFills;
+            dedupHits += other.dedupHits;
+            maxDepth = Math.max(maxDepth, other.maxDepth);
+            peakFrontierSize = Math.max(peakFrontierSize, other.peakFrontierSize);
+            cpuNanos += other.cpuNanos;
+        }
+
+        private void reset(long cpuStart) {
+            nodesExpanded = 0;
+            backtracks = 0;
+            propagationFills = 0;
+            dedupHits = 0;
+            maxDepth = 0;
+            peakFrontierSize = 0;
+            cpuNanos = 0;
+            this.cpuStart = cpuStart;
+        }
+    }
+
+    /**
+     * Starts a tally for the calling thread. Its CPU time is counted from now.
+     */
+    Tally newTally() {
+        return new Tally(threadCpuNanos());
+    }
+
+    /**
+     * Adds a tally to the totals and to its thread's totals, then starts the tally over.
+     * A task that hands work to other tasks on its own thread (a fork/join invokeAll) flushes
+     * first and calls restartClock when they are done, since they count their own CPU time.
+     */
+    void flush(Tally tally) {
+        long cpuNow = threadCpuNanos();
+        tally.cpuNanos = cpuNow - tally.cpuStart;
+        nodesExpanded.add(tally.nodesExpanded);
+        backtracks.add(tally.backtracks);
+        propagationFills.add(tally.propagationFills);
+        dedupHits.add(tally.dedupHits);
+        cpuNanos.add(tally.cpuNanos);
+        maxDepth.accumulate(tally.maxDepth);
+        peakFrontierSize.accumulate(tally.peakFrontierSize);
+        threads.compute(Thread.currentThread().getName(), (name, total) -> {
+            if (total == null) {
+                total = new Tally(0);
+            }
+            total.addAll(tally);
+            return total;
+        });
+        tally.reset(cpuNow);
+    }
+
+    /**
+     * Records the end of the solve: its wall time and how many solutions it found.
+     */
+    void finish(int solutions) {
+        this.wallNanos = System.nanoTime() - startNanos;
+        this.solutions = solutions;
+    }
+
+    // CPU time of the calling thread, or 0 where the JVM cannot measure it
+    /**
+     * Starts a tally's CPU clock over from now, dropping the time since it was last flushed.
+     * Used after other tasks ran on the tally's thread and already counted that time.
+     */
+    void restartClock(Tally tally) {
+        tally.cpuStart = threadCpuNanos();
+    }
+
+    private static long threadCpuNanos() {
+        return CPU_TIME_SUPPORTED ? THREADS.getCurrentThreadCpuTime() : 0;
+    }
+
+    public String getSolver() {
+        return solver;
+    }
+
+    public int getSolutions() {
+        return solutions;
+    }
+
+    public long getNodesExpanded() {
+        return nodesExpanded.sum();
+    }
+
+    public long getBacktracks() {
+        return backtracks.sum();
+    }
+
+    public long getMaxDepth() {
+        return maxDepth.get();
+    }
+
+    public long getPropagationFills() {
+        return propagationFills.sum();
+    }
+
+    public long getPeakFrontierSize() {
+        return peakFrontierSize.get();
+    }
+
+    public long getDedupHits() {
+        return dedupHits.sum();
+    }
+
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    /**
+     * Gets the CPU time of every thread that worked on the solve, added up (0 if the JVM cannot measure it).
+     */
+    public long getCpuNanos() {
+        return cpuNanos.sum();
+    }
+
+    /**
+     * Checks that the CPU time is possible: no more than the wall time for each thread that
+     * worked on the solve. More than that means some work was counted twice.
+     */
+    public boolean isCpuWithinWall() {
+        return getCpuNanos() <= threads.size() * wallNanos;
+    }
+
+    /**
+     * Gets the names of the threads that worked on the solve, in order.
+     */
+    public String[] getThreadNames() {
+        return new TreeMap<>(threads).keySet().toArray(new String[0]);
+    }
+
+    /**
+     * Gets the nodes one thread expanded.
+     */
+    public long getThreadNodesExpanded(String thread) {
+        Tally total = threads.get(thread);
+        return total == null ? 0 : total.nodesExpanded;
+    }
+
+    /**
+     * Gets the CPU time one thread spent on the solve.
+     */
+    public long getThreadCpuNanos(String thread) {
+        Tally total = threads.get(thread);
+        return total == null ? 0 : total.cpuNanos;
+    }
+
+    /**
+     * Writes the metrics as one JSON object on one line, with a "threads" array for the
+     * per-thread breakdown.
+     */
+    public String toJsonLine() {
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"solver\":\"").append(escape(solver)).append("\"");
+        json.append(",\"solutions\":").append(solutions);
+        json.append(",\"nodesExpanded\":").append(getNodesExpanded());
+        json.append(",\"backtracks\":").append(getBacktracks());
+        json.append(",\"maxDepth\":").append(getMaxDepth());
+        json.append(",\"propagationFills\":").append(getPropagationFills());
+        json.append(",\"peakFrontierSize\":").append(getPeakFrontierSize());
+        json.append(",\"dedupHits\":").append(getDedupHits());
+        json.append(",\"wallNanos\":").append(wallNanos);
+        json.append(",\"cpuNanos\":").append(getCpuNanos());
+        json.append(",\"threads\":[");
+        boolean first = true;
+        for (Map.Entry<String, Tally> entry : new TreeMap<>(threads).entrySet()) {
+            Tally total = entry.getValue();
+            json.append(first ? "" : ",");
+            json.append("{\"thread\":\"").append(escape(entry.getKey())).append("\"");
+            json.append(",\"nodesExpanded\":").append(total.nodesExpanded);
+            json.append(",\"backtracks\":").append(total.backtracks);
+            json.append(",\"propagationFills\":").append(total.propagationFills);
+            json.append(",\"cpuNanos\":").append(total.cpuNanos).append("}");
+            first = false;
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * Writes the metrics of this one solve in the Prometheus text exposition format. Every sample
+     * is labelled with the solver, and the per-thread samples also with the thread. The values
+     * belong to one solve and start over with the next, so they are gauges; for counters that
+     * keep growing from solve to solve, use prometheusTotals.
+     */
+    public String toPrometheus() {
+        StringBuilder text = new StringBuilder();
+        String labels = "{solver=\"" + escape(solver) + "\"}";
+        appendSample(text, "sudoku_solve_solutions", "gauge", labels, solutions);
+        appendSample(text, "sudoku_solve_nodes_expanded", "gauge", labels, getNodesExpanded());
+        appendSample(text, "sudoku_solve_backtracks", "gauge", labels, getBacktracks());
+        appendSample(text, "sudoku_solve_max_depth", "gauge", labels, getMaxDepth());
+        appendSample(text, "sudoku_solve_propagation_fills", "gauge", labels, getPropagationFills());
+        appendSample(text, "sudoku_solve_peak_frontier_size", "gauge", labels, getPeakFrontierSize());
+        appendSample(text, "sudoku_solve_dedup_hits", "gauge", labels, getDedupHits());
+        appendSample(text, "sudoku_solve_wall_seconds", "gauge", labels, seconds(wallNanos));
+        appendSample(text, "sudoku_solve_cpu_seconds", "gauge", labels, seconds(getCpuNanos()));
+
+        Map<String, Tally> sorted = new TreeMap<>(threads);
+        text.append("# TYPE sudoku_solve_thread_nodes_expanded gauge\n");
+        for (Map.Entry<String, Tally> entry : sorted.entrySet()) {
+            text.append("sudoku_solve_thread_nodes_expanded").append(threadLabels(entry.getKey()))
+                    .append(' ').append(entry.getValue().nodesExpanded).append('\n');
+        }
+        text.append("# TYPE sudoku_solve_thread_cpu_seconds gauge\n");
+        for (Map.Entry<String, Tally> entry : sorted.entrySet()) {
+            text.append("sudoku_solve_thread_cpu_seconds").append(threadLabels(entry.getKey()))
+                    .append(' ').append(seconds(entry.getValue().cpuNanos)).append('\n');
+        }
+        return text.toString();
+    }
+
+    private String threadLabels(String thread) {
+        return "{solver=\"" + escape(solver) + "\",thread=\"" + escape(thread) + "\"}";
+    }
+
+    private static void appendSample(StringBuilder text, String name, String type, String labels, Object value) {
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        text.append(name).append(labels).append(' ').append(value).append('\n');
+    }
+
+    // Prometheus measures time in seconds
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    // Both formats quote label and string values the same way
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Makes a listener that writes every solve's metrics to out as a JSON line.
+     */
+    public static Consumer<SearchMetrics> jsonLinesTo(Appendable out) {
+        return metrics -> write(out, metrics.toJsonLine() + "\n");
+    }
+
+    /**
+     * Makes a listener that adds every solve's metrics to running totals, to be scraped with
+     * PrometheusTotals.scrape.
+     */
+    public static PrometheusTotals prometheusTotals() {
+        return new PrometheusTotals();
+    }
+
+    /**
+     * Totals over every solve it is told about, per solver, which only ever grow, so they are
+     * exported as Prometheus counters. Solves may end on any thread; scrape renders one
+     * exposition of everything added so far.
+     */
+    public static final class PrometheusTotals implements Consumer<SearchMetrics> {
+        // Counter names, in the order of the LongAdders of each solver
+        private static final String[] NAMES = {
+                "sudoku_solves_total", "sudoku_solutions_total", "sudoku_nodes_expanded_total",
+                "sudoku_backtracks_total", "sudoku_propagation_fills_total", "sudoku_dedup_hits_total",
+                "sudoku_wall_seconds_total", "sudoku_cpu_seconds_total"};
+        private static final int WALL = 6; // The time counters are kept in nanoseconds
+        private static final int CPU = 7;
+
+        private final Map<String, LongAdder[]> totals = new ConcurrentHashMap<>(); // Solver -> its counters
+
+        private PrometheusTotals() {
+        }
+
+        @Override
+        public void accept(SearchMetrics metrics) {
+            LongAdder[] counters = totals.computeIfAbsent(metrics.solver, solver -> {
+                LongAdder[] adders = new LongAdder[NAMES.length];
+                for (int i = 0; i < adders.length; i++) {
+                    adders[i] = new LongAdder();
+                }
+                return adders;
+            });
+            counters[0].increment();
+            counters[1].add(metrics.solutions);
+            counters[2].add(metrics.getNodesExpanded());
+            counters[3].add(metrics.getBacktracks());
+            counters[4].add(metrics.getPropagationFills());
+            counters[5].add(metrics.getDedupHits());
+            counters[WALL].add(metrics.wallNanos);
+            counters[CPU].add(metrics.getCpuNanos());
+        }
+
+        /**
+         * Renders the totals in the Prometheus text exposition format, one family per counter
+         * with a sample per solver.
+         */
+        public String scrape() {
+            Map<String, LongAdder[]> sorted = new TreeMap<>(totals);
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < NAMES.length; i++) {
+                text.append("# TYPE ").append(NAMES[i]).append(" counter\n");
+                for (Map.Entry<String, LongAdder[]> entry : sorted.entrySet()) {
+                    long value = entry.getValue()[i].sum();
+                    text.append(NAMES[i]).append("{solver=\"").append(escape(entry.getKey())).append("\"} ")
+                            .append(i == WALL || i == CPU ? seconds(value) : Long.toString(value)).append('\n');
+                }
+            }
+            return text.toString();
+        }
+    }
+
+    private static void write(Appendable out, String text) {
+        try {
+            synchronized (out) {
+                out.append(text);
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
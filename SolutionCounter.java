@@ -0,0 +1,114 @@
+/**
+ * Counts the solutions of a puzzle without keeping any of them, for questions like "is this
+ * puzzle unique?" (countSolutions with a cap of 2) or "how many solutions does it have?".
+ *
+ * The search is a depth-first search with propagation that branches on the empty cell with the
+ * fewest candidates. The count of every subtree that was searched to the end is remembered by
+ * the Zobrist hash of its propagated board. Within one search two subtrees never share a board
+ * (they differ in the cell they branched on), but the memo is kept between calls, so counting
+ * puzzles that share partial states, such as the boards a generator tries while removing clues
+ * one at a time from the same grid, only searches each shared subtree once.
+ */
+public class SolutionCounter {
+    // Forget every count once this many are remembered, so memory stays bounded on long runs
+    private static final int MAX_MEMO_ENTRIES = 1 << 18;
+    private static final long NOT_COUNTED = -1;
+
+    private final LongLongHashMap memo; // Board hash -> number of solutions below that board
+    private final CellSelector cellSelector = CellOrder.MOST_CONSTRAINED.newSelector();
+    private long memoHits;
+
+    public SolutionCounter() {
+        this.memo = new LongLongHashMap();
+    }
+
+    /**
+     * Counts the solutions of a puzzle. The graph is not changed.
+     * @param cap Stop once this many solutions are found (0 to count them all)
+     * @return the number of solutions, at most cap
+     */
+    public long countSolutions(SudokuGraph graph, long cap) {
+        memoHits = 0;
+        long limit = cap > 0 ? cap : Long.MAX_VALUE;
+        SudokuGraph sudokuGraph = new SudokuGraph(graph.copyGrid());
+        cellSelector.prepare(sudokuGraph);
+        return count(sudokuGraph, limit);
+    }
+
+    /**
+     * Checks that a puzzle has exactly one solution, stopping as soon as a second one turns up.
+     */
+    public boolean isUnique(SudokuGraph graph) {
+        return countSolutions(graph, 2) == 1;
+    }
+
+    /**
+     * Counts the solutions below the current board, stopping once limit have been found.
+     */
+    private long count(SudokuGraph sudokuGraph, long limit) {
+        // Fill in every forced value. If that runs into a contradiction, there is nothing to count
+        int mark = sudokuGraph.getTrailSize();
+        if (!sudokuGraph.propagate()) {
+            sudokuGraph.undoTo(mark);
+            return 0;
+        }
+        if (sudokuGraph.isPuzzleSolved()) {
+            sudokuGraph.undoTo(mark);
+            return 1;
+        }
+
+        // This board was already searched to the end along another path
+        long hash = sudokuGraph.getHash();
+        long known = memo.get(hash, NOT_COUNTED);
+        if (known != NOT_COUNTED) {
+            memoHits++;
+            sudokuGraph.undoTo(mark);
+            return Math.min(known, limit);
+        }
+
+        int cellId = cellSelector.selectCell(sudokuGraph);
+        long total = 0;
+        boolean capped = false;
+        for (long values = sudokuGraph.getCandidates(cellId); values != 0; values &= values - 1) {
+            sudokuGraph.setCell(cellId, Long.numberOfTrailingZeros(values) + 1);
+            total += count(sudokuGraph, limit - total);
+            if (total >= limit) {
+                // Enough solutions; the rest of this subtree is never searched
+                capped = true;
+                break;
+            }
+        }
+        sudokuGraph.setCell(cellId, 0);
+        sudokuGraph.undoTo(mark);
+
+        // Only a complete count is worth remembering
+        if (!capped) {
+            if (memo.size() >= MAX_MEMO_ENTRIES) {
+                memo.clear();
+            }
+            memo.put(hash, total);
+        }
+        return total;
+    }
+
+    /**
+     * Gets the number of times the last count reused a remembered subtree count.
+     */
+    public long getMemoHits() {
+        return memoHits;
+    }
+
+    /**
+     * Gets the number of subtree counts remembered so far.
+     */
+    public int getMemoSize() {
+        return memo.size();
+    }
+
+    /**
+     * Forgets every remembered subtree count.
+     */
+    public void clearMemo() {
+        memo.clear();
+    }
+}
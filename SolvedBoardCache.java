@@ -0,0 +1,179 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size-bounded, least recently used cache of solved puzzles, keyed by canonical form, so a
+ * puzzle that is the same as an earlier one up to symmetry is answered without a search.
+ * The cached solution is stored in canonical layout and mapped back through the new puzzle's
+ * own transform on a hit.
+ *
+ * The cache keeps one solution per puzzle. Solvers only use it when they are asked for a single
+ * solution, since which solutions a search finds first depends on the board's layout.
+ * One cache can sit in front of several solvers on different threads; the symmetry search runs
+ * outside the cache's lock.
+ */
+public class SolvedBoardCache {
+    // Rough object sizes for the memory estimate: a String with its byte array, and a map entry
+    private static final int STRING_OVERHEAD_BYTES = 56;
+    private static final int ENTRY_OVERHEAD_BYTES = 40;
+
+    private final int maxEntries;
+    private final LinkedHashMap<String, String> entries; // Canonical puzzle -> canonical solution
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long storedBytes; // Characters held by keys and values
+    private long canonicalizations;
+    private long canonicalizationNanos; // Time spent in CanonicalForm.of for this cache
+
+    public SolvedBoardCache(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        // Access order, so iteration starts at the least recently used entry
+        this.entries = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                if (size() <= SolvedBoardCache.this.maxEntries) {
+                    return false;
+                }
+                evictions++;
+                storedBytes -= eldest.getKey().length() + eldest.getValue().length();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Looks up a solution for a puzzle.
+     * @return the cached solution in the puzzle's own layout, or null on a miss
+     */
+    public int[][] get(SudokuGraph puzzle) {
+        return get(canonicalize(puzzle.copyGrid()));
+    }
+
+    /**
+     * Finds the canonical form of a board, counting the time it takes against this cache.
+     * Solvers use this instead of CanonicalForm.of, so the cost of a lookup shows up next to
+     * the hit ratio.
+     */
+    public CanonicalForm canonicalize(int[][] grid) {
+        // The symmetry search runs outside the lock, so other threads can use the cache meanwhile
+        long start = System.nanoTime();
+        CanonicalForm form = CanonicalForm.of(grid);
+        long elapsed = System.nanoTime() - start;
+        synchronized (this) {
+            canonicalizations++;
+            canonicalizationNanos += elapsed;
+        }
+        return form;
+    }
+
+    /**
+     * Looks up a solution using a canonical form that was already computed.
+     */
+    public synchronized int[][] get(CanonicalForm form) {
+        String solution = entries.get(form.getKey());
+        if (solution == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return form.toOriginal(decode(solution));
+    }
+
+    /**
+     * Stores the solution of a puzzle.
+     */
+    public void put(SudokuGraph puzzle, int[][] solution) {
+        put(canonicalize(puzzle.copyGrid()), solution);
+    }
+
+    /**
+     * Stores the solution of a puzzle whose canonical form was already computed.
+     */
+    public synchronized void put(CanonicalForm form, int[][] solution) {
+        String key = form.getKey();
+        String value = encode(form.toCanonical(solution));
+        String old = entries.put(key, value);
+        if (old != null) {
+            storedBytes -= key.length() + old.length();
+        }
+        storedBytes += key.length() + value.length();
+    }
+
+    // One char per cell; values up to 64 fit in a byte, so Java stores these strings compactly
+    private static String encode(int[][] grid) {
+        char[] chars = new char[grid.length * grid.length];
+        for (int row = 0; row < grid.length; row++) {
+            for (int col = 0; col < grid.length; col++) {
+                chars[row * grid.length + col] = (char) grid[row][col];
+            }
+        }
+        return new String(chars);
+    }
+
+    private static int[][] decode(String cells) {
+        int size = (int) Math.sqrt(cells.length());
+        int[][] grid = new int[size][size];
+        for (int i = 0; i < cells.length(); i++) {
+            grid[i / size][i % size] = cells.charAt(i);
+        }
+        return grid;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the fraction of lookups that found a solution (0 before the first lookup).
+     */
+    public synchronized double getHitRatio() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * Gets the total time spent finding canonical forms for this cache, in nanoseconds.
+     */
+    public synchronized long getCanonicalizationNanos() {
+        return canonicalizationNanos;
+    }
+
+    /**
+     * Gets the average time of one canonical form, in nanoseconds (0 before the first one).
+     * A lookup only pays off when a hit saves more than this on average.
+     */
+    public synchronized double getMeanCanonicalizationNanos() {
+        return canonicalizations == 0 ? 0 : (double) canonicalizationNanos / canonicalizations;
+    }
+
+    /**
+     * Gets the number of entries dropped to stay within maxEntries.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets an estimate of the heap used by the cached entries, in bytes.
+     */
+    public synchronized long getEstimatedBytes() {
+        return storedBytes + (long) entries.size() * (2 * STRING_OVERHEAD_BYTES + ENTRY_OVERHEAD_BYTES);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        storedBytes = 0;
+    }
+}
@@ -0,0 +1,388 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Benchmarks for the search solvers (the parallel BFS and the hybrid at several thread counts,
+ * and the SAT and Dancing Links engines),
+ * their cell and value orderings, and the SudokuGraph primitives, with warmup and repeated
+ * measurement so the numbers are not dominated by JIT compilation like the single nanoTime
+ * deltas printed by the mains.
+ *
+ * Every benchmark is an operation that is run back to back for a fixed time per iteration.
+ * The warmup iterations are thrown away, and the score is the average time per operation over
+ * the measured iterations, with a 99.9% error margin. Results are printed as a table and
+ * written as JSON in the same layout JMH uses, so regressions can be tracked with the usual tools.
+ *
+ * Usage: java SolverBenchmark [-wi warmupIterations] [-i iterations] [-r iterationMillis]
+ *                             [-o results.json] [filter]
+ * Only benchmarks whose "name board" contains filter are run. Run it from the folder with the
+ * puzzle files, like the mains.
+ */
+public class SolverBenchmark {
+    private static final int DEFAULT_WARMUP_ITERATIONS = 5;
+    private static final int DEFAULT_ITERATIONS = 10;
+    private static final long DEFAULT_ITERATION_MILLIS = 200;
+    private static final String DEFAULT_OUTPUT = "benchmark-results.json";
+    // Two-sided z value for a 99.9% confidence interval
+    private static final double Z_99_9 = 3.29;
+    // A 9x9 that propagation alone cannot finish (every bundled board falls to propagation),
+    // so the orderings have a real search to differ on
+    private static final String HARD_PUZZLE =
+            "800000000003600000070090200050007000000045700000100030001000068008500010090000400";
+
+    // Every result is folded in here so the JIT cannot drop a benchmarked call as dead code
+    private static long sink;
+    // One pool per thread count for the parallel BFS and hybrid benchmarks, so pool start-up is not timed.
+    // The workers are daemon threads, so the pools never keep the JVM alive
+    private static final Map<Integer, SolverPool> BFS_POOLS = new HashMap<>();
+
+    public static void main(String[] args) {
+        int warmupIterations = DEFAULT_WARMUP_ITERATIONS;
+        int iterations = DEFAULT_ITERATIONS;
+        long iterationMillis = DEFAULT_ITERATION_MILLIS;
+        String output = DEFAULT_OUTPUT;
+        String filter = "";
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-wi": warmupIterations = Integer.parseInt(args[++i]); break;
+                case "-i": iterations = Integer.parseInt(args[++i]); break;
+                case "-r": iterationMillis = Long.parseLong(args[++i]); break;
+                case "-o": output = args[++i]; break;
+                default: filter = args[i];
+            }
+        }
+
+        Map<String, int[][]> boards = readBoards();
+        List<Benchmark> benchmarks = new ArrayList<>();
+        for (Map.Entry<String, int[][]> entry : boards.entrySet()) {
+            addSolverBenchmarks(benchmarks, entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, int[][]> entry : boards.entrySet()) {
+            addOrderingBenchmarks(benchmarks, entry.getKey(), entry.getValue());
+        }
+        int[][] standard = boards.get("9x9");
+        if (standard != null) {
+            addGraphBenchmarks(benchmarks, "9x9", standard);
+        }
+
+        // The solvers print a line per solve; keep that out of the measurements
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        List<Result> results = new ArrayList<>();
+        try {
+            console.printf("%-32s %-14s %16s %14s%n", "Benchmark", "Board", "Score (ns/op)", "Error");
+            for (Benchmark benchmark : benchmarks) {
+                if (!(benchmark.name + " " + benchmark.board).contains(filter)) {
+                    continue;
+                }
+                Result result = run(benchmark, warmupIterations, iterations, iterationMillis);
+                results.add(result);
+                console.printf(Locale.ROOT, "%-32s %-14s %16.1f %14.1f%n",
+                        benchmark.name, benchmark.board, result.score, result.error);
+            }
+        }
+        finally {
+            System.setOut(console);
+        }
+
+        try (Writer writer = new FileWriter(output)) {
+            writer.write(toJson(results, warmupIterations, iterations));
+            System.out.println("Results written to " + output);
+        }
+        catch (IOException e) {
+            System.out.println(e);
+        }
+        // Never true, but the JIT cannot know that
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    /**
+     * Reads the bundled puzzles: the single boards used by ImprovementMain, then every board of
+     * puzzles.txt, then the built-in hard board. Files that are missing or invalid are skipped.
+     */
+    static Map<String, int[][]> readBoards() {
+        Map<String, int[][]> boards = new LinkedHashMap<>();
+        String[] names = {"4x4", "9x9", "9x9mult", "16x16"};
+        int[] dimensions = {4, 9, 9, 16};
+        for (int i = 0; i < names.length; i++) {
+            int[][] board = ImprovementMain.readImprovedSudokuFiles(names[i] + ".txt", dimensions[i]);
+            if (board != null) {
+                boards.put(names[i], board);
+            }
+        }
+        List<int[][]> puzzles = SudokuMain.readSudokuFile("puzzles.txt");
+        for (int i = 0; i < puzzles.size(); i++) {
+            boards.put("puzzles#" + (i + 1), puzzles.get(i));
+        }
+        int[][] hard = new int[9][9];
+        for (int i = 0; i < HARD_PUZZLE.length(); i++) {
+            hard[i / 9][i % 9] = HARD_PUZZLE.charAt(i) - '0';
+        }
+        boards.put("hard", hard);
+        return boards;
+    }
+
+    /**
+     * One full solve per operation, building the graph first as the mains do.
+     * The depth limit is the number of cells, which never cuts a search short.
+     */
+    private static void addSolverBenchmarks(List<Benchmark> benchmarks, String board, int[][] grid) {
+        int depthLimit = grid.length * grid.length;
+        benchmarks.add(new Benchmark("BFSSolver.solve", board, () -> {
+            BFSSolver solver = new BFSSolver();
+            solver.solve(new SudokuGraph(grid));
+            return solver.getSolutions().size();
+        }));
+        benchmarks.add(new Benchmark("DLSSolver.solve", board, () -> {
+            DLSSolver solver = new DLSSolver();
+            solver.solve(new SudokuGraph(grid), depthLimit);
+            return solver.getSolutions().size();
+        }));
+        benchmarks.add(new Benchmark("ImprovementBFS.solve", board, () -> {
+            ImprovementBFS solver = new ImprovementBFS();
+            solver.solve(new SudokuGraph(grid), 5);
+            return solver.getSolutions().size();
+        }));
+        // The level-synchronous mode, to show how it scales against the single-threaded solve above
+        for (int threads : parallelThreadCounts()) {
+            SolverPool pool = BFS_POOLS.computeIfAbsent(threads, SolverPool::workStealing);
+            benchmarks.add(new Benchmark("ImprovementBFS.solve/" + threads + "threads", board, () -> {
+                ImprovementBFS solver = new ImprovementBFS(pool);
+                solver.solve(new SudokuGraph(grid), 5);
+                return solver.getSolutions().size();
+            }));
+            // BFS only until every thread has seeds, then DLS on each seed
+            benchmarks.add(new Benchmark("HybridSolver.solve/" + threads + "threads", board, () -> {
+                HybridSolver solver = new HybridSolver(pool);
+                solver.solve(new SudokuGraph(grid), 5);
+                return solver.getSolutions().size();
+            }));
+        }
+        benchmarks.add(new Benchmark("IterativeDeepeningSolver.solve", board, () -> {
+            IterativeDeepeningSolver solver = new IterativeDeepeningSolver();
+            solver.solve(new SudokuGraph(grid), 5);
+            return solver.getSolutions().size();
+        }));
+        benchmarks.add(new Benchmark("SMAStarSolver.solve", board, () -> {
+            SMAStarSolver solver = new SMAStarSolver();
+            solver.solve(new SudokuGraph(grid), 5);
+            return solver.getSolutions().size();
+        }));
+        benchmarks.add(new Benchmark("ImprovementDLS.solve", board, () -> {
+            ImprovementDLS solver = new ImprovementDLS();
+            solver.solve(new SudokuGraph(grid), depthLimit);
+            return solver.getSolutions().size();
+        }));
+        // The CDCL engine and Dancing Links, each stopping at its first solution
+        benchmarks.add(new Benchmark("SatSolver.solve", board, () -> {
+            SatSolver solver = new SatSolver();
+            solver.solve(new SudokuGraph(grid), depthLimit);
+            return solver.getSolutions().size();
+        }));
+        benchmarks.add(new Benchmark("DancingLinksSolver.solve", board, () -> {
+            DancingLinksSolver solver = new DancingLinksSolver();
+            solver.solve(new SudokuGraph(grid), 1);
+            return solver.getSolutions().size();
+        }));
+    }
+
+    /**
+     * Thread counts for the parallel benchmarks: 2, 4, 8, ... up to the number of processors, and
+     * the number of processors itself. 2 is always run, so the parallel overhead shows on one core too.
+     */
+    private static List<Integer> parallelThreadCounts() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        List<Integer> counts = new ArrayList<>();
+        for (int threads = 2; threads < processors; threads *= 2) {
+            counts.add(threads);
+        }
+        counts.add(Math.max(2, processors));
+        return counts;
+    }
+
+    /**
+     * DLSSolver with every other pairing of cell and value order (first-empty with ascending
+     * values is DLSSolver.solve above), so the orderings can be compared on the same search.
+     */
+    private static void addOrderingBenchmarks(List<Benchmark> benchmarks, String board, int[][] grid) {
+        int depthLimit = grid.length * grid.length;
+        for (CellOrder cellOrder : CellOrder.values()) {
+            for (ValueOrder valueOrder : ValueOrder.values()) {
+                // Random value orders give a different search every run, so there is nothing stable to time
+                if (cellOrder == CellOrder.FIRST_EMPTY && valueOrder == ValueOrder.ASCENDING
+                        || valueOrder == ValueOrder.RANDOM) {
+                    continue;
+                }
+                String name = "DLSSolver." + shortName(cellOrder) + "/" + shortName(valueOrder);
+                benchmarks.add(new Benchmark(name, board, () -> {
+                    DLSSolver solver = new DLSSolver();
+                    solver.setCellOrder(cellOrder);
+                    solver.setValueOrder(valueOrder);
+                    solver.solve(new SudokuGraph(grid), depthLimit);
+                    return solver.getSolutions().size();
+                }));
+            }
+        }
+    }
+
+    // Short names that keep the benchmark column narrow
+    private static String shortName(CellOrder cellOrder) {
+        switch (cellOrder) {
+            case MOST_CONSTRAINED: return "mrv";
+            case MOST_CONSTRAINED_DEGREE: return "mrv+deg";
+            case DOM_WDEG: return "domwdeg";
+            default: return "first";
+        }
+    }
+
+    private static String shortName(ValueOrder valueOrder) {
+        return valueOrder == ValueOrder.LEAST_CONSTRAINING ? "lcv" : "asc";
+    }
+
+    /**
+     * Microbenchmarks of the SudokuGraph calls the solvers lean on.
+     * isValid and validValueList are measured as one sweep over every cell of the board.
+     */
+    private static void addGraphBenchmarks(List<Benchmark> benchmarks, String board, int[][] grid) {
+        SudokuGraph graph = new SudokuGraph(grid);
+        int size = grid.length;
+        benchmarks.add(new Benchmark("SudokuGraph.new", board, () -> new SudokuGraph(grid).getEmptyCellCount()));
+        benchmarks.add(new Benchmark("SudokuGraph.copyGrid", board, () -> graph.copyGrid().length));
+        benchmarks.add(new Benchmark("SudokuGraph.isValid", board, () -> {
+            long valid = 0;
+            for (int row = 0; row < size; row++) {
+                for (int col = 0; col < size; col++) {
+                    for (int value = 1; value <= size; value++) {
+                        if (graph.isValid(row, col, value)) {
+                            valid++;
+                        }
+                    }
+                }
+            }
+            return valid;
+        }));
+        benchmarks.add(new Benchmark("SudokuGraph.validValueList", board, () -> {
+            long values = 0;
+            for (int row = 0; row < size; row++) {
+                for (int col = 0; col < size; col++) {
+                    values += graph.validValueList(row, col).size();
+                }
+            }
+            return values;
+        }));
+    }
+
+    /**
+     * Runs the warmup iterations, then the measured ones, and summarises the measured ones.
+     */
+    private static Result run(Benchmark benchmark, int warmupIterations, int iterations, long iterationMillis) {
+        for (int i = 0; i < warmupIterations; i++) {
+            runIteration(benchmark.operation, iterationMillis);
+        }
+        double[] rawData = new double[iterations];
+        for (int i = 0; i < iterations; i++) {
+            rawData[i] = runIteration(benchmark.operation, iterationMillis);
+        }
+        return new Result(benchmark, rawData);
+    }
+
+    /**
+     * Runs the operation back to back until the iteration time is used up.
+     * @return the average nanoseconds per operation
+     */
+    private static double runIteration(LongSupplier operation, long iterationMillis) {
+        long start = System.nanoTime();
+        long end = start + iterationMillis * 1_000_000L;
+        long operations = 0;
+        long now;
+        do {
+            sink += operation.getAsLong();
+            operations++;
+            now = System.nanoTime();
+        } while (now < end);
+        return (double) (now - start) / operations;
+    }
+
+    /**
+     * Writes the results as a JMH-style JSON array.
+     */
+    private static String toJson(List<Result> results, int warmupIterations, int iterations) {
+        StringBuilder json = new StringBuilder("[\n");
+        for (int i = 0; i < results.size(); i++) {
+            Result result = results.get(i);
+            json.append("    {\n");
+            json.append("        \"benchmark\" : \"").append(result.benchmark.name).append("\",\n");
+            json.append("        \"mode\" : \"avgt\",\n");
+            json.append("        \"warmupIterations\" : ").append(warmupIterations).append(",\n");
+            json.append("        \"measurementIterations\" : ").append(iterations).append(",\n");
+            json.append("        \"params\" : {\n");
+            json.append("            \"board\" : \"").append(result.benchmark.board).append("\"\n");
+            json.append("        },\n");
+            json.append("        \"primaryMetric\" : {\n");
+            json.append("            \"score\" : ").append(format(result.score)).append(",\n");
+            json.append("            \"scoreError\" : ").append(format(result.error)).append(",\n");
+            json.append("            \"scoreUnit\" : \"ns/op\",\n");
+            json.append("            \"rawData\" : [\n                [");
+            for (int j = 0; j < result.rawData.length; j++) {
+                json.append(j == 0 ? "" : ", ").append(format(result.rawData[j]));
+            }
+            json.append("]\n            ]\n");
+            json.append("        }\n");
+            json.append(i == results.size() - 1 ? "    }\n" : "    },\n");
+        }
+        return json.append("]\n").toString();
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    // A named operation on one board
+    private static class Benchmark {
+        private final String name;
+        private final String board;
+        private final LongSupplier operation;
+
+        Benchmark(String name, String board, LongSupplier operation) {
+            this.name = name;
+            this.board = board;
+            this.operation = operation;
+        }
+    }
+
+    // Average time per operation over the measured iterations
+    private static class Result {
+        private final Benchmark benchmark;
+        private final double[] rawData;
+        private final double score;
+        private final double error;
+
+        Result(Benchmark benchmark, double[] rawData) {
+            this.benchmark = benchmark;
+            this.rawData = rawData;
+            double sum = 0;
+            for (double value : rawData) {
+                sum += value;
+            }
+            score = sum / rawData.length;
+            double squares = 0;
+            for (double value : rawData) {
+                squares += (value - score) * (value - score);
+            }
+            double deviation = rawData.length > 1 ? Math.sqrt(squares / (rawData.length - 1)) : 0;
+            error = Z_99_9 * deviation / Math.sqrt(rawData.length);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A long-lived set of worker threads that parallel solvers can share across many solves, instead
+ * of starting and stopping a thread pool for every board. Close it when the batch is done.
+ *
+ * Three kinds are available:
+ *  - workStealing: a ForkJoinPool, which lets ImprovementDLS split subtrees adaptively
+ *  - fixed: a fixed number of threads with a bounded queue; when the queue is full the
+ *    submitting thread runs the task itself, which slows the producer down
+ *  - virtualThreads: one virtual thread per task (needs Java 21 or newer)
+ */
+public class SolverPool implements AutoCloseable {
+    private static final long CLOSE_WAIT_SECONDS = 10;
+
+    private final ExecutorService executor;
+    private final int parallelism;
+
+    private SolverPool(ExecutorService executor, int parallelism) {
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Creates a work-stealing pool with one worker per available processor.
+     */
+    public static SolverPool workStealing() {
+        return workStealing(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a work-stealing pool with the given number of workers.
+     */
+    public static SolverPool workStealing(int parallelism) {
+        return new SolverPool(new ForkJoinPool(parallelism), parallelism);
+    }
+
+    /**
+     * Creates a pool of a fixed number of threads whose queue holds at most queueDepth tasks.
+     */
+    public static SolverPool fixed(int threads, int queueDepth) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueDepth), new SolverThreadFactory(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        return new SolverPool(executor, threads);
+    }
+
+    /**
+     * Creates a pool that starts a virtual thread for every task.
+     * @throws UnsupportedOperationException if the running JVM has no virtual threads
+     */
+    public static SolverPool virtualThreads() {
+        try {
+            // Looked up at runtime so the project still compiles and runs on Java 17
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ExecutorService executor = (ExecutorService) factory.invoke(null);
+            return new SolverPool(executor, Runtime.getRuntime().availableProcessors());
+        }
+        catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or newer", e);
+        }
+    }
+
+    /**
+     * Checks whether this pool can run fork/join tasks, so solvers can split work adaptively.
+     */
+    public boolean isWorkStealing() {
+        return executor instanceof ForkJoinPool;
+    }
+
+    /**
+     * Gets the underlying ForkJoinPool.
+     * @throws IllegalStateException if this is not a work-stealing pool
+     */
+    public ForkJoinPool getForkJoinPool() {
+        if (!isWorkStealing()) {
+            throw new IllegalStateException("Not a work-stealing pool");
+        }
+        return (ForkJoinPool) executor;
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Gets the number of tasks that the pool is meant to run at once.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Lets running tasks finish, then stops the threads.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(CLOSE_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        }
+        catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Daemon threads with readable names, so a forgotten pool never keeps the JVM alive
+    private static class SolverThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "sudoku-solver-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * A private temporary directory of memory-mapped files of longs, where a BFS frontier or a
+ * visited set puts what no longer fits in its in-heap window.
+ *
+ * Files are written and read through mappings, so the copying is done by the operating system's
+ * page cache rather than through a stream. The bytes written and read, and the number of files
+ * written, are counted so solvers can report how much I/O a search did. Closing the directory
+ * deletes it with every file still in it.
+ *
+ * The search loops cannot stop for a checked exception, so I/O errors are thrown as
+ * UncheckedIOException.
+ */
+public class SpillDirectory implements AutoCloseable {
+    private final Path directory;
+    private long filesWritten;
+    private long bytesWritten;
+    private long bytesRead;
+
+    /**
+     * Creates a new directory inside parent (the system temp directory if parent is null).
+     */
+    public SpillDirectory(Path parent) {
+        try {
+            directory = parent == null ? Files.createTempDirectory("sudoku-spill")
+                    : Files.createTempDirectory(parent, "sudoku-spill");
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes length longs from words to a new file.
+     * @return the file, for read, map, and delete
+     */
+    public Path write(long[] words, int offset, int length) {
+        Path file = create(length);
+        mapForWriting(file).put(words, offset, length);
+        return file;
+    }
+
+    /**
+     * Creates a new file of length longs, for output that is built a piece at a time through
+     * mapForWriting. The whole file counts as written.
+     */
+    public Path create(int length) {
+        try {
+            Path file = Files.createTempFile(directory, "segment", ".bin");
+            // Mapping a region past the end of a file makes the file that long
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) length * Long.BYTES);
+            }
+            filesWritten++;
+            bytesWritten += (long) length * Long.BYTES;
+            return file;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Maps a whole file for writing in place.
+     */
+    public LongBuffer mapForWriting(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()).asLongBuffer();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Copies a whole file into dest, starting at offset.
+     * @return the number of longs read
+     */
+    public int read(Path file, long[] dest, int offset) {
+        LongBuffer words = map(file);
+        int length = words.remaining();
+        words.get(dest, offset, length);
+        bytesRead += (long) length * Long.BYTES;
+        return length;
+    }
+
+    /**
+     * Maps a file for reading in place. The caller counts what it reads with countRead.
+     */
+    public LongBuffer map(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asLongBuffer();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Adds longs that were read through a mapping to the bytes read.
+     */
+    public void countRead(long words) {
+        bytesRead += words * Long.BYTES;
+    }
+
+    public void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Gets the number of files written since the directory was created.
+     */
+    public long getFilesWritten() {
+        return filesWritten;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Deletes every file that is left, then the directory.
+     */
+    @Override
+    public void close() {
+        try (Stream<Path> files = Files.list(directory)) {
+            Iterator<Path> left = files.iterator();
+            while (left.hasNext()) {
+                Files.deleteIfExists(left.next());
+            }
+            Files.deleteIfExists(directory);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+import java.nio.LongBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hash set of board hashes that keeps at most a fixed number of keys in the heap and spills the
+ * rest to disk, for BFS searches whose visited set outgrows the heap.
+ *
+ * New keys go into the in-heap table. When the table is full, its keys are sorted and written
+ * out as a run, a memory-mapped file that lookups binary search in place, and the table starts
+ * over empty. A new run is merged with the run before it while that one is less than twice as
+ * long, like the levels of a log-structured merge tree, so there are only about log2 of
+ * (spilled keys / table size) runs for a lookup to search, and each key is rewritten about as
+ * many times. Only hashes are kept, so unlike LongHashSet this set cannot confirm a
+ * match against the packed cells. Close it to delete its files.
+ */
+public class SpillingLongHashSet extends LongHashSet implements AutoCloseable {
+    // Longest run one mapping can hold
+    private static final long MAX_RUN_KEYS = Integer.MAX_VALUE / Long.BYTES;
+
+    private final int maxInHeapKeys;
+    private final SpillDirectory spill;
+    private final List<Path> runFiles = new ArrayList<>();
+    private final List<LongBuffer> runs = new ArrayList<>(); // Sorted keys of each run, mapped
+    private long spilledKeys;
+
+    /**
+     * Creates a set that keeps up to maxInHeapKeys keys in the heap and writes the rest to a new
+     * directory inside spillDirectory (the system temp directory if it is null).
+     */
+    public SpillingLongHashSet(int maxInHeapKeys, Path spillDirectory) {
+        this.maxInHeapKeys = Math.max(1, maxInHeapKeys);
+        this.spill = new SpillDirectory(spillDirectory);
+    }
+
+    /**
+     * Adds a key; the packed cells are ignored.
+     * @return true if the key was not already in the set
+     */
+    @Override
+    public boolean add(long key, long[] packed, int offset) {
+        if (contains(key)) {
+            return false;
+        }
+        super.add(key, packed, offset);
+        if (super.size() >= maxInHeapKeys) {
+            spillTable();
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a key is in the set, in the heap or in any run.
+     */
+    @Override
+    public boolean contains(long key) {
+        if (super.contains(key)) {
+            return true;
+        }
+        for (LongBuffer run : runs) {
+            if (inRun(run, key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Binary search of one sorted run
+    private boolean inRun(LongBuffer run, long key) {
+        int low = 0;
+        int high = run.limit() - 1;
+        int probes = 0;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleKey = run.get(middle);
+            probes++;
+            if (middleKey < key) {
+                low = middle + 1;
+            } else if (middleKey > key) {
+                high = middle - 1;
+            } else {
+                spill.countRead(probes);
+                return true;
+            }
+        }
+        spill.countRead(probes);
+        return false;
+    }
+
+    // Write the in-heap keys out as a sorted run and empty the table
+    private void spillTable() {
+        long[] keys = toArray();
+        Arrays.sort(keys);
+        Path file = spill.write(keys, 0, keys.length);
+        runFiles.add(file);
+        runs.add(spill.map(file));
+        spilledKeys += keys.length;
+        clear();
+        int last = runs.size() - 1;
+        while (last > 0 && runs.get(last - 1).limit() < 2L * runs.get(last).limit()
+                && (long) runs.get(last - 1).limit() + runs.get(last).limit() <= MAX_RUN_KEYS) {
+            mergeLastRuns();
+            last--;
+        }
+    }
+
+    // Merge the two newest runs into one. A key is never in two runs, so this is a plain merge,
+    // written straight into the mapping of the new file
+    private void mergeLastRuns() {
+        int last = runs.size() - 1;
+        LongBuffer older = runs.get(last - 1);
+        LongBuffer newer = runs.get(last);
+        int length = older.limit() + newer.limit();
+        Path file = spill.create(length);
+        LongBuffer merged = spill.mapForWriting(file);
+        int i = 0;
+        int j = 0;
+        while (i < older.limit() || j < newer.limit()) {
+            if (j == newer.limit() || (i < older.limit() && older.get(i) < newer.get(j))) {
+                merged.put(older.get(i++));
+            } else {
+                merged.put(newer.get(j++));
+            }
+        }
+        spill.countRead(length);
+
+        spill.delete(runFiles.remove(last));
+        spill.delete(runFiles.remove(last - 1));
+        runs.remove(last);
+        runs.remove(last - 1);
+        runFiles.add(file);
+        runs.add(spill.map(file));
+    }
+
+    /**
+     * Gets the number of keys, in the heap and on disk.
+     */
+    @Override
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, super.size() + spilledKeys);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Gets the number of run files written so far, merged runs included.
+     */
+    public long getSpillCount() {
+        return spill.getFilesWritten();
+    }
+
+    public long getSpillBytesWritten() {
+        return spill.getBytesWritten();
+    }
+
+    /**
+     * Gets the bytes read back from the runs so far, by lookups and merges.
+     */
+    public long getSpillBytesRead() {
+        return spill.getBytesRead();
+    }
+
+    /**
+     * Deletes the run files. The set cannot be used afterwards.
+     */
+    @Override
+    public void close() {
+        runs.clear();
+        spill.close();
+    }
+}
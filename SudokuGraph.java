@@ -11,57 +11,51 @@ import java.util.*;
 public class SudokuGraph {
     private final int size; // Size of the grid (standard is 9)
     private final int boxSize; // Size of each box (standard is 3)
-    private final int[][] grid;
-    private final List<List<Integer>> adjacencyList;
-    private final int totalCells;
+    private final int[] cells; // Cell values, row-major (cellId = row * size + col), 0 for empty
+    // Peers, units, and box indexes are the same for every board of this size, so they are shared
+    private final SudokuTopology topology;
+
+    // Constraint state: bit (value - 1) is set when value is already used in that row, column, or box.
+    // These are kept up to date by setValue, so candidate checks never have to rescan the grid.
+    // The row masks come first, then the column masks, then the box masks, all in one array.
+    private final long[] masks;
+    private final long fullMask; // Every value from 1 to size
+    private long hash; // Zobrist hash of the grid, updated by setValue
+    private int emptyCells; // Number of cells that are 0, updated by setValue
+    // Bit (cellId % 64) of word (cellId / 64) is set while the cell is empty, so the scans for
+    // empty cells skip 64 filled cells at a time. On 25x25 and 36x36 boards, where the grid is
+    // 10 and 21 words long and most cells are filled for most of a search, this is what keeps
+    // the per-node cost down.
+    private final long[] emptyWords;
+    // Cells filled by propagate, in order, so a search can undo them with undoTo
+    private int[] trail;
+    private int trailSize;
+    private int conflictCell = -1; // Cell left without candidates by the last failed propagate
 
-    public SudokuGraph(int[][] initialGrid) {
-        this.grid = initialGrid;
-        this.size = initialGrid.length;
-        this.boxSize = (int) Math.sqrt(size);
-        this.totalCells = size * size;
-        
-        // Initialize adjacency list for the graph
-        adjacencyList = new ArrayList<>(totalCells);
-        for (int i = 0; i < totalCells; i++) {
-            adjacencyList.add(new ArrayList<>());
-        }
-        
-        buildGraph();
-    }
-    
     /**
-     * Builds the graph representation of the Sudoku puzzle.
-     * Each cell is connected to cells in the same row, column, and box.
+     * Builds a graph from a grid. The values are copied into the graph, so later changes to
+     * the graph do not touch initialGrid (and the other way around).
      */
-    private void buildGraph() {
+    public SudokuGraph(int[][] initialGrid) {
+        this.size = initialGrid.length;
+        this.topology = SudokuTopology.forSize(size);
+        this.boxSize = topology.getBoxSize();
+
+        // Record the values that are already on the board
+        cells = new int[size * size];
+        masks = new long[3 * size];
+        fullMask = size == 64 ? -1L : (1L << size) - 1;
+        emptyWords = new long[(size * size + 63) / 64];
         for (int row = 0; row < size; row++) {
             for (int col = 0; col < size; col++) {
                 int cellId = row * size + col;
-                
-                // Connect to cells in the same row
-                for (int c = 0; c < size; c++) {
-                    if (c != col) {
-                        adjacencyList.get(cellId).add(row * size + c);
-                    }
-                }
-                
-                // Connect to cells in the same column
-                for (int r = 0; r < size; r++) {
-                    if (r != row) {
-                        adjacencyList.get(cellId).add(r * size + col);
-                    }
-                }
-                
-                // Connect to cells in the same box
-                int boxRow = row / boxSize;
-                int boxCol = col / boxSize;
-                for (int r = boxRow * boxSize; r < (boxRow + 1) * boxSize; r++) {
-                    for (int c = boxCol * boxSize; c < (boxCol + 1) * boxSize; c++) {
-                        if (r != row && c != col) {
-                            adjacencyList.get(cellId).add(r * size + c);
-                        }
-                    }
+                cells[cellId] = initialGrid[row][col];
+                if (cells[cellId] != 0) {
+                    markUsed(cellId, cells[cellId]);
+                    hash ^= topology.getZobristKey(cellId, cells[cellId]);
+                } else {
+                    emptyCells++;
+                    emptyWords[cellId >>> 6] |= 1L << cellId;
                 }
             }
         }
@@ -73,16 +67,28 @@ public class SudokuGraph {
     public int[][] copyGrid() {
         int[][] copy = new int[size][size];
         for (int i = 0; i < size; i++) {
-            System.arraycopy(grid[i], 0, copy[i], 0, size);
+            System.arraycopy(cells, i * size, copy[i], 0, size);
         }
         return copy;
     }
     
     /**
      * Gets the adjacency list for a specific cell.
+     * This builds a new list from the shared topology; hot paths should read getTopology() directly.
      */
     public List<Integer> getAdjacent(int cellId) {
-        return adjacencyList.get(cellId);
+        List<Integer> adjacent = new ArrayList<>(topology.getPeerCount());
+        for (int i = 0; i < topology.getPeerCount(); i++) {
+            adjacent.add(topology.getPeer(cellId, i));
+        }
+        return adjacent;
+    }
+
+    /**
+     * Gets the shared peer/unit/box layout for this board size.
+     */
+    public SudokuTopology getTopology() {
+        return topology;
     }
     
     /**
@@ -103,84 +109,269 @@ public class SudokuGraph {
      * Gets the value at a specific cell.
      */
     public int getValue(int row, int col) {
-        return grid[row][col];
+        return cells[row * size + col];
+    }
+
+    /**
+     * Gets the value of a cell by its id (row * size + col).
+     */
+    public int getCell(int cellId) {
+        return cells[cellId];
     }
     
     /**
      * Sets the value at a specific cell.
+     * Use 0 to clear the cell. The row, column, and box masks and the hash are updated in O(1).
      */
     public void setValue(int row, int col, int value) {
-        grid[row][col] = value;
+        setCell(row * size + col, value);
     }
-    
+
     /**
-     * Checks if a value is valid at a specific position.
+     * Sets the value of a cell by its id (row * size + col). Use 0 to clear the cell.
+     * This is the assign/unassign step of the searches: it only touches three masks, the hash,
+     * and the empty cell count, and never allocates.
      */
-    public boolean isValid(int row, int col, int value) {
-        // Check row
-        for (int c = 0; c < size; c++) {
-            if (grid[row][c] == value) {
-                return false;
-            }
+    public void setCell(int cellId, int value) {
+        int oldValue = cells[cellId];
+        hash ^= topology.getZobristKey(cellId, oldValue) ^ topology.getZobristKey(cellId, value);
+        if (oldValue != 0) {
+            long keep = ~(1L << (oldValue - 1));
+            masks[topology.rowOf(cellId)] &= keep;
+            masks[size + topology.colOf(cellId)] &= keep;
+            masks[2 * size + topology.boxOf(cellId)] &= keep;
         }
-        
-        // Check column
-        for (int r = 0; r < size; r++) {
-            if (grid[r][col] == value) {
-                return false;
-            }
+        cells[cellId] = value;
+        if (value != 0) {
+            markUsed(cellId, value);
         }
-        
-        // Check box
-        int boxRow = row - row % boxSize;
-        int boxCol = col - col % boxSize;
-        for (int r = boxRow; r < boxRow + boxSize; r++) {
-            for (int c = boxCol; c < boxCol + boxSize; c++) {
-                if (grid[r][c] == value) {
-                    return false;
-                }
-            }
+        if (oldValue == 0 && value != 0) {
+            emptyCells--;
+            emptyWords[cellId >>> 6] &= ~(1L << cellId);
+        } else if (oldValue != 0 && value == 0) {
+            emptyCells++;
+            emptyWords[cellId >>> 6] |= 1L << cellId;
         }
-        
-        return true;
+    }
+
+    /**
+     * Gets the Zobrist hash of the current grid.
+     * Equal grids always have equal hashes; different grids collide with probability about 2^-64.
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Adds a value to the row, column, and box masks of a cell.
+     */
+    private void markUsed(int cellId, int value) {
+        long bit = 1L << (value - 1);
+        masks[topology.rowOf(cellId)] |= bit;
+        masks[size + topology.colOf(cellId)] |= bit;
+        masks[2 * size + topology.boxOf(cellId)] |= bit;
+    }
+
+    /**
+     * Gets the index of the box that a cell belongs to (boxes are numbered row-major).
+     */
+    public int getBoxIndex(int row, int col) {
+        return topology.boxOf(row, col);
+    }
+    
+    /**
+     * Checks if a value is valid at a specific position.
+     */
+    public boolean isValid(int row, int col, int value) {
+        return (getCandidates(row, col) & (1L << (value - 1))) != 0;
+    }
+
+    /**
+     * Gets the values that can be placed in a cell as a bitmask.
+     * Bit (value - 1) is set when value does not appear in the cell's row, column, or box.
+     */
+    public long getCandidates(int row, int col) {
+        return fullMask & ~(masks[row] | masks[size + col] | masks[2 * size + getBoxIndex(row, col)]);
+    }
+
+    /**
+     * Gets the candidate mask of a cell by its id (row * size + col).
+     */
+    public long getCandidates(int cellId) {
+        return getCandidates(topology.rowOf(cellId), topology.colOf(cellId));
+    }
+
+    /**
+     * Gets the number of values that can be placed in a cell.
+     */
+    public int countCandidates(int row, int col) {
+        return Long.bitCount(getCandidates(row, col));
+    }
+
+    /**
+     * Gets the number of values that can be placed in a cell by its id. The masks behind it are
+     * kept up to date by setCell, so this is one popcount, with nothing rescanned.
+     */
+    public int getCandidateCount(int cellId) {
+        return Long.bitCount(getCandidates(cellId));
     }
 
     // Given a row and column, return the values that can be placed in that location
     public List<Integer> validValueList (int row, int col) {
         List<Integer> validValues = new ArrayList<>();
 
-        for (int i = 1; i <= size; i++) {
-            if (isValid(row, col, i)) {
-                validValues.add(i);
-            }
+        for (long mask = getCandidates(row, col); mask != 0; mask &= mask - 1) {
+            validValues.add(Long.numberOfTrailingZeros(mask) + 1);
         }
 
         return validValues;
     }
 
-    public boolean isPuzzleSolved () {
-        for (int row[] : grid) {
-            for (int col : row) {
-                if (col == 0) {
+    /**
+     * Fills in every value that is forced by the current board, until nothing changes:
+     * naked singles (an empty cell with one candidate) and hidden singles (a value that fits in
+     * only one cell of a row, column, or box). Every filled cell is recorded on the trail.
+     * @return false if the board has a contradiction (an empty cell with no candidates).
+     *         Cells filled before the contradiction was found stay on the board; undo them
+     *         with undoTo.
+     */
+    public boolean propagate() {
+        if (trail == null) {
+            trail = new int[size * size];
+        }
+        int unitCount = topology.getUnitCount();
+        conflictCell = -1;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+
+            // Naked singles
+            for (int cellId = nextEmptyCell(0); cellId >= 0; cellId = nextEmptyCell(cellId + 1)) {
+                long candidates = getCandidates(cellId);
+                if (candidates == 0) {
+                    conflictCell = cellId;
                     return false;
                 }
+                if ((candidates & (candidates - 1)) == 0) {
+                    fill(cellId, Long.numberOfTrailingZeros(candidates) + 1);
+                    changed = true;
+                }
+            }
+
+            // Hidden singles, one unit at a time
+            for (int unit = 0; unit < unitCount; unit++) {
+                // The masks are laid out like the units, so a unit's mask is the values already in it
+                long placed = masks[unit];
+                if (placed == fullMask) {
+                    continue; // Every cell of the unit is filled
+                }
+                long once = 0; // Values that are a candidate of at least one empty cell
+                long twice = 0; // Values that are a candidate of at least two empty cells
+                for (int i = 0; i < size; i++) {
+                    int cellId = topology.getUnitCell(unit, i);
+                    if (cells[cellId] == 0) {
+                        long candidates = getCandidates(cellId);
+                        twice |= once & candidates;
+                        once |= candidates;
+                    }
+                }
+
+                for (long hidden = once & ~twice & ~placed; hidden != 0; hidden &= hidden - 1) {
+                    long bit = hidden & -hidden;
+                    // An earlier fill in this unit may have taken the cell; the naked single
+                    // pass then reports the contradiction if one is left without candidates
+                    for (int i = 0; i < size; i++) {
+                        int cellId = topology.getUnitCell(unit, i);
+                        if (cells[cellId] == 0 && (getCandidates(cellId) & bit) != 0) {
+                            fill(cellId, Long.numberOfTrailingZeros(bit) + 1);
+                            changed = true;
+                            break;
+                        }
+                    }
+                }
             }
         }
         return true;
     }
+
+    // Set a forced value and remember it on the trail
+    private void fill(int cellId, int value) {
+        setCell(cellId, value);
+        trail[trailSize++] = cellId;
+    }
+
+    /**
+     * Gets the empty cell that was left without candidates when propagate last returned false,
+     * or -1 if the last propagate found no contradiction.
+     */
+    public int getConflictCell() {
+        return conflictCell;
+    }
+
+    /**
+     * Gets the current length of the trail of cells filled by propagate.
+     * Pass it to undoTo later to clear everything propagate filled in between.
+     */
+    public int getTrailSize() {
+        return trailSize;
+    }
+
+    /**
+     * Gets the cell that propagate filled at a position of the trail, for 0 <= index < getTrailSize().
+     */
+    public int getTrailCell(int index) {
+        return trail[index];
+    }
+
+    /**
+     * Clears the cells that propagate filled since the trail had the given length.
+     */
+    public void undoTo(int mark) {
+        while (trailSize > mark) {
+            int cellId = trail[--trailSize];
+            setCell(cellId, 0);
+        }
+    }
+
+    public boolean isPuzzleSolved () {
+        return emptyCells == 0;
+    }
+
+    /**
+     * Gets the number of empty cells left on the board.
+     */
+    public int getEmptyCellCount() {
+        return emptyCells;
+    }
     
     /**
      * Finds the next empty cell.
      * @return int[] with row and column, or null if no empty cell exists
      */
     public int[] findEmptyCell() {
-        for (int row = 0; row < size; row++) {
-            for (int col = 0; col < size; col++) {
-                if (grid[row][col] == 0) {
-                    return new int[]{row, col};
-                }
+        int cellId = nextEmptyCell(0);
+        if (cellId < 0) {
+            return null; // No empty cell found
+        }
+        return new int[]{cellId / size, cellId % size};
+    }
+
+    /**
+     * Finds the first empty cell at or after fromCellId, without allocating.
+     * @return the cell id, or -1 if every cell from there on is filled
+     */
+    public int nextEmptyCell(int fromCellId) {
+        if (fromCellId >= cells.length) {
+            return -1;
+        }
+        int w = fromCellId >>> 6;
+        long word = emptyWords[w] & (-1L << fromCellId);
+        while (word == 0) {
+            if (++w == emptyWords.length) {
+                return -1;
             }
+            word = emptyWords[w];
         }
-        return null; // No empty cell found
+        return (w << 6) + Long.numberOfTrailingZeros(word);
     }
 }
@@ -59,6 +59,8 @@ public class SudokuMain {
                             
             if (bfsSolved) {
                 System.out.println("BFS found " + bfsSolver.getSolutions().size() + " solution(s) in " + (bfsEndTime - bfsStartTime) + "ns");
+                System.out.println("Peak BFS frontier: " + bfsSolver.getPeakFrontierSize() + " states (" +
+                                    bfsSolver.getPeakFrontierBytes() + " bytes)");
                 System.out.println("First solution:");
                 //String firstSolution = bfsSolver.getSolutions().get(0);
                 printGrid(bfsSolver.getSolutions().get(0));
@@ -66,10 +68,27 @@ public class SudokuMain {
                 System.out.println("BFS could not solve the puzzle.");
             }
 
+            // Solve using Dancing Links, finding every solution
+            System.out.println("\nSolving with Dancing Links...");
+            SudokuGraph dlxSudokuGraph = new SudokuGraph(sudokuBoards.get(i));
+            DancingLinksSolver dlxSolver = new DancingLinksSolver();
+            long dlxStartTime = System.nanoTime();
+            boolean dlxSolved = dlxSolver.solve(dlxSudokuGraph, 0);
+            long dlxEndTime = System.nanoTime();
+
+            if (dlxSolved) {
+                System.out.println("Dancing Links found " + dlxSolver.getSolutions().size() + " solution(s) in " + (dlxEndTime - dlxStartTime) + "ns");
+                System.out.println("First solution:");
+                printGrid(dlxSolver.getSolutions().get(0));
+            } else {
+                System.out.println("Dancing Links could not solve the puzzle.");
+            }
+
             // Compare the algorithms
             System.out.println("\nComparison:");
             System.out.println("BFS Time: " + (bfsEndTime - bfsStartTime) + "ns");
             System.out.println("DLS Time: " + (dlsEndTime - dlsStartTime) + "ns");
+            System.out.println("Dancing Links Time: " + (dlxEndTime - dlxStartTime) + "ns");
 
             if (bfsSolved && dlsSolved) {
 
@@ -85,7 +104,7 @@ public class SudokuMain {
     }
 
     // Given input, read a file and return a list of sudoku boards
-    private static List<int[][]> readSudokuFile(String fileName) {
+    static List<int[][]> readSudokuFile(String fileName) {
         List <int[][]> sudokuBoards = new ArrayList<>();
 
         // Reference: https://www.geeksforgeeks.org/java-io-bufferedreader-class-java/
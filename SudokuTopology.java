@@ -0,0 +1,189 @@
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The fixed shape of a Sudoku board of one size: which cells are peers, which units (rows,
+ * columns, and boxes) each cell belongs to, and which box each cell is in.
+ * None of this depends on the values in the grid, so one instance is built per size and
+ * shared by every SudokuGraph of that size.
+ *
+ * Cells are numbered row-major (cellId = row * size + col). Units are numbered with the
+ * rows first, then the columns, then the boxes, so there are 3 * size units in total.
+ */
+public final class SudokuTopology {
+    // Candidates are one bit per value in a long, so this is the largest board the solvers can hold
+    public static final int MAX_SIZE = 64;
+
+    // One topology per board size, shared between threads
+    private static final Map<Integer, SudokuTopology> CACHE = new ConcurrentHashMap<>();
+
+    private final int size;
+    private final int boxSize;
+    private final int totalCells;
+    private final int peerCount; // Number of peers of every cell
+
+    private final int[] peers; // peerCount entries per cell, flattened
+    private final int[] rowOf;
+    private final int[] colOf;
+    private final int[] boxOf;
+    private final int[] units; // size cells per unit, flattened
+    private final long[] zobristKeys; // (size + 1) random keys per cell, the key for 0 is always 0
+
+    private SudokuTopology(int size) {
+        this.size = size;
+        this.boxSize = (int) Math.sqrt(size);
+        if (boxSize * boxSize != size) {
+            throw new IllegalArgumentException("Grid size must be a perfect square: " + size);
+        }
+        if (size > MAX_SIZE) {
+            throw new IllegalArgumentException("Grid size must be at most " + MAX_SIZE + ": " + size);
+        }
+        this.totalCells = size * size;
+        this.peerCount = 2 * (size - 1) + (boxSize - 1) * (boxSize - 1);
+
+        rowOf = new int[totalCells];
+        colOf = new int[totalCells];
+        boxOf = new int[totalCells];
+        for (int cellId = 0; cellId < totalCells; cellId++) {
+            rowOf[cellId] = cellId / size;
+            colOf[cellId] = cellId % size;
+            boxOf[cellId] = (rowOf[cellId] / boxSize) * boxSize + colOf[cellId] / boxSize;
+        }
+
+        units = new int[3 * size * size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                // Row i, column i, then box i (box cells are listed row-major)
+                units[i * size + j] = i * size + j;
+                units[(size + i) * size + j] = j * size + i;
+                int boxRow = (i / boxSize) * boxSize + j / boxSize;
+                int boxCol = (i % boxSize) * boxSize + j % boxSize;
+                units[(2 * size + i) * size + j] = boxRow * size + boxCol;
+            }
+        }
+
+        peers = new int[totalCells * peerCount];
+        buildPeers();
+
+        // Fixed seed, so the same board always hashes the same way between runs
+        zobristKeys = new long[totalCells * (size + 1)];
+        SplittableRandom random = new SplittableRandom(size);
+        for (int cellId = 0; cellId < totalCells; cellId++) {
+            for (int value = 1; value <= size; value++) {
+                zobristKeys[cellId * (size + 1) + value] = random.nextLong();
+            }
+        }
+    }
+
+    /**
+     * Gets the shared topology for a board size, building it the first time it is asked for.
+     */
+    public static SudokuTopology forSize(int size) {
+        return CACHE.computeIfAbsent(size, SudokuTopology::new);
+    }
+
+    /**
+     * Each cell is connected to cells in the same row, column, and box.
+     */
+    private void buildPeers() {
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                int cellId = row * size + col;
+                int next = cellId * peerCount;
+
+                // Connect to cells in the same row
+                for (int c = 0; c < size; c++) {
+                    if (c != col) {
+                        peers[next++] = row * size + c;
+                    }
+                }
+
+                // Connect to cells in the same column
+                for (int r = 0; r < size; r++) {
+                    if (r != row) {
+                        peers[next++] = r * size + col;
+                    }
+                }
+
+                // Connect to cells in the same box that were not already added above
+                int boxRow = row / boxSize;
+                int boxCol = col / boxSize;
+                for (int r = boxRow * boxSize; r < (boxRow + 1) * boxSize; r++) {
+                    for (int c = boxCol * boxSize; c < (boxCol + 1) * boxSize; c++) {
+                        if (r != row && c != col) {
+                            peers[next++] = r * size + c;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getBoxSize() {
+        return boxSize;
+    }
+
+    public int getTotalCells() {
+        return totalCells;
+    }
+
+    /**
+     * Gets the number of peers every cell has (the same for all cells).
+     */
+    public int getPeerCount() {
+        return peerCount;
+    }
+
+    /**
+     * Gets the i-th peer of a cell, for 0 <= i < getPeerCount().
+     */
+    public int getPeer(int cellId, int i) {
+        return peers[cellId * peerCount + i];
+    }
+
+    public int rowOf(int cellId) {
+        return rowOf[cellId];
+    }
+
+    public int colOf(int cellId) {
+        return colOf[cellId];
+    }
+
+    public int boxOf(int cellId) {
+        return boxOf[cellId];
+    }
+
+    /**
+     * Gets the box index of a row and column (boxes are numbered row-major).
+     */
+    public int boxOf(int row, int col) {
+        return boxOf[row * size + col];
+    }
+
+    /**
+     * Gets the Zobrist key for a value in a cell. A board's hash is the XOR of the keys of all
+     * its cells, so changing one cell only needs two XORs. The key for an empty cell is 0.
+     */
+    public long getZobristKey(int cellId, int value) {
+        return zobristKeys[cellId * (size + 1) + value];
+    }
+
+    /**
+     * Gets the number of units (rows, then columns, then boxes).
+     */
+    public int getUnitCount() {
+        return 3 * size;
+    }
+
+    /**
+     * Gets the i-th cell of a unit, for 0 <= i < getSize().
+     */
+    public int getUnitCell(int unit, int i) {
+        return units[unit * size + i];
+    }
+}
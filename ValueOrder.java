@@ -0,0 +1,79 @@
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The order a search tries the candidates of the cell it branches on.
+ */
+public enum ValueOrder {
+    /** Smallest value first, like the original solvers. */
+    ASCENDING {
+        @Override
+        public int order(SudokuGraph graph, int cellId, long candidates, int[] values, int offset) {
+            int count = 0;
+            for (; candidates != 0; candidates &= candidates - 1) {
+                values[offset + count++] = Long.numberOfTrailingZeros(candidates) + 1;
+            }
+            return count;
+        }
+    },
+    /**
+     * A random order, different on every call, for searches that restart to escape a bad early choice.
+     */
+    RANDOM {
+        @Override
+        public int order(SudokuGraph graph, int cellId, long candidates, int[] values, int offset) {
+            int count = ASCENDING.order(graph, cellId, candidates, values, offset);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = count - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = values[offset + i];
+                values[offset + i] = values[offset + j];
+                values[offset + j] = swap;
+            }
+            return count;
+        }
+    },
+    /**
+     * The value that takes a candidate away from the fewest empty peers first (least
+     * constraining value), so the first branches leave the most room for the rest of the board.
+     * Ties go to the smaller value.
+     */
+    LEAST_CONSTRAINING {
+        @Override
+        public int order(SudokuGraph graph, int cellId, long candidates, int[] values, int offset) {
+            SudokuTopology topology = graph.getTopology();
+            int count = 0;
+            for (; candidates != 0; candidates &= candidates - 1) {
+                long bit = candidates & -candidates;
+                int eliminated = 0;
+                for (int i = 0; i < topology.getPeerCount(); i++) {
+                    int peer = topology.getPeer(cellId, i);
+                    if (graph.getCell(peer) == 0 && (graph.getCandidates(peer) & bit) != 0) {
+                        eliminated++;
+                    }
+                }
+                // Sort on eliminated, then value, packed into one int so the sort needs no other array
+                int key = eliminated * VALUE_SLOTS + Long.numberOfTrailingZeros(bit) + 1;
+                int i = count++;
+                while (i > 0 && values[offset + i - 1] > key) {
+                    values[offset + i] = values[offset + i - 1];
+                    i--;
+                }
+                values[offset + i] = key;
+            }
+            for (int i = 0; i < count; i++) {
+                values[offset + i] %= VALUE_SLOTS;
+            }
+            return count;
+        }
+    };
+
+    // More than the largest value (64), for packing sort keys
+    private static final int VALUE_SLOTS = 128;
+
+    /**
+     * Writes the candidates of a cell into values, starting at offset, in the order to try them.
+     * The array needs room for one entry per candidate (at most the board size).
+     * @return the number of values written
+     */
+    public abstract int order(SudokuGraph graph, int cellId, long candidates, int[] values, int offset);
+}